@@ -0,0 +1,70 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import java.util.Objects;
+
+/**
+ * An edge found near a point by GraphModel.edgesNear().
+ *
+ * @param <K> User define key/role type of the GraphModel.
+ */
+public class EdgeHit<K> {
+
+	private final Vertex<K> tail;
+	private final Vertex<K> head;
+	private final double distance;
+
+	EdgeHit(final Vertex<K> tail, final Vertex<K> head, final double distance) {
+		this.tail = Objects.requireNonNull(tail, "tail is null");
+		this.head = Objects.requireNonNull(head, "head is null");
+		this.distance = distance;
+	}
+
+	/**
+	 * @return Distance in pixels from the point to the edge's polyline.
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+	/**
+	 * @return The vertex the edge ends at.
+	 */
+	public Vertex<K> getHead() {
+		return head;
+	}
+
+	/**
+	 * @return The vertex the edge starts at.
+	 */
+	public Vertex<K> getTail() {
+		return tail;
+	}
+
+	@Override
+	public String toString() {
+		return "EdgeHit [tail=" + tail.getUUID() + ", head=" + head.getUUID() + ", distance=" + distance + "]";
+	}
+
+}
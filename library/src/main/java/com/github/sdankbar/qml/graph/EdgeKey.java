@@ -24,7 +24,10 @@ package com.github.sdankbar.qml.graph;
 
 enum EdgeKey {
 	polyline, // Lists of points used to draw the edge (pixel coordinates). Includes points
-				// necessary to drag the edge's arrow head.
+				// necessary to drag the edge's arrow head. Only set in EdgeGeometry.POLYLINE mode.
+	bezier, // Control points of the edge's piecewise cubic Bezier curve (pixel coordinates): the start
+			// point, then 2 control points and an end point per segment, followed by the 3 points of
+			// the arrow head. Only set in EdgeGeometry.BEZIER mode.
 	head_id, // The identifier of the vertex this edge ends at (has the arrow head).
 	tail_id // The identifier of the vertex this edge starts at.
 }
\ No newline at end of file
@@ -0,0 +1,341 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.github.sdankbar.qml.JVariant;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Keeps the rows of a GraphModel's edge model in step with the edges of the
+ * last applied layout. Every edge in the layout has an entry, and entries can
+ * be published to a row of the edge model. An edge keeps its entry and row for
+ * as long as it is in the layout, so each layout only inserts, removes, or
+ * changes the rows of edges that changed. Entries and rows are both kept dense
+ * by moving the last one into the place of a removed one.
+ *
+ * Not thread safe.
+ */
+class EdgeRows {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static ImmutableMap<EdgeKey, JVariant> toRow(final EdgeKey geometryKey, final String tailID,
+			final String headID, final ImmutableList<Point2D> polyline) {
+		return ImmutableMap.of(geometryKey, new JVariant(polyline), EdgeKey.head_id, new JVariant(headID),
+				EdgeKey.tail_id, new JVariant(tailID));
+	}
+
+	private final ModelFactory.ListModel<EdgeKey> model;
+	private boolean publishNewEdges = true;
+	// Role the points of each edge are published in.
+	private EdgeKey geometryKey = EdgeKey.polyline;
+
+	// Entry of each edge, keyed by the handles of its vertices.
+	private final EdgeSet entries = new EdgeSet();
+	private int entryCount = 0;
+	private int[] tails = new int[INITIAL_CAPACITY];
+	private int[] heads = new int[INITIAL_CAPACITY];
+	private final List<String> tailIDs = new ArrayList<>();
+	private final List<String> headIDs = new ArrayList<>();
+	private final List<ImmutableList<Point2D>> polylines = new ArrayList<>();
+	// The update each entry was last seen in.
+	private int[] updates = new int[INITIAL_CAPACITY];
+	private int update = 0;
+
+	// Row of each entry, or -1 if it is not published, and the entry of each row.
+	private int[] entryRows = new int[INITIAL_CAPACITY];
+	private int[] rowEntries = new int[INITIAL_CAPACITY];
+	private final List<Map<EdgeKey, JVariant>> rows = new ArrayList<>();
+
+	EdgeRows(final ModelFactory.ListModel<EdgeKey> model) {
+		this.model = Objects.requireNonNull(model, "model is null");
+	}
+
+	/**
+	 * Starts an update. Each edge in the new layout must then be passed to put(),
+	 * followed by a call to finishUpdate().
+	 */
+	void beginUpdate() {
+		++update;
+	}
+
+	/**
+	 * Removes every entry and row.
+	 */
+	void clear() {
+		model.clear();
+		entries.clear();
+		tailIDs.clear();
+		headIDs.clear();
+		polylines.clear();
+		rows.clear();
+		entryCount = 0;
+	}
+
+	/**
+	 * Removes the entries of edges that were not passed to put() since
+	 * beginUpdate().
+	 */
+	void finishUpdate() {
+		// Entries above entry have all been seen, so the entry moved into a
+		// removed entry never needs to be removed itself.
+		for (int entry = entryCount - 1; entry >= 0; --entry) {
+			if (updates[entry] != update) {
+				removeEntry(entry);
+			}
+		}
+	}
+
+	/**
+	 * @param entry  An entry.
+	 * @param bounds Set to the minimum x, minimum y, maximum x and maximum y of
+	 *               the entry's polyline.
+	 * @return False if there is no such entry.
+	 */
+	boolean getBounds(final int entry, final double[] bounds) {
+		if (entry < 0 || entry >= entryCount) {
+			return false;
+		}
+		bounds[0] = Double.POSITIVE_INFINITY;
+		bounds[1] = Double.POSITIVE_INFINITY;
+		bounds[2] = Double.NEGATIVE_INFINITY;
+		bounds[3] = Double.NEGATIVE_INFINITY;
+		for (final Point2D p : polylines.get(entry)) {
+			bounds[0] = Math.min(bounds[0], p.getX());
+			bounds[1] = Math.min(bounds[1], p.getY());
+			bounds[2] = Math.max(bounds[2], p.getX());
+			bounds[3] = Math.max(bounds[3], p.getY());
+		}
+		return bounds[0] <= bounds[2];
+	}
+
+	/**
+	 * @return The number of edges in the last layout.
+	 */
+	int getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * @return The role the points of each edge are published in.
+	 */
+	EdgeKey getGeometryKey() {
+		return geometryKey;
+	}
+
+	int getHead(final int entry) {
+		Preconditions.checkElementIndex(entry, entryCount);
+		return heads[entry];
+	}
+
+	String getHeadID(final int entry) {
+		Preconditions.checkElementIndex(entry, entryCount);
+		return headIDs.get(entry);
+	}
+
+	ImmutableList<Point2D> getPolyline(final int entry) {
+		Preconditions.checkElementIndex(entry, entryCount);
+		return polylines.get(entry);
+	}
+
+	/**
+	 * @return The number of published edges.
+	 */
+	int getRowCount() {
+		return rows.size();
+	}
+
+	int getTail(final int entry) {
+		Preconditions.checkElementIndex(entry, entryCount);
+		return tails[entry];
+	}
+
+	String getTailID(final int entry) {
+		Preconditions.checkElementIndex(entry, entryCount);
+		return tailIDs.get(entry);
+	}
+
+	boolean isPublished(final int entry) {
+		return entry >= 0 && entry < entryCount && entryRows[entry] >= 0;
+	}
+
+	/**
+	 * Publishes an entry to a new row at the end of the edge model.
+	 *
+	 * @param entry The entry.
+	 */
+	void publish(final int entry) {
+		Preconditions.checkElementIndex(entry, entryCount);
+		Preconditions.checkState(entryRows[entry] < 0, "%s is already published", entry);
+		final int row = rows.size();
+		rows.add(model.add(toRow(geometryKey, tailIDs.get(entry), headIDs.get(entry), polylines.get(entry))));
+		rowEntries[row] = entry;
+		entryRows[entry] = row;
+	}
+
+	/**
+	 * Publishes every entry that is not published.
+	 */
+	void publishAll() {
+		for (int entry = 0; entry < entryCount; ++entry) {
+			if (entryRows[entry] < 0) {
+				publish(entry);
+			}
+		}
+	}
+
+	/**
+	 * Adds an edge's entry, or updates the values of its entry that changed.
+	 *
+	 * @param tail     Handle of the vertex the edge starts at.
+	 * @param head     Handle of the vertex the edge ends at.
+	 * @param tailID   ID of the vertex the edge starts at.
+	 * @param headID   ID of the vertex the edge ends at.
+	 * @param polyline The edge's points in pixels, a polyline or Bézier control
+	 *                 points depending on the geometry key.
+	 */
+	void put(final int tail, final int head, final String tailID, final String headID,
+			final ImmutableList<Point2D> polyline) {
+		final int entry = entries.get(tail, head);
+		if (entry < 0) {
+			if (entryCount == tails.length) {
+				tails = Arrays.copyOf(tails, entryCount * 2);
+				heads = Arrays.copyOf(heads, entryCount * 2);
+				updates = Arrays.copyOf(updates, entryCount * 2);
+				entryRows = Arrays.copyOf(entryRows, entryCount * 2);
+				rowEntries = Arrays.copyOf(rowEntries, entryCount * 2);
+			}
+			tails[entryCount] = tail;
+			heads[entryCount] = head;
+			updates[entryCount] = update;
+			entryRows[entryCount] = -1;
+			tailIDs.add(tailID);
+			headIDs.add(headID);
+			polylines.add(polyline);
+			entries.put(tail, head, entryCount);
+			if (publishNewEdges) {
+				publish(entryCount++);
+			} else {
+				++entryCount;
+			}
+			return;
+		}
+
+		updates[entry] = update;
+		final ImmutableMap.Builder<EdgeKey, JVariant> changes = ImmutableMap.builderWithExpectedSize(3);
+		if (!polyline.equals(polylines.get(entry))) {
+			polylines.set(entry, polyline);
+			changes.put(geometryKey, new JVariant(polyline));
+		}
+		// The handles of removed vertices are reused, so the IDs can change.
+		if (!headID.equals(headIDs.get(entry))) {
+			headIDs.set(entry, headID);
+			changes.put(EdgeKey.head_id, new JVariant(headID));
+		}
+		if (!tailID.equals(tailIDs.get(entry))) {
+			tailIDs.set(entry, tailID);
+			changes.put(EdgeKey.tail_id, new JVariant(tailID));
+		}
+		final ImmutableMap<EdgeKey, JVariant> changed = changes.build();
+		if (!changed.isEmpty() && entryRows[entry] >= 0) {
+			rows.get(entryRows[entry]).putAll(changed);
+		}
+	}
+
+	private void removeEntry(final int entry) {
+		if (entryRows[entry] >= 0) {
+			unpublish(entry);
+		}
+		entries.remove(tails[entry], heads[entry]);
+
+		final int last = entryCount - 1;
+		if (entry != last) {
+			tails[entry] = tails[last];
+			heads[entry] = heads[last];
+			updates[entry] = updates[last];
+			entryRows[entry] = entryRows[last];
+			if (entryRows[entry] >= 0) {
+				rowEntries[entryRows[entry]] = entry;
+			}
+			tailIDs.set(entry, tailIDs.get(last));
+			headIDs.set(entry, headIDs.get(last));
+			polylines.set(entry, polylines.get(last));
+			entries.put(tails[entry], heads[entry], entry);
+		}
+		tailIDs.remove(last);
+		headIDs.remove(last);
+		polylines.remove(last);
+		--entryCount;
+	}
+
+	/**
+	 * Sets the role the points of each edge are published in. Can only be
+	 * changed while there are no entries.
+	 *
+	 * @param key EdgeKey.polyline or EdgeKey.bezier.
+	 */
+	void setGeometryKey(final EdgeKey key) {
+		Preconditions.checkArgument(key == EdgeKey.polyline || key == EdgeKey.bezier, "%s is not a geometry key",
+				key);
+		Preconditions.checkState(entryCount == 0, "Edges have already been added");
+		geometryKey = key;
+	}
+
+	/**
+	 * @param publish Whether edges that are new to the layout are published.
+	 */
+	void setPublishNewEdges(final boolean publish) {
+		publishNewEdges = publish;
+	}
+
+	/**
+	 * Stops publishing an entry, moving the last row into its row.
+	 *
+	 * @param entry The entry.
+	 */
+	void unpublish(final int entry) {
+		Preconditions.checkElementIndex(entry, entryCount);
+		Preconditions.checkState(entryRows[entry] >= 0, "%s is not published", entry);
+		final int row = entryRows[entry];
+		final int last = rows.size() - 1;
+		if (row != last) {
+			final int moved = rowEntries[last];
+			rows.get(row).putAll(toRow(geometryKey, tailIDs.get(moved), headIDs.get(moved), polylines.get(moved)));
+			rowEntries[row] = moved;
+			entryRows[moved] = row;
+		}
+		entryRows[entry] = -1;
+		rows.remove(last);
+		model.remove(last);
+	}
+
+}
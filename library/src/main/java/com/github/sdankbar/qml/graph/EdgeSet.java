@@ -0,0 +1,183 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import java.util.Arrays;
+
+/**
+ * Set of directed edges between int vertex handles. Each edge is packed into a
+ * single long and stored in an open addressing table with linear probing, so
+ * membership checks neither box nor allocate. Each edge can also carry an int
+ * value, so the set can be used as a map from edges to ints.
+ */
+class EdgeSet {
+
+	private static final long EMPTY = -1;
+	private static final int INITIAL_CAPACITY = 64;
+
+	private static long key(final int tail, final int head) {
+		return ((long) tail << 32) | (head & 0xFFFFFFFFL);
+	}
+
+	private static int mix(final long key) {
+		// Finalizer of MurmurHash3.
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	private static long[] newTable(final int capacity) {
+		final long[] t = new long[capacity];
+		Arrays.fill(t, EMPTY);
+		return t;
+	}
+
+	private long[] table = newTable(INITIAL_CAPACITY);
+	private int[] values = new int[INITIAL_CAPACITY];
+	private int size = 0;
+
+	boolean add(final int tail, final int head) {
+		return put(key(tail, head), 0, false) < 0;
+	}
+
+	void clear() {
+		table = newTable(INITIAL_CAPACITY);
+		values = new int[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	boolean contains(final int tail, final int head) {
+		return find(key(tail, head)) >= 0;
+	}
+
+	/**
+	 * @param tail Vertex the edge starts at.
+	 * @param head Vertex the edge ends at.
+	 * @return The edge's value, or -1 if it is not in the set.
+	 */
+	int get(final int tail, final int head) {
+		final int i = find(key(tail, head));
+		return i < 0 ? -1 : values[i];
+	}
+
+	private int find(final long k) {
+		final int mask = table.length - 1;
+		int i = mix(k) & mask;
+		while (table[i] != EMPTY) {
+			if (table[i] == k) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds an edge or changes its value.
+	 *
+	 * @param tail  Vertex the edge starts at.
+	 * @param head  Vertex the edge ends at.
+	 * @param value The edge's new value. Must not be negative.
+	 * @return The edge's previous value, or -1 if it was not in the set.
+	 */
+	int put(final int tail, final int head, final int value) {
+		return put(key(tail, head), value, true);
+	}
+
+	private int put(final long k, final int value, final boolean replace) {
+		final int mask = table.length - 1;
+		int i = mix(k) & mask;
+		while (table[i] != EMPTY) {
+			if (table[i] == k) {
+				final int previous = values[i];
+				if (replace) {
+					values[i] = value;
+				}
+				return previous;
+			}
+			i = (i + 1) & mask;
+		}
+		table[i] = k;
+		values[i] = value;
+		if (++size > table.length / 2) {
+			rehash(table.length * 2);
+		}
+		return -1;
+	}
+
+	private void rehash(final int capacity) {
+		final long[] oldTable = table;
+		final int[] oldValues = values;
+		table = newTable(capacity);
+		values = new int[capacity];
+		final int mask = capacity - 1;
+		for (int j = 0; j < oldTable.length; ++j) {
+			final long k = oldTable[j];
+			if (k != EMPTY) {
+				int i = mix(k) & mask;
+				while (table[i] != EMPTY) {
+					i = (i + 1) & mask;
+				}
+				table[i] = k;
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	boolean remove(final int tail, final int head) {
+		int hole = find(key(tail, head));
+		if (hole < 0) {
+			return false;
+		}
+
+		// Backward shift deletion, so no tombstones are needed.
+		final int mask = table.length - 1;
+		int i = hole;
+		while (true) {
+			i = (i + 1) & mask;
+			final long k = table[i];
+			if (k == EMPTY) {
+				break;
+			}
+			final int home = mix(k) & mask;
+			// Move k into the hole unless its home lies cyclically in (hole, i].
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				table[hole] = k;
+				values[hole] = values[i];
+				hole = i;
+			}
+		}
+		table[hole] = EMPTY;
+		--size;
+		return true;
+	}
+
+	int size() {
+		return size;
+	}
+
+}
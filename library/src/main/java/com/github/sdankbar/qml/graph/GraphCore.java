@@ -0,0 +1,628 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.sdankbar.qml.JVariant;
+import com.github.sdankbar.qml.graph.graphviz.DOTWriter;
+import com.github.sdankbar.qml.graph.parsing.NodeDefinition;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Storage for the vertices and edges of a GraphModel. Vertices are int handles
+ * that index into primitive arrays, and each vertex's edges are kept in
+ * growable int arrays in the order they were added, which is also the order
+ * they are written to DOT in. Handles of removed vertices are reused. Each
+ * handle has a generation that changes when it is freed so that stale Vertex
+ * flyweights can be detected.
+ *
+ * Each vertex has a map of values, its user defined data and built-in
+ * VertexKeys. A published vertex's values are held only by its row of the QML
+ * vertex model, and an unpublished vertex's values by a map that is created
+ * when it is unpublished and dropped when it is published. Rows are kept
+ * dense: rows [0, getRowCount()) belong to published vertices, so an
+ * unpublished vertex's row can be filled with the last row and the last row
+ * dropped.
+ *
+ * Not thread safe.
+ */
+class GraphCore {
+
+	private static final AtomicLong NEXT_VERSION = new AtomicLong();
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int[] NO_EDGES = new int[0];
+
+	private static int[] append(final int[] array, final int count, final int value) {
+		final int[] result = count < array.length ? array : Arrays.copyOf(array, Math.max(4, count * 2));
+		result[count] = value;
+		return result;
+	}
+
+	private static void copyRow(final Map<String, JVariant> from, final Map<String, JVariant> to) {
+		for (final String key : ImmutableList.copyOf(to.keySet())) {
+			if (!from.containsKey(key)) {
+				to.remove(key);
+			}
+		}
+		to.putAll(from);
+	}
+
+	private static void removeValue(final int[] array, final int count, final int value) {
+		for (int i = 0; i < count; ++i) {
+			if (array[i] == value) {
+				// Shift rather than swap to keep the remaining edges in order.
+				System.arraycopy(array, i + 1, array, i, count - i - 1);
+				return;
+			}
+		}
+		throw new IllegalStateException("Edge not found");
+	}
+
+	// Handles in [0, limit) have been handed out since the last clear().
+	private int limit = 0;
+	private int count = 0;
+	private int[] freeHandles = new int[INITIAL_CAPACITY];
+	private int freeCount = 0;
+
+	private String[] ids = new String[INITIAL_CAPACITY];
+	private int[] generations = new int[INITIAL_CAPACITY];
+	private double[] widthsInches = new double[INITIAL_CAPACITY];
+	private double[] heightsInches = new double[INITIAL_CAPACITY];
+	// Changes whenever the size or edges of a vertex change. Unique across all
+	// GraphModels.
+	private long[] versions = new long[INITIAL_CAPACITY];
+
+	private int[][] children = new int[INITIAL_CAPACITY][];
+	private int[] childCounts = new int[INITIAL_CAPACITY];
+	private int[][] parents = new int[INITIAL_CAPACITY][];
+	private int[] parentCounts = new int[INITIAL_CAPACITY];
+	private final EdgeSet edges = new EdgeSet();
+
+	// Each vertex's node and edge definitions in DOT, and the version they were
+	// written for.
+	private byte[][] dotFragments = new byte[INITIAL_CAPACITY][];
+	private long[] dotFragmentVersions = new long[INITIAL_CAPACITY];
+
+	// Last applied layout, in pixels.
+	private double[] xs = new double[INITIAL_CAPACITY];
+	private double[] ys = new double[INITIAL_CAPACITY];
+	private double[] widths = new double[INITIAL_CAPACITY];
+	private double[] heights = new double[INITIAL_CAPACITY];
+
+	// Values of each unpublished vertex, or null if it is published.
+	private List<Map<String, JVariant>> values = new ArrayList<>();
+	// Each vertex's row in the QML model, or null if it is not published.
+	private List<Map<String, JVariant>> rows = new ArrayList<>();
+	// Index of each vertex's row, or -1, and the vertex of each row.
+	private int[] rowIndices = new int[INITIAL_CAPACITY];
+	private int[] rowHandles = new int[INITIAL_CAPACITY];
+	private int rowCount = 0;
+	private final Map<String, Integer> handlesByID = new HashMap<>();
+
+	/**
+	 * Adds a vertex, which is not published.
+	 *
+	 * @param id            ID of the vertex.
+	 * @param widthInches   Width of the vertex in inches.
+	 * @param heightInches  Height of the vertex in inches.
+	 * @param initialValues The vertex's initial values. Copied.
+	 * @return Handle of the vertex.
+	 */
+	int add(final String id, final double widthInches, final double heightInches,
+			final Map<String, JVariant> initialValues) {
+		Objects.requireNonNull(id, "id is null");
+		Objects.requireNonNull(initialValues, "initialValues is null");
+		Preconditions.checkArgument(widthInches > 0, "w <= 0 ", Double.valueOf(widthInches));
+		Preconditions.checkArgument(heightInches > 0, "h <= 0 ", Double.valueOf(heightInches));
+
+		final int handle;
+		if (freeCount > 0) {
+			handle = freeHandles[--freeCount];
+		} else {
+			if (limit == ids.length) {
+				grow(ids.length * 2);
+			}
+			handle = limit++;
+			values.add(null);
+			rows.add(null);
+		}
+
+		ids[handle] = id;
+		widthsInches[handle] = widthInches;
+		heightsInches[handle] = heightInches;
+		versions[handle] = NEXT_VERSION.incrementAndGet();
+		children[handle] = NO_EDGES;
+		childCounts[handle] = 0;
+		parents[handle] = NO_EDGES;
+		parentCounts[handle] = 0;
+		dotFragments[handle] = null;
+		xs[handle] = 0;
+		ys[handle] = 0;
+		widths[handle] = 1;
+		heights[handle] = 1;
+		values.set(handle, new HashMap<>(initialValues));
+		rows.set(handle, null);
+		rowIndices[handle] = -1;
+		handlesByID.put(id, Integer.valueOf(handle));
+		++count;
+		return handle;
+	}
+
+	boolean addEdge(final int tail, final int head) {
+		checkHandle(tail);
+		checkHandle(head);
+		if (!edges.add(tail, head)) {
+			return false;
+		}
+		children[tail] = append(children[tail], childCounts[tail]++, head);
+		parents[head] = append(parents[head], parentCounts[head]++, tail);
+		touch(tail);
+		touch(head);
+		return true;
+	}
+
+	/**
+	 * Sets the position and size of a vertex from a layout and writes the values
+	 * that changed to its values, and to its row in a single update if it is
+	 * published.
+	 *
+	 * @param handle Handle of the vertex.
+	 * @param def    The vertex's definition in the layout.
+	 * @param dpi    Dots per inch used to convert the definition to pixels.
+	 * @return True if the values were changed.
+	 */
+	boolean apply(final int handle, final NodeDefinition def, final double dpi) {
+		checkHandle(handle);
+		final double x = def.getX() * dpi;
+		final double y = def.getY() * dpi;
+		final double w = def.getWidth() * dpi;
+		final double h = def.getHeight() * dpi;
+
+		final ImmutableMap.Builder<String, JVariant> changes = ImmutableMap.builderWithExpectedSize(4);
+		if (x != xs[handle]) {
+			xs[handle] = x;
+			changes.put(VertexKey.x.toString(), new JVariant(x));
+		}
+		if (y != ys[handle]) {
+			ys[handle] = y;
+			changes.put(VertexKey.y.toString(), new JVariant(y));
+		}
+		if (w != widths[handle]) {
+			widths[handle] = w;
+			changes.put(VertexKey.width.toString(), new JVariant(w));
+		}
+		if (h != heights[handle]) {
+			heights[handle] = h;
+			changes.put(VertexKey.height.toString(), new JVariant(h));
+		}
+
+		final ImmutableMap<String, JVariant> changed = changes.build();
+		if (changed.isEmpty()) {
+			return false;
+		}
+		getData(handle).putAll(changed);
+		return true;
+	}
+
+	/**
+	 * Applies a layout to a vertex. Vertices that are not in the layout, such as
+	 * those created after it was requested, are left unchanged.
+	 *
+	 * @param handle Handle of the vertex.
+	 * @param layout The layout.
+	 * @param dpi    Dots per inch used to convert the definition to pixels.
+	 * @return True if the values were changed.
+	 */
+	boolean apply(final int handle, final LayoutResult layout, final double dpi) {
+		checkHandle(handle);
+		final Optional<NodeDefinition> def = layout.findNode(ids[handle]);
+		return def.isPresent() && apply(handle, def.get(), dpi);
+	}
+
+	private void checkHandle(final int handle) {
+		Preconditions.checkArgument(isAlive(handle), "%s is not a vertex handle", handle);
+	}
+
+	void clear() {
+		for (int h = 0; h < limit; ++h) {
+			if (ids[h] != null) {
+				++generations[h];
+			}
+		}
+		// Generations are kept so that Vertex flyweights from before stay invalid.
+		Arrays.fill(ids, 0, limit, null);
+		Arrays.fill(children, 0, limit, null);
+		Arrays.fill(parents, 0, limit, null);
+		Arrays.fill(dotFragments, 0, limit, null);
+		values = new ArrayList<>();
+		rows = new ArrayList<>();
+		rowCount = 0;
+		handlesByID.clear();
+		edges.clear();
+		limit = 0;
+		count = 0;
+		freeCount = 0;
+	}
+
+	int getChild(final int handle, final int index) {
+		checkHandle(handle);
+		Preconditions.checkElementIndex(index, childCounts[handle]);
+		return children[handle][index];
+	}
+
+	int getChildCount(final int handle) {
+		checkHandle(handle);
+		return childCounts[handle];
+	}
+
+	int getCount() {
+		return count;
+	}
+
+	/**
+	 * @param handle Handle of the vertex.
+	 * @return The vertex's row if it is published, otherwise its values.
+	 */
+	private Map<String, JVariant> getData(final int handle) {
+		final Map<String, JVariant> row = rows.get(handle);
+		return row != null ? row : values.get(handle);
+	}
+
+	/**
+	 * @param handle Handle of the vertex.
+	 * @param writer Used to write the fragment if it is out of date.
+	 * @return The vertex's node and edge definitions in DOT. Only rewritten after
+	 *         the size or edges of the vertex change.
+	 */
+	byte[] getDOTFragment(final int handle, final DOTWriter writer) {
+		checkHandle(handle);
+		if (dotFragments[handle] == null || dotFragmentVersions[handle] != versions[handle]) {
+			final List<String> childIDs = new ArrayList<>(childCounts[handle]);
+			for (int i = 0; i < childCounts[handle]; ++i) {
+				childIDs.add(ids[children[handle][i]]);
+			}
+			dotFragments[handle] = writer.toFragment(ids[handle], widthsInches[handle], heightsInches[handle],
+					childIDs);
+			dotFragmentVersions[handle] = versions[handle];
+		}
+		return dotFragments[handle];
+	}
+
+	int getGeneration(final int handle) {
+		checkHandle(handle);
+		return generations[handle];
+	}
+
+	/**
+	 * @param id ID of a vertex.
+	 * @return Handle of the vertex with the ID, or -1 if there is none.
+	 */
+	int getHandle(final String id) {
+		final Integer handle = handlesByID.get(id);
+		return handle == null ? -1 : handle.intValue();
+	}
+
+	/**
+	 * @param rowIndex Index of a row in the QML model, less than getRowCount().
+	 * @return Handle of the vertex that owns the row.
+	 */
+	int getHandleAtRow(final int rowIndex) {
+		Preconditions.checkElementIndex(rowIndex, rowCount);
+		return rowHandles[rowIndex];
+	}
+
+	double getHeight(final int handle) {
+		checkHandle(handle);
+		return heights[handle];
+	}
+
+	double getHeightInches(final int handle) {
+		checkHandle(handle);
+		return heightsInches[handle];
+	}
+
+	String getID(final int handle) {
+		checkHandle(handle);
+		return ids[handle];
+	}
+
+	/**
+	 * @return Every live handle is less than this.
+	 */
+	int getLimit() {
+		return limit;
+	}
+
+	int getParent(final int handle, final int index) {
+		checkHandle(handle);
+		Preconditions.checkElementIndex(index, parentCounts[handle]);
+		return parents[handle][index];
+	}
+
+	int getParentCount(final int handle) {
+		checkHandle(handle);
+		return parentCounts[handle];
+	}
+
+	/**
+	 * @return The number of published vertices.
+	 */
+	int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @param handle Handle of the vertex.
+	 * @return Index of the vertex's row, or -1 if it is not published.
+	 */
+	int getRowIndex(final int handle) {
+		checkHandle(handle);
+		return rowIndices[handle];
+	}
+
+	JVariant getValue(final int handle, final String key) {
+		checkHandle(handle);
+		return getData(handle).get(key);
+	}
+
+	ImmutableMap<String, JVariant> getValues(final int handle) {
+		checkHandle(handle);
+		return ImmutableMap.copyOf(getData(handle));
+	}
+
+	long getVersion(final int handle) {
+		checkHandle(handle);
+		return versions[handle];
+	}
+
+	double getWidth(final int handle) {
+		checkHandle(handle);
+		return widths[handle];
+	}
+
+	double getWidthInches(final int handle) {
+		checkHandle(handle);
+		return widthsInches[handle];
+	}
+
+	double getX(final int handle) {
+		checkHandle(handle);
+		return xs[handle];
+	}
+
+	double getY(final int handle) {
+		checkHandle(handle);
+		return ys[handle];
+	}
+
+	private void grow(final int capacity) {
+		ids = Arrays.copyOf(ids, capacity);
+		generations = Arrays.copyOf(generations, capacity);
+		widthsInches = Arrays.copyOf(widthsInches, capacity);
+		heightsInches = Arrays.copyOf(heightsInches, capacity);
+		versions = Arrays.copyOf(versions, capacity);
+		children = Arrays.copyOf(children, capacity);
+		childCounts = Arrays.copyOf(childCounts, capacity);
+		parents = Arrays.copyOf(parents, capacity);
+		parentCounts = Arrays.copyOf(parentCounts, capacity);
+		dotFragments = Arrays.copyOf(dotFragments, capacity);
+		dotFragmentVersions = Arrays.copyOf(dotFragmentVersions, capacity);
+		xs = Arrays.copyOf(xs, capacity);
+		ys = Arrays.copyOf(ys, capacity);
+		widths = Arrays.copyOf(widths, capacity);
+		heights = Arrays.copyOf(heights, capacity);
+		rowIndices = Arrays.copyOf(rowIndices, capacity);
+		rowHandles = Arrays.copyOf(rowHandles, capacity);
+	}
+
+	boolean isAlive(final int handle) {
+		return handle >= 0 && handle < limit && ids[handle] != null;
+	}
+
+	boolean isCurrent(final int handle, final int generation) {
+		return isAlive(handle) && generations[handle] == generation;
+	}
+
+	boolean isPublished(final int handle) {
+		return isAlive(handle) && rowIndices[handle] >= 0;
+	}
+
+	/**
+	 * Moves the contents of a row into another row whose vertex is about to be
+	 * unpublished. The two vertices then swap rows, leaving the vertex being
+	 * unpublished with the row that was moved.
+	 *
+	 * @param from Index of the row to move.
+	 * @param to   Index of a row owned by a vertex that is being unpublished.
+	 */
+	void moveRow(final int from, final int to) {
+		final int handle = getHandleAtRow(from);
+		final int removed = getHandleAtRow(to);
+		final Map<String, JVariant> source = rows.get(handle);
+		final Map<String, JVariant> target = rows.get(removed);
+		copyRow(source, target);
+		rows.set(handle, target);
+		rows.set(removed, source);
+		rowIndices[handle] = to;
+		rowHandles[to] = handle;
+		rowIndices[removed] = from;
+		rowHandles[from] = removed;
+	}
+
+	/**
+	 * Publishes a vertex to a row that was just added to the end of the QML
+	 * model.
+	 *
+	 * @param handle Handle of the vertex.
+	 * @param row    The row, holding the vertex's values.
+	 */
+	void publish(final int handle, final Map<String, JVariant> row) {
+		checkHandle(handle);
+		Objects.requireNonNull(row, "row is null");
+		Preconditions.checkState(rowIndices[handle] < 0, "%s is already published", handle);
+		rows.set(handle, row);
+		values.set(handle, null);
+		rowIndices[handle] = rowCount;
+		rowHandles[rowCount++] = handle;
+	}
+
+	void put(final int handle, final String key, final JVariant value) {
+		checkHandle(handle);
+		getData(handle).put(key, value);
+	}
+
+	private void releaseRow(final int handle) {
+		final int last = rowCount - 1;
+		if (rowIndices[handle] != last) {
+			moveRow(last, rowIndices[handle]);
+		}
+		rows.set(handle, null);
+		rowIndices[handle] = -1;
+		--rowCount;
+	}
+
+	/**
+	 * Removes a vertex. If it is published and its row is not the last row, the
+	 * last row is moved into it, so the caller must then remove the last row
+	 * from the QML model.
+	 *
+	 * @param handle Handle of the vertex.
+	 * @return True if the vertex was removed, false if it did not exist.
+	 */
+	boolean remove(final int handle) {
+		if (!isAlive(handle)) {
+			return false;
+		}
+
+		// Detach from the rest of the graph so no edges to the vertex remain.
+		for (int i = 0; i < parentCounts[handle]; ++i) {
+			final int p = parents[handle][i];
+			if (p != handle) {
+				removeValue(children[p], childCounts[p]--, handle);
+				edges.remove(p, handle);
+				touch(p);
+			}
+		}
+		for (int i = 0; i < childCounts[handle]; ++i) {
+			final int c = children[handle][i];
+			if (c != handle) {
+				removeValue(parents[c], parentCounts[c]--, handle);
+				touch(c);
+			}
+			edges.remove(handle, c);
+		}
+
+		if (rowIndices[handle] >= 0) {
+			releaseRow(handle);
+		}
+
+		handlesByID.remove(ids[handle]);
+		ids[handle] = null;
+		children[handle] = null;
+		parents[handle] = null;
+		dotFragments[handle] = null;
+		values.set(handle, null);
+		++generations[handle];
+		if (freeCount == freeHandles.length) {
+			freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+		}
+		freeHandles[freeCount++] = handle;
+		--count;
+		return true;
+	}
+
+	boolean removeEdge(final int tail, final int head) {
+		checkHandle(tail);
+		checkHandle(head);
+		if (!edges.remove(tail, head)) {
+			return false;
+		}
+		removeValue(children[tail], childCounts[tail]--, head);
+		removeValue(parents[head], parentCounts[head]--, tail);
+		touch(tail);
+		touch(head);
+		return true;
+	}
+
+	/**
+	 * @param handle Handle of the vertex.
+	 * @param key    Key to remove from the vertex's values.
+	 * @return True if the vertex had a value for the key.
+	 */
+	boolean removeKey(final int handle, final String key) {
+		checkHandle(handle);
+		return getData(handle).remove(key) != null;
+	}
+
+	/**
+	 * Grows the arrays so that at least capacity vertices fit without growing
+	 * again.
+	 *
+	 * @param capacity Number of vertices.
+	 */
+	void reserve(final int capacity) {
+		if (capacity > ids.length) {
+			grow(Math.max(capacity, ids.length * 2));
+		}
+	}
+
+	void setSizeInches(final int handle, final double widthInches, final double heightInches) {
+		checkHandle(handle);
+		Preconditions.checkArgument(widthInches > 0, "w <= 0 ", Double.valueOf(widthInches));
+		Preconditions.checkArgument(heightInches > 0, "h <= 0 ", Double.valueOf(heightInches));
+		if (widthsInches[handle] != widthInches || heightsInches[handle] != heightInches) {
+			widthsInches[handle] = widthInches;
+			heightsInches[handle] = heightInches;
+			touch(handle);
+		}
+	}
+
+	private void touch(final int handle) {
+		versions[handle] = NEXT_VERSION.incrementAndGet();
+	}
+
+	/**
+	 * Stops publishing a vertex, copying its values out of its row. If its row
+	 * is not the last row, the last row is moved into it, so the caller must then
+	 * remove the last row from the QML model.
+	 *
+	 * @param handle Handle of the vertex.
+	 */
+	void unpublish(final int handle) {
+		checkHandle(handle);
+		Preconditions.checkState(rowIndices[handle] >= 0, "%s is not published", handle);
+		values.set(handle, new HashMap<>(rows.get(handle)));
+		releaseRow(handle);
+	}
+
+}
@@ -22,39 +22,53 @@
  */
 package com.github.sdankbar.qml.graph;
 
+import java.awt.geom.CubicCurve2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
 
-import org.apache.commons.lang3.SystemUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.sdankbar.qml.JQMLModelFactory;
 import com.github.sdankbar.qml.JVariant;
+import com.github.sdankbar.qml.graph.graphviz.DOTWriter;
+import com.github.sdankbar.qml.graph.graphviz.GraphVizLayoutEngine;
+import com.github.sdankbar.qml.graph.graphviz.GraphVizProcessPool;
+import com.github.sdankbar.qml.graph.layout.CachingLayoutEngine;
+import com.github.sdankbar.qml.graph.layout.ComponentLayoutEngine;
 import com.github.sdankbar.qml.graph.parsing.EdgeDefinition;
-import com.github.sdankbar.qml.graph.parsing.GraphVizParser;
-import com.github.sdankbar.qml.models.AbstractJQMLMapModel.PutMode;
-import com.github.sdankbar.qml.models.list.JQMLListModel;
-import com.github.sdankbar.qml.models.singleton.JQMLSingletonModel;
+import com.github.sdankbar.qml.graph.splines.SplineTessellator;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Model for sending Graph Vertex and Edge layout and user defined information
@@ -75,11 +89,355 @@ import com.google.common.collect.ImmutableSet;
  */
 public class GraphModel<K> {
 
+	/**
+	 * Adds many vertices and edges to a GraphModel at once. Vertices are referred
+	 * to by their index in the batch, in the order they were added. Arguments are
+	 * validated as they are added, so commit() only has to publish them.
+	 *
+	 * @param <K> User define key/role type of the GraphModel.
+	 */
+	public static class Batch<K> {
+		private static final int INITIAL_CAPACITY = 16;
+
+		private final GraphModel<K> graph;
+		private double[] widths = new double[INITIAL_CAPACITY];
+		private double[] heights = new double[INITIAL_CAPACITY];
+		private final List<ImmutableMap<K, JVariant>> initialData = new ArrayList<>();
+		private final Map<K, JVariant[]> columns = new LinkedHashMap<>();
+		private int vertexCount = 0;
+		private int[] tails = new int[INITIAL_CAPACITY];
+		private int[] heads = new int[INITIAL_CAPACITY];
+		private int edgeCount = 0;
+		private boolean committed = false;
+
+		Batch(final GraphModel<K> graph) {
+			this.graph = Objects.requireNonNull(graph, "graph is null");
+		}
+
+		/**
+		 * Adds a directed edge between two vertices that have already been added
+		 * to the batch.
+		 *
+		 * @param tail Index of the vertex the edge starts at.
+		 * @param head Index of the vertex the edge ends at.
+		 * @return this
+		 */
+		public Batch<K> addEdge(final int tail, final int head) {
+			Preconditions.checkElementIndex(tail, vertexCount, "tail");
+			Preconditions.checkElementIndex(head, vertexCount, "head");
+			if (edgeCount == tails.length) {
+				tails = Arrays.copyOf(tails, edgeCount * 2);
+				heads = Arrays.copyOf(heads, edgeCount * 2);
+			}
+			tails[edgeCount] = tail;
+			heads[edgeCount] = head;
+			++edgeCount;
+			return this;
+		}
+
+		/**
+		 * Adds directed edges between vertices that have already been added to the
+		 * batch.
+		 *
+		 * @param tails Index of the vertex each edge starts at.
+		 * @param heads Index of the vertex each edge ends at.
+		 * @return this
+		 */
+		public Batch<K> addEdges(final int[] tails, final int[] heads) {
+			Objects.requireNonNull(tails, "tails is null");
+			Objects.requireNonNull(heads, "heads is null");
+			Preconditions.checkArgument(tails.length == heads.length, "tails and heads differ in length");
+			for (int i = 0; i < tails.length; ++i) {
+				addEdge(tails[i], heads[i]);
+			}
+			return this;
+		}
+
+		/**
+		 * Adds a directed edge for each item of a stream.
+		 *
+		 * @param items Items describing the edges.
+		 * @param tail  Index of the vertex the item's edge starts at.
+		 * @param head  Index of the vertex the item's edge ends at.
+		 * @return this
+		 */
+		public <T> Batch<K> addEdges(final Stream<T> items, final ToIntFunction<? super T> tail,
+				final ToIntFunction<? super T> head) {
+			Objects.requireNonNull(items, "items is null");
+			Objects.requireNonNull(tail, "tail is null");
+			Objects.requireNonNull(head, "head is null");
+			items.forEachOrdered(item -> addEdge(tail.applyAsInt(item), head.applyAsInt(item)));
+			return this;
+		}
+
+		/**
+		 * @param widthInches  Width of the vertex in inches.
+		 * @param heightInches Height of the vertex in inches.
+		 * @return Index of the new vertex in the batch.
+		 */
+		public int addVertex(final double widthInches, final double heightInches) {
+			return addVertex(widthInches, heightInches, ImmutableMap.of());
+		}
+
+		/**
+		 * @param widthInches  Width of the vertex in inches.
+		 * @param heightInches Height of the vertex in inches.
+		 * @param data         Data to initially populate the vertex with.
+		 * @return Index of the new vertex in the batch.
+		 */
+		public int addVertex(final double widthInches, final double heightInches,
+				final ImmutableMap<K, JVariant> data) {
+			Objects.requireNonNull(data, "data is null");
+			Preconditions.checkArgument(widthInches > 0, "widthInches <= 0");
+			Preconditions.checkArgument(heightInches > 0, "heightInches <= 0");
+			if (vertexCount == widths.length) {
+				widths = Arrays.copyOf(widths, vertexCount * 2);
+				heights = Arrays.copyOf(heights, vertexCount * 2);
+			}
+			widths[vertexCount] = widthInches;
+			heights[vertexCount] = heightInches;
+			initialData.add(data);
+			return vertexCount++;
+		}
+
+		/**
+		 * Adds a vertex for each pair of sizes.
+		 *
+		 * @param widthsInches  Width of each vertex in inches.
+		 * @param heightsInches Height of each vertex in inches.
+		 * @return this
+		 */
+		public Batch<K> addVertices(final double[] widthsInches, final double[] heightsInches) {
+			Objects.requireNonNull(widthsInches, "widthsInches is null");
+			Objects.requireNonNull(heightsInches, "heightsInches is null");
+			Preconditions.checkArgument(widthsInches.length == heightsInches.length,
+					"widthsInches and heightsInches differ in length");
+			for (int i = 0; i < widthsInches.length; ++i) {
+				addVertex(widthsInches[i], heightsInches[i]);
+			}
+			return this;
+		}
+
+		/**
+		 * Adds a vertex for each item of a stream, in encounter order.
+		 *
+		 * @param items        Items describing the vertices.
+		 * @param widthInches  Width of the item's vertex in inches.
+		 * @param heightInches Height of the item's vertex in inches.
+		 * @param data         Data to initially populate the item's vertex with.
+		 * @return this
+		 */
+		public <T> Batch<K> addVertices(final Stream<T> items, final ToDoubleFunction<? super T> widthInches,
+				final ToDoubleFunction<? super T> heightInches,
+				final Function<? super T, ImmutableMap<K, JVariant>> data) {
+			Objects.requireNonNull(items, "items is null");
+			Objects.requireNonNull(widthInches, "widthInches is null");
+			Objects.requireNonNull(heightInches, "heightInches is null");
+			Objects.requireNonNull(data, "data is null");
+			items.forEachOrdered(item -> addVertex(widthInches.applyAsDouble(item), heightInches.applyAsDouble(item),
+					data.apply(item)));
+			return this;
+		}
+
+		/**
+		 * Adds the vertices and edges to the GraphModel and the QML models. The
+		 * batch cannot be used afterwards. Every row is built before anything is
+		 * added, so a failure leaves the GraphModel unchanged. Sizes and edge
+		 * endpoints were validated when they were added.
+		 *
+		 * @return Handle of each vertex, indexed by its index in the batch.
+		 */
+		public int[] commit() {
+			Preconditions.checkState(!committed, "Batch was already committed");
+
+			final String[] uuids = new String[vertexCount];
+			final List<ImmutableMap<String, JVariant>> rows = new ArrayList<>(vertexCount);
+			long uuid = graph.nextUUID;
+			for (int v = 0; v < vertexCount; ++v) {
+				uuids[v] = getIDAsGraphVizIDString(++uuid);
+				rows.add(getRow(v, uuids[v]));
+			}
+			committed = true;
+			graph.nextUUID = uuid;
+
+			final GraphCore core = graph.core;
+			core.reserve(core.getLimit() + vertexCount);
+			final int[] handles = new int[vertexCount];
+			for (int v = 0; v < vertexCount; ++v) {
+				handles[v] = graph.addVertex(uuids[v], widths[v], heights[v], rows.get(v));
+			}
+			for (int e = 0; e < edgeCount; ++e) {
+				core.addEdge(handles[tails[e]], handles[heads[e]]);
+			}
+			return handles;
+		}
+
+		/**
+		 * @param vertex Index of the vertex in the batch.
+		 * @param uuid   ID of the vertex.
+		 * @return The vertex's initial row, with column values overriding the data
+		 *         it was added with.
+		 */
+		private ImmutableMap<String, JVariant> getRow(final int vertex, final String uuid) {
+			Preconditions.checkElementIndex(vertex, vertexCount);
+			final ImmutableMap<K, JVariant> data = initialData.get(vertex);
+			final ImmutableMap.Builder<String, JVariant> builder = rowBuilder(uuid, data.size() + columns.size());
+			for (final Entry<K, JVariant> entry : data.entrySet()) {
+				if (getValue(columns.get(entry.getKey()), vertex) == null) {
+					builder.put(entry.getKey().toString(), entry.getValue());
+				}
+			}
+			for (final Entry<K, JVariant[]> column : columns.entrySet()) {
+				final JVariant value = getValue(column.getValue(), vertex);
+				if (value != null) {
+					builder.put(column.getKey().toString(), value);
+				}
+			}
+			return builder.build();
+		}
+
+		/**
+		 * @return The value of a column for a vertex, or null if the column does
+		 *         not exist or the vertex was added after it was set.
+		 */
+		private JVariant getValue(final JVariant[] column, final int vertex) {
+			return column != null && vertex < column.length ? column[vertex] : null;
+		}
+
+		/**
+		 * Sets the value of a key for every vertex added so far. Overrides any value
+		 * given for the key when the vertex was added. Vertices added afterwards
+		 * have no value from the column.
+		 *
+		 * @param key    The key.
+		 * @param values Value of the key for each vertex, indexed by its index in
+		 *               the batch. Null values leave the vertex without one.
+		 * @return this
+		 */
+		public Batch<K> putAll(final K key, final JVariant[] values) {
+			Objects.requireNonNull(key, "key is null");
+			Objects.requireNonNull(values, "values is null");
+			Preconditions.checkArgument(values.length == vertexCount, "values.length != vertex count");
+			columns.put(key, values.clone());
+			return this;
+		}
+
+	}
+
+	/**
+	 * Applies a LayoutResult to the models, possibly over several calls so that
+	 * the QML thread is not blocked by a large graph.
+	 */
+	private class LayoutApplication {
+		// How many items are applied between checks of the clock.
+		private static final int ITEMS_PER_CLOCK_CHECK = 64;
+
+		private final LayoutResult layout;
+		private final long budgetNanos;
+		private boolean started = false;
+		// Next handle to apply the node of, then the next handle to apply the
+		// edges ending at.
+		private int nextVertex = 0;
+		private int nextEdgeHead = 0;
+		private int itemsSinceClockCheck = 0;
+		private SplineTessellator tessellator = null;
+		private EdgeGeometry geometry = null;
+
+		LayoutApplication(final LayoutResult layout, final long budgetNanos) {
+			this.layout = Objects.requireNonNull(layout, "layout is null");
+			this.budgetNanos = budgetNanos;
+		}
+
+		/**
+		 * Applies the layout until it is done or the budget is used up.
+		 *
+		 * @return True if the whole layout has been applied.
+		 */
+		boolean apply() {
+			final long start = System.nanoTime();
+			if (!started) {
+				started = true;
+				singletonModel.put(GraphKey.width, new JVariant(layout.getGraphWidthInches() * dpi));
+				singletonModel.put(GraphKey.height, new JVariant(layout.getGraphHeightInches() * dpi));
+				geometry = edgeGeometry;
+				final EdgeKey geometryKey = geometry == EdgeGeometry.BEZIER ? EdgeKey.bezier : EdgeKey.polyline;
+				if (edgeRows.getGeometryKey() != geometryKey) {
+					// Every edge is republished in the new role.
+					edgeRows.clear();
+					edgeRows.setGeometryKey(geometryKey);
+				}
+				// Only touch the rows of edges that were added, removed, or moved.
+				edgeRows.beginUpdate();
+				// Vertices and edges move, so visibility is recomputed once done.
+				spatialIndexDirty = true;
+				// Tolerances are in view pixels, so edges are tessellated more
+				// coarsely the further the view is zoomed out.
+				tessellator = new SplineTessellator(edgeFlatness / zoom, edgeMinSegmentLength / zoom);
+			}
+
+			for (; nextVertex < core.getLimit(); ++nextVertex) {
+				if (isOverBudget(start)) {
+					return false;
+				}
+				if (core.isAlive(nextVertex)) {
+					// Vertices created after the snapshot was taken are not in the
+					// layout and are skipped.
+					core.apply(nextVertex, layout, dpi);
+				}
+			}
+
+			for (; nextEdgeHead < core.getLimit(); ++nextEdgeHead) {
+				if (isOverBudget(start)) {
+					return false;
+				}
+				if (!core.isAlive(nextEdgeHead)) {
+					continue;
+				}
+				final List<EdgeDefinition> edges = layout.getEdges(core.getID(nextEdgeHead));
+				itemsSinceClockCheck += edges.size();
+				for (final EdgeDefinition e : edges) {
+					final int tail = core.getHandle(e.getTailUUID());
+					if (tail >= 0) {
+						edgeRows.put(tail, nextEdgeHead, e.getTailUUID(), e.getHeadUUID(),
+								geometry == EdgeGeometry.BEZIER ? e.getBezier() : e.getPolyLine(tessellator));
+					}
+				}
+			}
+
+			edgeRows.finishUpdate();
+			if (viewport != null) {
+				rebuildSpatialIndex();
+			}
+			return true;
+		}
+
+		private boolean isOverBudget(final long start) {
+			if (++itemsSinceClockCheck < ITEMS_PER_CLOCK_CHECK) {
+				return false;
+			}
+			itemsSinceClockCheck = 0;
+			return System.nanoTime() - start >= budgetNanos;
+		}
+	}
+
 	private static final JVariant ZERO_VARIANT = new JVariant(0);
 	private static final JVariant ONE_VARIANT = new JVariant(1);
 
+	private static final int FRAGMENT_BUFFER_SIZE = 1024;
+	// Fraction of the viewport's size added to each of its sides when deciding
+	// what is visible, so that scrolling a little does not change the models.
+	private static final double VIEWPORT_MARGIN = 0.25;
+	// Flatness in pixels used when measuring the distance to a Bezier edge.
+	private static final double HIT_FLATNESS = 0.25;
+
 	private static final Logger log = LoggerFactory.getLogger(GraphModel.class);
 	private static final ExecutorService LAYOUT_EXEC = Executors.newSingleThreadExecutor();
+	private static final ExecutorService COMPONENT_EXEC = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(),
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graph-component-%d").build());
+	// Shared so that GraphModels showing the same graph share cached layouts.
+	private static final LayoutEngine DEFAULT_LAYOUT_ENGINE = new ComponentLayoutEngine(
+			new CachingLayoutEngine(new GraphVizLayoutEngine()), COMPONENT_EXEC);
 
 	/**
 	 * Create a new GraphModel using an Enum as the user define role type.
@@ -93,12 +451,33 @@ public class GraphModel<K> {
 	 *                    GraphModel's graph. Used for converting between inches
 	 *                    (used by GraphViz) and pixels.
 	 * @return The new GraphModel.
+	 * @throws IllegalStateException Thrown if GraphViz is not installed.
 	 */
 	public static <T extends Enum<T>> GraphModel<T> create(final String modelPrefix, final JQMLModelFactory factory,
 			final Class<T> keyClass, final double dpi) {
+		GraphVizProcessPool.checkInstalled();
+		return create(modelPrefix, factory, keyClass, dpi, DEFAULT_LAYOUT_ENGINE);
+	}
+
+	/**
+	 * Create a new GraphModel using an Enum as the user define role type.
+	 *
+	 * @param modelPrefix  The prefix prepended to the 3 QML models this class
+	 *                     creates (_graph, _vertices, and _edges).
+	 * @param factory      Factory for creating the models.
+	 * @param keyClass     Class of an Enum type that contains the user defined
+	 *                     roles.
+	 * @param dpi          Dots per inch on the display that will display this
+	 *                     GraphModel's graph. Used for converting between inches
+	 *                     (used by GraphViz) and pixels.
+	 * @param layoutEngine Engine used to lay out the graph.
+	 * @return The new GraphModel.
+	 */
+	public static <T extends Enum<T>> GraphModel<T> create(final String modelPrefix, final JQMLModelFactory factory,
+			final Class<T> keyClass, final double dpi, final LayoutEngine layoutEngine) {
 		final ImmutableSet<String> userKeys = EnumSet.allOf(keyClass).stream().map(Enum::name)
 				.collect(ImmutableSet.toImmutableSet());
-		return new GraphModel<>(modelPrefix, factory, userKeys, dpi);
+		return new GraphModel<>(modelPrefix, ModelFactory.of(factory), userKeys, dpi, layoutEngine);
 	}
 
 	/**
@@ -113,12 +492,66 @@ public class GraphModel<K> {
 	 *                    GraphModel's graph. Used for converting between inches
 	 *                    (used by GraphViz) and pixels.
 	 * @return The new GraphModel.
+	 * @throws IllegalStateException Thrown if GraphViz is not installed.
 	 */
 	public static <T> GraphModel<T> create(final String modelPrefix, final JQMLModelFactory factory,
 			final ImmutableSet<T> keySet, final double dpi) {
+		GraphVizProcessPool.checkInstalled();
+		return create(modelPrefix, factory, keySet, dpi, DEFAULT_LAYOUT_ENGINE);
+	}
+
+	/**
+	 * Create a new GraphModel using a Set of keys.
+	 *
+	 * @param modelPrefix  The prefix prepended to the 3 QML models this class
+	 *                     creates (_graph, _vertices, and _edges).
+	 * @param factory      Factory for creating the models.
+	 * @param keySet       Set of all valid keys/roles for sending user defined
+	 *                     data to QML.
+	 * @param dpi          Dots per inch on the display that will display this
+	 *                     GraphModel's graph. Used for converting between inches
+	 *                     (used by GraphViz) and pixels.
+	 * @param layoutEngine Engine used to lay out the graph.
+	 * @return The new GraphModel.
+	 */
+	public static <T> GraphModel<T> create(final String modelPrefix, final JQMLModelFactory factory,
+			final ImmutableSet<T> keySet, final double dpi, final LayoutEngine layoutEngine) {
 		final ImmutableSet<String> stringKeySet = keySet.stream().map(Object::toString)
 				.collect(ImmutableSet.toImmutableSet());
-		return new GraphModel<>(modelPrefix, factory, stringKeySet, dpi);
+		return new GraphModel<>(modelPrefix, ModelFactory.of(factory), stringKeySet, dpi, layoutEngine);
+	}
+
+	private static double getBezierDistance(final List<Point2D> points, final double x, final double y) {
+		// Distance to the flattened curve, then to the arrow head.
+		final int curveSize = points.size() - 3;
+		double distance = Double.POSITIVE_INFINITY;
+		final double[] coords = new double[6];
+		final CubicCurve2D curve = new CubicCurve2D.Double();
+		for (int i = 0; i + 3 < curveSize; i += 3) {
+			curve.setCurve(points.get(i), points.get(i + 1), points.get(i + 2), points.get(i + 3));
+			double lastX = points.get(i).getX();
+			double lastY = points.get(i).getY();
+			for (final PathIterator iter = curve.getPathIterator(null, HIT_FLATNESS); !iter.isDone(); iter.next()) {
+				iter.currentSegment(coords);
+				distance = Math.min(distance, Line2D.ptSegDist(lastX, lastY, coords[0], coords[1], x, y));
+				lastX = coords[0];
+				lastY = coords[1];
+			}
+		}
+		return Math.min(distance, getDistance(points.subList(curveSize, points.size()), x, y));
+	}
+
+	private static double getDistance(final List<Point2D> polyline, final double x, final double y) {
+		if (polyline.size() == 1) {
+			return polyline.get(0).distance(x, y);
+		}
+		double distance = Double.POSITIVE_INFINITY;
+		for (int i = 1; i < polyline.size(); ++i) {
+			final Point2D a = polyline.get(i - 1);
+			final Point2D b = polyline.get(i);
+			distance = Math.min(distance, Line2D.ptSegDist(a.getX(), a.getY(), b.getX(), b.getY(), x, y));
+		}
+		return distance;
 	}
 
 	private static String getIDAsGraphVizIDString(final long uuid) {
@@ -129,56 +562,68 @@ public class GraphModel<K> {
 				.collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append).toString();
 	}
 
-	private static String runGraphViz(final String graphDef) {
-		final ProcessBuilder builder = new ProcessBuilder();
-		// dot command
-		// plain output format
-		// invert y coordinates, (0, 0) is top left.
-		if (SystemUtils.IS_OS_WINDOWS) {
-			builder.command("dot.exe", "-Tplain", "-y");
-		} else {
-			builder.command("dot", "-Tplain", "-y");
-		}
-		try {
-			final Process p = builder.start();
-
-			try (final BufferedWriter w = new BufferedWriter(new OutputStreamWriter(p.getOutputStream()))) {
-				w.write(graphDef);
-				w.flush();
-			}
-
-			final BufferedReader input = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			final StringBuilder plainFormat = new StringBuilder();
-			String line;
-			while ((line = input.readLine()) != null) {
-				plainFormat.append(line);
-				plainFormat.append(System.lineSeparator());
-			}
-
-			return plainFormat.toString();
-		} catch (final IOException e) {
-			log.error("Failed to run \"dot\" utility.  Check that it is installed and on the PATH.", e);
-			throw new IllegalStateException("Failed to run \"dot\" utility", e);
-		}
+	private static ImmutableMap.Builder<String, JVariant> rowBuilder(final String uuid, final int userKeyCount) {
+		final ImmutableMap.Builder<String, JVariant> builder = ImmutableMap.builderWithExpectedSize(5 + userKeyCount);
+		builder.put(VertexKey.id.toString(), new JVariant(uuid));
+		builder.put(VertexKey.x.toString(), ZERO_VARIANT);
+		builder.put(VertexKey.y.toString(), ZERO_VARIANT);
+		builder.put(VertexKey.width.toString(), ONE_VARIANT);
+		builder.put(VertexKey.height.toString(), ONE_VARIANT);
+		return builder;
 	}
 
 	private long nextUUID = 1;
-	private final JQMLSingletonModel<GraphKey> singletonModel;
-	private final JQMLListModel<String> vertexModel;
+	private final ModelFactory.SingletonModel<GraphKey> singletonModel;
+	private final ModelFactory.ListModel<String> vertexModel;
+
+	private final EdgeRows edgeRows;
 
-	private final JQMLListModel<EdgeKey> edgeModel;
+	// Left, top, right, and bottom of the viewport plus its margin, in pixels, or
+	// null if the models are not virtualized.
+	private double[] viewport = null;
+	private final SpatialGrid vertexGrid;
+	private final SpatialGrid edgeGrid;
+	// Set when vertices or edges may have moved since the grids were built. The
+	// grids are rebuilt right away when virtualized, otherwise by the next query.
+	private boolean spatialIndexDirty = true;
+	// Scale of the view from the last call to setViewport().
+	private double zoom = 1;
+	private EdgeGeometry edgeGeometry = EdgeGeometry.POLYLINE;
+	// Tolerances for tessellating edges, in view pixels.
+	private double edgeFlatness = SplineTessellator.DEFAULT_FLATNESS;
+	private double edgeMinSegmentLength = SplineTessellator.DEFAULT_MIN_SEGMENT_LENGTH;
 
-	private final List<Vertex<K>> vertices = new ArrayList<>();
+	private final GraphCore core = new GraphCore();
 
 	private final double dpi;
 
-	private GraphModel(final String modelPrefix, final JQMLModelFactory factory, final ImmutableSet<String> userKeys,
-			final double dpi) {
+	private final LayoutEngine layoutEngine;
+
+	private final DOTWriter fragmentWriter = new DOTWriter(FRAGMENT_BUFFER_SIZE);
+
+	// Guards the fields describing the latest asynchronous layout.
+	private final Object layoutLock = new Object();
+	private long layoutGeneration = 0;
+	private Future<?> pendingLayout = null;
+	private CompletableFuture<Void> pendingResult = null;
+
+	/**
+	 * @param modelPrefix  The prefix prepended to the 3 QML models this class
+	 *                     creates (_graph, _vertices, and _edges).
+	 * @param factory      Factory for creating the models.
+	 * @param userKeys     User defined keys/roles of the vertices.
+	 * @param dpi          Dots per inch on the display that will display this
+	 *                     GraphModel's graph.
+	 * @param layoutEngine Engine used to lay out the graph.
+	 */
+	GraphModel(final String modelPrefix, final ModelFactory factory, final ImmutableSet<String> userKeys,
+			final double dpi, final LayoutEngine layoutEngine) {
 		Objects.requireNonNull(modelPrefix, "modelPrefix is null");
 		Objects.requireNonNull(factory, "factory is null");
 		this.dpi = dpi;
+		this.layoutEngine = Objects.requireNonNull(layoutEngine, "layoutEngine is null");
 
-		singletonModel = factory.createSingletonModel(modelPrefix + "_graph", GraphKey.class, PutMode.RETURN_NULL);
+		singletonModel = factory.createGraphModel(modelPrefix + "_graph");
 		singletonModel.put(GraphKey.width, new JVariant(dpi));
 		singletonModel.put(GraphKey.height, new JVariant(dpi));
 
@@ -188,45 +633,95 @@ public class GraphModel<K> {
 		final Set<String> keys = new HashSet<>();
 		keys.addAll(builtInKeys);
 		keys.addAll(userKeys);
-		vertexModel = factory.createListModel(modelPrefix + "_vertices", keys, PutMode.RETURN_NULL);
-		edgeModel = factory.createListModel(modelPrefix + "_edges", EdgeKey.class, PutMode.RETURN_NULL);
+		vertexModel = factory.createVertexModel(modelPrefix + "_vertices", keys);
+		edgeRows = new EdgeRows(factory.createEdgeModel(modelPrefix + "_edges"));
+		vertexGrid = new SpatialGrid(this::publishVertex, this::unpublishVertex, core::isPublished);
+		edgeGrid = new SpatialGrid(edgeRows::publish, edgeRows::unpublish, edgeRows::isPublished);
 	}
 
-	private void applyGraphVizOutput(final GraphVizParser parser) {
-		singletonModel.put(GraphKey.width, new JVariant(parser.getGraphWidthInches() * dpi));
-		singletonModel.put(GraphKey.height, new JVariant(parser.getGraphHeightInches() * dpi));
+	/**
+	 * Adds an edge between two vertices.
+	 *
+	 * @param tail Handle of the vertex the edge starts at.
+	 * @param head Handle of the vertex the edge ends at.
+	 * @return True if the edge was added, false if it already existed.
+	 * @throws IllegalArgumentException Thrown if either handle is not a vertex in
+	 *                                  this GraphModel.
+	 */
+	public boolean addEdge(final int tail, final int head) {
+		return core.addEdge(tail, head);
+	}
 
-		for (final Vertex<K> b : vertices) {
-			b.apply(parser.getNode(b.getUUID()), dpi);
+	private int addVertex(final String uuid, final double widthInches, final double heightInches,
+			final ImmutableMap<String, JVariant> row) {
+		final int handle = core.add(uuid, widthInches, heightInches, row);
+		if (viewport == null) {
+			core.publish(handle, vertexModel.add(row));
+		} else {
+			// Published by the next layout or viewport change if it is visible.
+			spatialIndexDirty = true;
 		}
+		return handle;
+	}
 
-		// Add edges
-		edgeModel.clear();
-		for (final Vertex<K> b : vertices) {
-			final List<EdgeDefinition> edges = parser.getEdges(b.getUUID());
+	private void applyLayoutIfLatest(final long generation, final LayoutApplication application,
+			final CompletableFuture<Void> result, final Executor qmlThreadExecutor) {
+		synchronized (layoutLock) {
+			if (generation != layoutGeneration) {
+				result.cancel(false);
+			}
+		}
+		if (result.isDone()) {
+			return;
+		}
 
-			for (final EdgeDefinition e : edges) {
-				final ImmutableList<Point2D> polyline = e.getPolyLine();
-				final ImmutableMap.Builder<EdgeKey, JVariant> builder = ImmutableMap.builder();
-				builder.put(EdgeKey.polyline, new JVariant(polyline));
-				builder.put(EdgeKey.head_id, new JVariant(e.getHeadUUID()));
-				builder.put(EdgeKey.tail_id, new JVariant(e.getTailUUID()));
-				edgeModel.add(builder.build());
+		try {
+			if (application.apply()) {
+				result.complete(null);
+			} else {
+				// Yield the QML thread so it can draw a frame before the next slice.
+				qmlThreadExecutor.execute(() -> applyLayoutIfLatest(generation, application, result, qmlThreadExecutor));
 			}
+		} catch (final Throwable e) {
+			result.completeExceptionally(e);
 		}
 	}
 
+	/**
+	 * @return A new Batch for adding many vertices and edges to this GraphModel
+	 *         at once.
+	 */
+	public Batch<K> batch() {
+		return new Batch<>(this);
+	}
+
 	/**
 	 * Remove all vertices from the graph.
 	 */
 	public void clear() {
 		vertexModel.clear();
-		edgeModel.clear();
+		edgeRows.clear();
 
-		for (final Vertex<K> v : vertices) {
-			v.invalidate();
+		core.clear();
+		spatialIndexDirty = true;
+	}
+
+	/**
+	 * Stops virtualizing the models, publishing every vertex and edge to QML
+	 * again.
+	 */
+	public void clearViewport() {
+		if (viewport == null) {
+			return;
 		}
-		vertices.clear();
+		viewport = null;
+		edgeRows.setPublishNewEdges(true);
+		for (int h = 0; h < core.getLimit(); ++h) {
+			if (core.isAlive(h) && !core.isPublished(h)) {
+				publishVertex(h);
+			}
+		}
+		edgeRows.publishAll();
 	}
 
 	/**
@@ -235,19 +730,10 @@ public class GraphModel<K> {
 	 * @return Newly created Vertex in this graph.
 	 */
 	public Vertex<K> createVertex(final double widthInches, final double heightInches) {
-		final ImmutableMap.Builder<String, JVariant> builder = ImmutableMap.builder();
-
 		final String uuid = getIDAsGraphVizIDString(++nextUUID);
-		builder.put(VertexKey.id.toString(), new JVariant(uuid));
-		builder.put(VertexKey.x.toString(), ZERO_VARIANT);
-		builder.put(VertexKey.y.toString(), ZERO_VARIANT);
-		builder.put(VertexKey.width.toString(), ONE_VARIANT);
-		builder.put(VertexKey.height.toString(), ONE_VARIANT);
+		final ImmutableMap.Builder<String, JVariant> builder = rowBuilder(uuid, 0);
 
-		final Map<String, JVariant> map = vertexModel.add(builder.build());
-		final Vertex<K> v = new Vertex<>(uuid, widthInches, heightInches, this, map);
-		vertices.add(v);
-		return v;
+		return getVertex(addVertex(uuid, widthInches, heightInches, builder.build()));
 	}
 
 	/**
@@ -260,54 +746,188 @@ public class GraphModel<K> {
 			final ImmutableMap<K, JVariant> initialData) {
 		Objects.requireNonNull(initialData, "initialData is null");
 
-		final ImmutableMap.Builder<String, JVariant> builder = ImmutableMap.builder();
-
 		final String uuid = getIDAsGraphVizIDString(++nextUUID);
-		builder.put(VertexKey.id.toString(), new JVariant(uuid));
-		builder.put(VertexKey.x.toString(), ZERO_VARIANT);
-		builder.put(VertexKey.y.toString(), ZERO_VARIANT);
-		builder.put(VertexKey.width.toString(), ONE_VARIANT);
-		builder.put(VertexKey.height.toString(), ONE_VARIANT);
+		final ImmutableMap.Builder<String, JVariant> builder = rowBuilder(uuid, 0);
 		for (final Entry<K, JVariant> entry : initialData.entrySet()) {
 			builder.put(entry.getKey().toString(), entry.getValue());
 		}
 
-		final Map<String, JVariant> map = vertexModel.add(builder.build());
-		final Vertex<K> v = new Vertex<>(uuid, widthInches, heightInches, this, map);
-		vertices.add(v);
-		return v;
+		return getVertex(addVertex(uuid, widthInches, heightInches, builder.build()));
+	}
+
+	/**
+	 * Creates a vertex without creating a Vertex object for it.
+	 *
+	 * @param widthInches  Width of the new vertex in inches.
+	 * @param heightInches Height of the new vertex in inches.
+	 * @return Handle of the new vertex. Handles of removed vertices are reused.
+	 */
+	public int createVertexHandle(final double widthInches, final double heightInches) {
+		final String uuid = getIDAsGraphVizIDString(++nextUUID);
+		final ImmutableMap.Builder<String, JVariant> builder = rowBuilder(uuid, 0);
+
+		return addVertex(uuid, widthInches, heightInches, builder.build());
+	}
+
+	/**
+	 * Finds the edges of the last applied layout that pass near a point.
+	 *
+	 * @param x         X coordinate of the point in pixels, in the same
+	 *                  coordinates as the layout.
+	 * @param y         Y coordinate of the point in pixels.
+	 * @param tolerance Maximum distance in pixels from the point to an edge's
+	 *                  polyline.
+	 * @return The edges near the point, nearest first.
+	 */
+	public ImmutableList<EdgeHit<K>> edgesNear(final double x, final double y, final double tolerance) {
+		Preconditions.checkArgument(tolerance >= 0, "tolerance < 0");
+		updateSpatialIndex();
+
+		final List<EdgeHit<K>> hits = new ArrayList<>();
+		edgeGrid.query(x - tolerance, y - tolerance, x + tolerance, y + tolerance, entry -> {
+			final int tail = edgeRows.getTail(entry);
+			final int head = edgeRows.getHead(entry);
+			// Skip edges whose vertices were removed since the layout.
+			if (!core.isAlive(tail) || !core.isAlive(head) || !core.getID(tail).equals(edgeRows.getTailID(entry))
+					|| !core.getID(head).equals(edgeRows.getHeadID(entry))) {
+				return;
+			}
+			final List<Point2D> points = edgeRows.getPolyline(entry);
+			final double distance = edgeRows.getGeometryKey() == EdgeKey.bezier ? getBezierDistance(points, x, y)
+					: getDistance(points, x, y);
+			if (distance <= tolerance) {
+				hits.add(new EdgeHit<>(getVertex(tail), getVertex(head), distance));
+			}
+		});
+		hits.sort(Comparator.comparingDouble(EdgeHit::getDistance));
+		return ImmutableList.copyOf(hits);
+	}
+
+	/**
+	 * Calls consumer with the handle of every vertex in the graph.
+	 *
+	 * @param consumer Consumer of the handles.
+	 */
+	public void forEachVertex(final IntConsumer consumer) {
+		Objects.requireNonNull(consumer, "consumer is null");
+		for (int h = 0; h < core.getLimit(); ++h) {
+			if (core.isAlive(h)) {
+				consumer.accept(h);
+			}
+		}
+	}
+
+	/**
+	 * @param handle Handle of a vertex.
+	 * @param index  Index of the child, less than getChildCount(handle).
+	 * @return Handle of the vertex's index-th child, in the order the children
+	 *         were added.
+	 */
+	public int getChild(final int handle, final int index) {
+		return core.getChild(handle, index);
 	}
 
-	private String getGraphVizDOTFormat() {
-		final StringBuilder builder = new StringBuilder(vertices.size() * 64);
+	/**
+	 * @param handle Handle of a vertex.
+	 * @return The number of children the vertex has.
+	 */
+	public int getChildCount(final int handle) {
+		return core.getChildCount(handle);
+	}
+
+	GraphCore getCore() {
+		return core;
+	}
 
-		final String newLine = System.lineSeparator();
+	/**
+	 * @param handle Handle of a vertex.
+	 * @param index  Index of the parent, less than getParentCount(handle).
+	 * @return Handle of the vertex's index-th parent.
+	 */
+	public int getParent(final int handle, final int index) {
+		return core.getParent(handle, index);
+	}
 
-		builder.append("digraph {");
-		builder.append(newLine);
+	/**
+	 * @param handle Handle of a vertex.
+	 * @return The number of parents the vertex has.
+	 */
+	public int getParentCount(final int handle) {
+		return core.getParentCount(handle);
+	}
 
-		for (final Vertex<K> v : vertices) {
-			v.addGraphVizNodeDefinition(builder);
-			builder.append(newLine);
-			v.addGraphVizEdgeDefinition(builder);
-			builder.append(newLine);
+	/**
+	 * @return An immutable copy of the graph's current structure.
+	 */
+	public GraphSnapshot getSnapshot() {
+		final GraphSnapshot.Builder builder = GraphSnapshot.builder(dpi);
+		final int[] indices = new int[core.getLimit()];
+		for (int h = 0; h < core.getLimit(); ++h) {
+			if (core.isAlive(h)) {
+				final int index = builder.addVertex(core.getID(h), core.getWidthInches(h), core.getHeightInches(h));
+				builder.setVersion(index, core.getVersion(h));
+				builder.setDOTFragment(index, core.getDOTFragment(h, fragmentWriter));
+				indices[h] = index;
+			}
 		}
+		for (int h = 0; h < core.getLimit(); ++h) {
+			if (core.isAlive(h)) {
+				for (int i = 0; i < core.getChildCount(h); ++i) {
+					builder.addEdge(indices[h], indices[core.getChild(h, i)]);
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @param handle Handle of a vertex.
+	 * @return A Vertex object for the vertex.
+	 * @throws IllegalArgumentException Thrown if handle is not a vertex in this
+	 *                                  GraphModel.
+	 */
+	public Vertex<K> getVertex(final int handle) {
+		return new Vertex<>(this, handle, core.getGeneration(handle), core.getID(handle));
+	}
+
+	/**
+	 * @param uuid UUID of a vertex.
+	 * @return The vertex with the UUID, if it is in this GraphModel.
+	 */
+	public Optional<Vertex<K>> getVertex(final String uuid) {
+		Objects.requireNonNull(uuid, "uuid is null");
+		final int handle = core.getHandle(uuid);
+		return handle < 0 ? Optional.empty() : Optional.of(getVertex(handle));
+	}
 
-		builder.append("}");
+	/**
+	 * @return The number of vertices in the graph.
+	 */
+	public int getVertexCount() {
+		return core.getCount();
+	}
 
-		return builder.toString();
+	/**
+	 * @param handle Handle to check.
+	 * @return True if handle is a vertex in this GraphModel.
+	 */
+	public boolean isVertex(final int handle) {
+		return core.isAlive(handle);
 	}
 
 	/**
 	 * Lays out the graph, sending the updated layout data to QML. Must be called
 	 * after changing the structure of the graph in order for those changes to be
 	 * applied. Call blocks until data is updated.
+	 *
+	 * Cancels any layout requested by layoutGraphAsync() that has not yet been
+	 * applied so that it cannot overwrite this one.
 	 */
 	public void layoutGraph() {
-		final String graphVizFormat = getGraphVizDOTFormat();
-		final GraphVizParser parser = new GraphVizParser(runGraphViz(graphVizFormat), dpi);
-
-		applyGraphVizOutput(parser);
+		synchronized (layoutLock) {
+			supersedePendingLayout();
+		}
+		new LayoutApplication(layoutEngine.layout(getSnapshot()), Long.MAX_VALUE).apply();
 	}
 
 	/**
@@ -316,19 +936,107 @@ public class GraphModel<K> {
 	 * applied. Call returns immediately and data is updated on the provided
 	 * executor. Provide executor must be the QML Thread executor.
 	 *
+	 * Only the most recently requested layout is applied. Requesting a layout
+	 * cancels the future returned by any earlier request that has not yet been
+	 * applied and stops its layout if it is queued or running. Cancelling the
+	 * returned future also stops its layout.
+	 *
 	 * @param qmlThreadExecutor The QML Thread executor. Used to update the models
 	 *                          once the layout is complete.
-	 * @return CompletableFuture that completes once the models are updated.
+	 * @return CompletableFuture that completes once the models are updated, is
+	 *         cancelled if the layout is superseded by a newer one, or completes
+	 *         exceptionally if the layout fails, with LayoutTimeoutException if
+	 *         it did not finish in time.
 	 */
 	public CompletableFuture<Void> layoutGraphAsync(final ExecutorService qmlThreadExecutor) {
+		return layoutGraphAsync(qmlThreadExecutor, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Same as layoutGraphAsync(ExecutorService), except that the models are
+	 * updated in slices that each take about frameBudgetMilliseconds, with a new
+	 * task submitted to the QML Thread executor for each slice so that QML can
+	 * draw frames in between. The returned future completes once the last slice
+	 * has been applied. Until then the models contain a mix of the old and new
+	 * layout.
+	 *
+	 * @param qmlThreadExecutor       The QML Thread executor. Used to update the
+	 *                                models once the layout is complete.
+	 * @param frameBudgetMilliseconds Time each slice of the update may take.
+	 * @return CompletableFuture that completes once the models are updated, is
+	 *         cancelled if the layout is superseded by a newer one, or completes
+	 *         exceptionally if the layout fails, with LayoutTimeoutException if
+	 *         it did not finish in time.
+	 */
+	public CompletableFuture<Void> layoutGraphAsync(final ExecutorService qmlThreadExecutor,
+			final long frameBudgetMilliseconds) {
 		Objects.requireNonNull(qmlThreadExecutor, "qmlTheadExecutor is null");
+		Preconditions.checkArgument(frameBudgetMilliseconds > 0, "frameBudgetMilliseconds <= 0");
+		// Saturates, so Long.MAX_VALUE means no budget.
+		final long budgetNanos = TimeUnit.MILLISECONDS.toNanos(frameBudgetMilliseconds);
+
+		final GraphSnapshot snapshot = getSnapshot();
+		final CompletableFuture<Void> result = new CompletableFuture<>();
+
+		final Future<?> task;
+		synchronized (layoutLock) {
+			final long generation = supersedePendingLayout();
+			task = LAYOUT_EXEC.submit(() -> {
+				try {
+					final LayoutResult layout = layoutEngine.layout(snapshot);
+					final LayoutApplication application = new LayoutApplication(layout, budgetNanos);
+					qmlThreadExecutor.execute(
+							() -> applyLayoutIfLatest(generation, application, result, qmlThreadExecutor));
+				} catch (final Throwable e) {
+					result.completeExceptionally(e);
+				}
+			});
+			pendingLayout = task;
+			pendingResult = result;
+		}
 
-		final String graphVizFormat = getGraphVizDOTFormat();
+		result.whenComplete((v, e) -> {
+			if (result.isCancelled()) {
+				task.cancel(true);
+			}
+		});
+		return result;
+	}
 
-		final CompletableFuture<GraphVizParser> future = CompletableFuture
-				.supplyAsync(() -> new GraphVizParser(runGraphViz(graphVizFormat), dpi), LAYOUT_EXEC);
+	private void publishVertex(final int handle) {
+		core.publish(handle, vertexModel.add(core.getValues(handle)));
+	}
 
-		return future.thenAcceptAsync(parser -> applyGraphVizOutput(parser), qmlThreadExecutor);
+	private void rebuildSpatialIndex() {
+		vertexGrid.build(core.getLimit(), (h, bounds) -> {
+			if (!core.isAlive(h)) {
+				return false;
+			}
+			bounds[0] = core.getX(h);
+			bounds[1] = core.getY(h);
+			bounds[2] = bounds[0] + core.getWidth(h);
+			bounds[3] = bounds[1] + core.getHeight(h);
+			return true;
+		});
+		edgeGrid.build(edgeRows.getEntryCount(), edgeRows::getBounds);
+		if (viewport != null) {
+			vertexGrid.showViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+			edgeGrid.showViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+		}
+		spatialIndexDirty = false;
+	}
+
+	/**
+	 * Removes an edge between two vertices.
+	 *
+	 * @param tail Handle of the vertex the edge starts at.
+	 * @param head Handle of the vertex the edge ends at.
+	 * @return True if the edge was removed, false if it did not exist.
+	 * @throws IllegalArgumentException Thrown if either handle is not a vertex in
+	 *                                  this GraphModel.
+	 */
+	public boolean removeEdge(final int tail, final int head) {
+		return core.removeEdge(tail, head);
 	}
 
 	/**
@@ -339,20 +1047,232 @@ public class GraphModel<K> {
 		Objects.requireNonNull(removed, "removed is null");
 		Preconditions.checkArgument(this == removed.getOwningGraph(),
 				"Attempted to remove Vertex not owned by this GraphModel");
-		// Remove the item from the JQmlListModel
-		for (int i = 0; i < vertexModel.size(); ++i) {
-			if (vertexModel.get(i) == removed.getOwningGraph()) {
-				vertexModel.remove(i);
-				break;
+		return removeVertex(removed.getHandle());
+	}
+
+	/**
+	 * @param handle Handle of the vertex to remove.
+	 * @return True if the vertex was removed, false if handle was not a vertex.
+	 */
+	public boolean removeVertex(final int handle) {
+		if (!core.isAlive(handle)) {
+			return false;
+		}
+
+		// The core moves the last row into the vertex's row, so drop the last.
+		final boolean published = core.isPublished(handle);
+		final int last = core.getRowCount() - 1;
+		core.remove(handle);
+		if (published) {
+			vertexModel.remove(last);
+		}
+		spatialIndexDirty = true;
+		return true;
+	}
+
+	/**
+	 * Removes many vertices at once. Rows of remaining vertices are moved into
+	 * the gaps left by the removed vertices and then the rows at the end of the
+	 * vertices model are removed, so each remaining row is changed at most once.
+	 *
+	 * @param removed Vertices to remove.
+	 * @return The number of vertices removed.
+	 */
+	public int removeVertices(final Collection<Vertex<K>> removed) {
+		Objects.requireNonNull(removed, "removed is null");
+
+		final BitSet removedHandles = new BitSet(core.getLimit());
+		for (final Vertex<K> v : removed) {
+			Objects.requireNonNull(v, "removed contains null");
+			Preconditions.checkArgument(this == v.getOwningGraph(),
+					"Attempted to remove Vertex not owned by this GraphModel");
+			removedHandles.set(v.getHandle());
+		}
+
+		final int count = core.getRowCount();
+		final BitSet removedRows = new BitSet(count);
+		for (int h = removedHandles.nextSetBit(0); h >= 0; h = removedHandles.nextSetBit(h + 1)) {
+			if (core.isPublished(h)) {
+				removedRows.set(core.getRowIndex(h));
 			}
 		}
 
-		if (vertices.remove(removed)) {
-			removed.invalidate();
-			return true;
+		final int remaining = count - removedRows.cardinality();
+		if (remaining == 0) {
+			vertexModel.clear();
 		} else {
-			return false;
+			// Fill the removed rows below remaining with the kept rows above it.
+			int hole = removedRows.nextSetBit(0);
+			for (int row = remaining; row < count && hole < remaining; ++row) {
+				if (!removedRows.get(row)) {
+					core.moveRow(row, hole);
+					hole = removedRows.nextSetBit(hole + 1);
+				}
+			}
+		}
+
+		// Every removed vertex now owns a row at the end, so removing them from
+		// the last row down never moves another row.
+		for (int row = count - 1; row >= remaining; --row) {
+			core.remove(core.getHandleAtRow(row));
+			if (remaining != 0) {
+				vertexModel.remove(row);
+			}
+		}
+		// Then the vertices that were not published.
+		for (int h = removedHandles.nextSetBit(0); h >= 0; h = removedHandles.nextSetBit(h + 1)) {
+			core.remove(h);
 		}
+		spatialIndexDirty = true;
+		return removedHandles.cardinality();
+	}
+
+	/**
+	 * Sets how the shape of edges is published to QML by the next layout. In
+	 * EdgeGeometry.POLYLINE mode, the default, edges are tessellated into the
+	 * polyline role. In EdgeGeometry.BEZIER mode, the cubic Bezier control points
+	 * from the layout are published in the bezier role instead, with no
+	 * tessellation. Changing the mode republishes every edge.
+	 *
+	 * @param geometry How edges are published.
+	 */
+	public void setEdgeGeometry(final EdgeGeometry geometry) {
+		edgeGeometry = Objects.requireNonNull(geometry, "geometry is null");
+	}
+
+	/**
+	 * Sets how finely edges are tessellated into polylines by the next layout.
+	 * Both tolerances are in pixels of the view, so they are scaled by the zoom
+	 * passed to setViewport().
+	 *
+	 * @param flatness         Pieces of an edge whose midpoint is less than this
+	 *                         distance from their chord are drawn as a straight
+	 *                         line.
+	 * @param minSegmentLength Pieces of an edge shorter than this are not split
+	 *                         further.
+	 */
+	public void setEdgeTessellation(final double flatness, final double minSegmentLength) {
+		Preconditions.checkArgument(flatness > 0, "flatness <= 0");
+		Preconditions.checkArgument(minSegmentLength >= 0, "minSegmentLength < 0");
+		edgeFlatness = flatness;
+		edgeMinSegmentLength = minSegmentLength;
+	}
+
+	/**
+	 * Virtualizes the vertices and edges models so that only the vertices and
+	 * edges whose bounding boxes are near the viewport are published to QML. The
+	 * full layout is kept in the GraphModel, and moving the viewport only
+	 * publishes and unpublishes the vertices and edges that came into or went
+	 * out of view. Vertices created while the models are virtualized are
+	 * published by the next layout or viewport change if they are visible.
+	 *
+	 * @param x      Left of the viewport in the zoomed view, in pixels.
+	 * @param y      Top of the viewport in the zoomed view, in pixels.
+	 * @param width  Width of the viewport in pixels.
+	 * @param height Height of the viewport in pixels.
+	 * @param zoom   Scale of the view, so that a point (px, py) in the graph is
+	 *               at (px * zoom, py * zoom) in the view. Edges are tessellated
+	 *               for this scale by the next layout.
+	 */
+	public void setViewport(final double x, final double y, final double width, final double height,
+			final double zoom) {
+		Preconditions.checkArgument(width >= 0, "width < 0");
+		Preconditions.checkArgument(height >= 0, "height < 0");
+		Preconditions.checkArgument(zoom > 0, "zoom <= 0");
+
+		final double marginX = width * VIEWPORT_MARGIN;
+		final double marginY = height * VIEWPORT_MARGIN;
+		final double[] bounds = { (x - marginX) / zoom, (y - marginY) / zoom, (x + width + marginX) / zoom,
+				(y + height + marginY) / zoom };
+		if (viewport == null) {
+			edgeRows.setPublishNewEdges(false);
+			spatialIndexDirty = true;
+		}
+		viewport = bounds;
+		this.zoom = zoom;
+
+		if (spatialIndexDirty) {
+			rebuildSpatialIndex();
+		} else {
+			vertexGrid.setViewport(bounds[0], bounds[1], bounds[2], bounds[3]);
+			edgeGrid.setViewport(bounds[0], bounds[1], bounds[2], bounds[3]);
+		}
+	}
+
+	private void unpublishVertex(final int handle) {
+		final int last = core.getRowCount() - 1;
+		core.unpublish(handle);
+		vertexModel.remove(last);
+	}
+
+	/**
+	 * Cancels the pending asynchronous layout, if any, and starts a new
+	 * generation. Must hold layoutLock.
+	 *
+	 * @return The generation of the new layout.
+	 */
+	private long supersedePendingLayout() {
+		if (pendingResult != null) {
+			pendingResult.cancel(false);
+			pendingLayout.cancel(true);
+			pendingResult = null;
+			pendingLayout = null;
+		}
+		return ++layoutGeneration;
+	}
+
+	private void updateSpatialIndex() {
+		if (spatialIndexDirty) {
+			rebuildSpatialIndex();
+		}
+	}
+
+	/**
+	 * Finds the vertex at a point in the graph. Uses the positions of the last
+	 * applied layout.
+	 *
+	 * @param x X coordinate of the point in pixels, in the same coordinates as
+	 *          the vertices' x and y.
+	 * @param y Y coordinate of the point in pixels.
+	 * @return The vertex whose box contains the point, the one with the nearest
+	 *         center if several do.
+	 */
+	public Optional<Vertex<K>> vertexAt(final double x, final double y) {
+		updateSpatialIndex();
+
+		final int[] nearest = { -1 };
+		final double[] nearestDistance = { Double.POSITIVE_INFINITY };
+		vertexGrid.query(x, y, x, y, h -> {
+			final double distance = Point2D.distance(core.getX(h) + core.getWidth(h) / 2,
+					core.getY(h) + core.getHeight(h) / 2, x, y);
+			if (distance < nearestDistance[0]) {
+				nearest[0] = h;
+				nearestDistance[0] = distance;
+			}
+		});
+		return nearest[0] < 0 ? Optional.empty() : Optional.of(getVertex(nearest[0]));
+	}
+
+	/**
+	 * Finds the vertices whose boxes intersect a rectangle. Uses the positions of
+	 * the last applied layout.
+	 *
+	 * @param x      Left of the rectangle in pixels, in the same coordinates as
+	 *               the vertices' x and y.
+	 * @param y      Top of the rectangle in pixels.
+	 * @param width  Width of the rectangle in pixels.
+	 * @param height Height of the rectangle in pixels.
+	 * @return The vertices in the rectangle, in no particular order.
+	 */
+	public ImmutableList<Vertex<K>> verticesIn(final double x, final double y, final double width,
+			final double height) {
+		Preconditions.checkArgument(width >= 0, "width < 0");
+		Preconditions.checkArgument(height >= 0, "height < 0");
+		updateSpatialIndex();
+
+		final ImmutableList.Builder<Vertex<K>> vertices = ImmutableList.builder();
+		vertexGrid.query(x, y, x + width, y + height, h -> vertices.add(getVertex(h)));
+		return vertices.build();
 	}
 
 }
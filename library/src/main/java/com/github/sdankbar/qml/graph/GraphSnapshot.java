@@ -0,0 +1,282 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.github.sdankbar.qml.graph.graphviz.DOTWriter;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.ImmutableDoubleArray;
+import com.google.common.primitives.ImmutableIntArray;
+import com.google.common.primitives.ImmutableLongArray;
+
+/**
+ * Immutable copy of the structure of a graph. Handed to a LayoutEngine so that
+ * the graph can be laid out on another thread while the GraphModel continues
+ * to be modified. Vertices are referred to by their index in the snapshot.
+ */
+public class GraphSnapshot {
+
+	/**
+	 * Builder for GraphSnapshots.
+	 */
+	public static class Builder {
+		private final double dpi;
+		private final ImmutableList.Builder<String> ids = ImmutableList.builder();
+		private final ImmutableDoubleArray.Builder widths = ImmutableDoubleArray.builder();
+		private final ImmutableDoubleArray.Builder heights = ImmutableDoubleArray.builder();
+		private int vertexCount = 0;
+		// Edges in the order they were added.
+		private int[] tails = new int[16];
+		private int[] heads = new int[16];
+		private int edgeCount = 0;
+		private long[] versions = new long[16];
+		private byte[][] dotFragments = new byte[16][];
+
+		private Builder(final double dpi) {
+			Preconditions.checkArgument(dpi > 0, "dpi <= 0");
+			this.dpi = dpi;
+		}
+
+		/**
+		 * Adds a directed edge between two vertices that have already been added.
+		 *
+		 * @param tail Index of the vertex the edge starts at.
+		 * @param head Index of the vertex the edge ends at.
+		 * @return this
+		 */
+		public Builder addEdge(final int tail, final int head) {
+			Preconditions.checkElementIndex(tail, vertexCount, "tail");
+			Preconditions.checkElementIndex(head, vertexCount, "head");
+			if (edgeCount == tails.length) {
+				tails = Arrays.copyOf(tails, edgeCount * 2);
+				heads = Arrays.copyOf(heads, edgeCount * 2);
+			}
+			tails[edgeCount] = tail;
+			heads[edgeCount] = head;
+			++edgeCount;
+			return this;
+		}
+
+		/**
+		 * Adds a vertex.
+		 *
+		 * @param id           Identifier of the vertex. Must be a valid GraphViz ID.
+		 * @param widthInches  Width of the vertex in inches.
+		 * @param heightInches Height of the vertex in inches.
+		 * @return Index of the new vertex.
+		 */
+		public int addVertex(final String id, final double widthInches, final double heightInches) {
+			Objects.requireNonNull(id, "id is null");
+			Preconditions.checkArgument(widthInches > 0, "widthInches <= 0");
+			Preconditions.checkArgument(heightInches > 0, "heightInches <= 0");
+			ids.add(id);
+			widths.add(widthInches);
+			heights.add(heightInches);
+			if (vertexCount == versions.length) {
+				versions = Arrays.copyOf(versions, versions.length * 2);
+				dotFragments = Arrays.copyOf(dotFragments, dotFragments.length * 2);
+			}
+			return vertexCount++;
+		}
+
+		/**
+		 * @return The new GraphSnapshot.
+		 */
+		public GraphSnapshot build() {
+			// Compressed sparse rows, keeping each vertex's edges in the order they
+			// were added.
+			final int[] offsets = new int[vertexCount + 1];
+			for (int e = 0; e < edgeCount; ++e) {
+				++offsets[tails[e] + 1];
+			}
+			for (int v = 0; v < vertexCount; ++v) {
+				offsets[v + 1] += offsets[v];
+			}
+			final int[] next = Arrays.copyOf(offsets, vertexCount);
+			final int[] targets = new int[edgeCount];
+			for (int e = 0; e < edgeCount; ++e) {
+				targets[next[tails[e]]++] = heads[e];
+			}
+			return new GraphSnapshot(this, offsets, ImmutableIntArray.copyOf(targets));
+		}
+
+		/**
+		 * Sets the DOT definition of a vertex and its edges, as written by
+		 * DOTWriter.toFragment(), so that it does not need to be written again.
+		 * Must agree with the vertex's size and edges in this snapshot.
+		 *
+		 * @param vertex   Index of the vertex.
+		 * @param fragment The vertex's DOT fragment. Not copied, so must not be
+		 *                 modified afterwards.
+		 * @return this
+		 */
+		public Builder setDOTFragment(final int vertex, final byte[] fragment) {
+			Preconditions.checkElementIndex(vertex, vertexCount, "vertex");
+			dotFragments[vertex] = fragment;
+			return this;
+		}
+
+		/**
+		 * Sets the version of a vertex. Two snapshots that contain a vertex with the
+		 * same identifier and the same, non-zero, version must agree on that vertex's
+		 * size and edges. Lets LayoutEngines reuse earlier work for parts of a graph
+		 * that have not changed.
+		 *
+		 * @param vertex  Index of the vertex.
+		 * @param version The vertex's version.
+		 * @return this
+		 */
+		public Builder setVersion(final int vertex, final long version) {
+			Preconditions.checkElementIndex(vertex, vertexCount, "vertex");
+			versions[vertex] = version;
+			return this;
+		}
+	}
+
+	/**
+	 * @param dpi Dots per inch on the display the graph will be drawn on.
+	 * @return A new Builder.
+	 */
+	public static Builder builder(final double dpi) {
+		return new Builder(dpi);
+	}
+
+	private final double dpi;
+	private final ImmutableList<String> ids;
+	private final ImmutableDoubleArray widths;
+	private final ImmutableDoubleArray heights;
+	// The children of vertex v are childTargets[childOffsets[v], childOffsets[v + 1]).
+	private final int[] childOffsets;
+	private final ImmutableIntArray childTargets;
+	private final ImmutableLongArray versions;
+	private final byte[][] dotFragments;
+
+	private GraphSnapshot(final Builder builder, final int[] childOffsets, final ImmutableIntArray childTargets) {
+		dpi = builder.dpi;
+		ids = builder.ids.build();
+		widths = builder.widths.build();
+		heights = builder.heights.build();
+		this.childOffsets = childOffsets;
+		this.childTargets = childTargets;
+		versions = ImmutableLongArray.copyOf(Arrays.copyOf(builder.versions, builder.vertexCount));
+		dotFragments = Arrays.copyOf(builder.dotFragments, builder.vertexCount);
+	}
+
+	/**
+	 * @param vertex Index of the vertex.
+	 * @return Indices of the vertices that have an edge from vertex.
+	 */
+	public ImmutableIntArray getChildren(final int vertex) {
+		Preconditions.checkElementIndex(vertex, ids.size(), "vertex");
+		return childTargets.subArray(childOffsets[vertex], childOffsets[vertex + 1]);
+	}
+
+	/**
+	 * @return The number of edges in the graph.
+	 */
+	public int getEdgeCount() {
+		return childTargets.length();
+	}
+
+	/**
+	 * @return The number of dots per inch on the display the graph will be drawn
+	 *         on.
+	 */
+	public double getDPI() {
+		return dpi;
+	}
+
+	/**
+	 * @param vertex Index of the vertex.
+	 * @return The vertex's DOT fragment, or null if it has none. Must not be
+	 *         modified.
+	 * @see Builder#setDOTFragment(int, byte[])
+	 */
+	public byte[] getDOTFragment(final int vertex) {
+		Preconditions.checkElementIndex(vertex, dotFragments.length, "vertex");
+		return dotFragments[vertex];
+	}
+
+	/**
+	 * @param vertex Index of the vertex.
+	 * @return Height of the vertex in inches.
+	 */
+	public double getHeightInches(final int vertex) {
+		return heights.get(vertex);
+	}
+
+	/**
+	 * @param vertex Index of the vertex.
+	 * @return The vertex's identifier.
+	 */
+	public String getID(final int vertex) {
+		return ids.get(vertex);
+	}
+
+	/**
+	 * @param vertex Index of the vertex.
+	 * @return The vertex's version, or 0 if it is not known.
+	 * @see Builder#setVersion(int, long)
+	 */
+	public long getVersion(final int vertex) {
+		return versions.get(vertex);
+	}
+
+	/**
+	 * @return The number of vertices in the graph.
+	 */
+	public int getVertexCount() {
+		return ids.size();
+	}
+
+	/**
+	 * @param vertex Index of the vertex.
+	 * @return Width of the vertex in inches.
+	 */
+	public double getWidthInches(final int vertex) {
+		return widths.get(vertex);
+	}
+
+	/**
+	 * @return The graph in GraphViz's DOT language. Use DOTWriter to write large
+	 *         graphs without holding the whole document in memory.
+	 */
+	public String toDOT() {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream(ids.size() * 64);
+		try {
+			new DOTWriter().write(this, Channels.newChannel(output));
+		} catch (final IOException e) {
+			// Not possible when writing to memory.
+			throw new IllegalStateException("Failed to write DOT", e);
+		}
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+}
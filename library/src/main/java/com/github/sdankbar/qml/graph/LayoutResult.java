@@ -0,0 +1,168 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import com.github.sdankbar.qml.graph.parsing.EdgeDefinition;
+import com.github.sdankbar.qml.graph.parsing.NodeDefinition;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Immutable result of laying out a graph. Node positions and the graph's size
+ * are in inches, edge geometry is in pixels.
+ */
+public class LayoutResult {
+
+	/**
+	 * Builder for LayoutResults.
+	 */
+	public static class Builder {
+		private double graphWidth = 1;
+		private double graphHeight = 1;
+		private final ImmutableMap.Builder<String, NodeDefinition> nodes = ImmutableMap.builder();
+		private final ImmutableListMultimap.Builder<String, EdgeDefinition> edges = ImmutableListMultimap.builder();
+
+		private Builder() {
+			// Use LayoutResult.builder()
+		}
+
+		/**
+		 * @param def Edge to add.
+		 * @return this
+		 */
+		public Builder addEdge(final EdgeDefinition def) {
+			Objects.requireNonNull(def, "def is null");
+			edges.put(def.getHeadUUID(), def);
+			return this;
+		}
+
+		/**
+		 * @param def Node to add.
+		 * @return this
+		 */
+		public Builder addNode(final NodeDefinition def) {
+			Objects.requireNonNull(def, "def is null");
+			nodes.put(def.getNodeID(), def);
+			return this;
+		}
+
+		/**
+		 * @return The new LayoutResult.
+		 */
+		public LayoutResult build() {
+			return new LayoutResult(this);
+		}
+
+		/**
+		 * @param widthInches  Width of the graph in inches.
+		 * @param heightInches Height of the graph in inches.
+		 * @return this
+		 */
+		public Builder setGraphSize(final double widthInches, final double heightInches) {
+			graphWidth = widthInches;
+			graphHeight = heightInches;
+			return this;
+		}
+	}
+
+	/**
+	 * @return A new Builder.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	private final double graphWidth;
+	private final double graphHeight;
+	private final ImmutableMap<String, NodeDefinition> nodes;
+	private final ImmutableListMultimap<String, EdgeDefinition> edges;
+
+	private LayoutResult(final Builder builder) {
+		graphWidth = builder.graphWidth;
+		graphHeight = builder.graphHeight;
+		nodes = builder.nodes.build();
+		edges = builder.edges.build();
+	}
+
+	/**
+	 * @param nodeID The node to search for.
+	 * @return The NodeDefinition of "nodeID", or empty if it is not in the
+	 *         layout.
+	 */
+	public Optional<NodeDefinition> findNode(final String nodeID) {
+		return Optional.ofNullable(nodes.get(nodeID));
+	}
+
+	/**
+	 * @return All edges in the layout.
+	 */
+	public ImmutableCollection<EdgeDefinition> getEdges() {
+		return edges.values();
+	}
+
+	/**
+	 * @param nodeID The node to search for.
+	 * @return The edges that end at the vertex "nodeID".
+	 */
+	public ImmutableList<EdgeDefinition> getEdges(final String nodeID) {
+		return edges.get(nodeID);
+	}
+
+	/**
+	 * @return The height of the graph in inches.
+	 */
+	public double getGraphHeightInches() {
+		return graphHeight;
+	}
+
+	/**
+	 * @return The width of the graph in inches.
+	 */
+	public double getGraphWidthInches() {
+		return graphWidth;
+	}
+
+	/**
+	 * @param nodeID The node to search for.
+	 * @return The found NodeDefinition.
+	 */
+	public NodeDefinition getNode(final String nodeID) {
+		final NodeDefinition def = nodes.get(nodeID);
+		Preconditions.checkArgument(def != null, "Could not find Node for \"%s\"", nodeID);
+		return def;
+	}
+
+	/**
+	 * @return All nodes in the layout.
+	 */
+	public ImmutableCollection<NodeDefinition> getNodes() {
+		return nodes.values();
+	}
+
+}
@@ -0,0 +1,154 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.github.sdankbar.qml.JQMLModelFactory;
+import com.github.sdankbar.qml.JVariant;
+import com.github.sdankbar.qml.models.AbstractJQMLMapModel.PutMode;
+import com.github.sdankbar.qml.models.list.JQMLListModel;
+import com.github.sdankbar.qml.models.singleton.JQMLSingletonModel;
+
+/**
+ * Creates the 3 QML models a GraphModel publishes to. The models are reduced
+ * to the operations GraphModel performs on them so that, where JQML models
+ * cannot be created, such as in tests, they can be replaced by plain
+ * collections.
+ */
+interface ModelFactory {
+
+	/**
+	 * List model with one row per vertex or edge.
+	 *
+	 * @param <K> Key/role type.
+	 */
+	interface ListModel<K> {
+
+		/**
+		 * @param row Values of the new row.
+		 * @return The row, appended to the end of the model. Changes to the map
+		 *         are sent to QML.
+		 */
+		Map<K, JVariant> add(Map<K, JVariant> row);
+
+		/**
+		 * Removes every row.
+		 */
+		void clear();
+
+		/**
+		 * Removes a row, moving every later row up by one.
+		 *
+		 * @param index Index of the row.
+		 */
+		void remove(int index);
+
+	}
+
+	/**
+	 * Model with a single set of values.
+	 *
+	 * @param <K> Key/role type.
+	 */
+	interface SingletonModel<K> {
+
+		/**
+		 * @param key   The key.
+		 * @param value New value of the key.
+		 */
+		void put(K key, JVariant value);
+
+	}
+
+	/**
+	 * @param factory Factory for creating JQML models.
+	 * @return A ModelFactory that creates JQML models.
+	 */
+	static ModelFactory of(final JQMLModelFactory factory) {
+		Objects.requireNonNull(factory, "factory is null");
+		return new ModelFactory() {
+			@Override
+			public ListModel<EdgeKey> createEdgeModel(final String name) {
+				return wrap(factory.createListModel(name, EdgeKey.class, PutMode.RETURN_NULL));
+			}
+
+			@Override
+			public SingletonModel<GraphKey> createGraphModel(final String name) {
+				final JQMLSingletonModel<GraphKey> model = factory.createSingletonModel(name, GraphKey.class,
+						PutMode.RETURN_NULL);
+				return model::put;
+			}
+
+			@Override
+			public ListModel<String> createVertexModel(final String name, final Set<String> keys) {
+				return wrap(factory.createListModel(name, keys, PutMode.RETURN_NULL));
+			}
+		};
+	}
+
+	/**
+	 * @param model JQML list model.
+	 * @return ListModel that modifies model.
+	 */
+	static <K> ListModel<K> wrap(final JQMLListModel<K> model) {
+		return new ListModel<K>() {
+			@Override
+			public Map<K, JVariant> add(final Map<K, JVariant> row) {
+				return model.add(row);
+			}
+
+			@Override
+			public void clear() {
+				model.clear();
+			}
+
+			@Override
+			public void remove(final int index) {
+				model.remove(index);
+			}
+		};
+	}
+
+	/**
+	 * @param name Name of the model in QML.
+	 * @return New model for the edges, keyed by EdgeKey.
+	 */
+	ListModel<EdgeKey> createEdgeModel(String name);
+
+	/**
+	 * @param name Name of the model in QML.
+	 * @return New model for the whole graph, keyed by GraphKey.
+	 */
+	SingletonModel<GraphKey> createGraphModel(String name);
+
+	/**
+	 * @param name Name of the model in QML.
+	 * @param keys Keys of the vertex rows.
+	 * @return New model for the vertices.
+	 */
+	ListModel<String> createVertexModel(String name, Set<String> keys);
+
+}
@@ -0,0 +1,293 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Uniform grid over the bounding boxes of a set of items, such as the vertices
+ * or edges of a graph, used to find the items in a rectangle and to decide
+ * which items are near a viewport. An item is visible while any cell its
+ * bounding box overlaps also overlaps the viewport. Each item counts how many
+ * of its cells are visible, so moving the viewport only has to look at the
+ * cells that entered or left it.
+ *
+ * Not thread safe.
+ */
+class SpatialGrid {
+
+	/**
+	 * Provides the bounding boxes of the items.
+	 */
+	interface Bounds {
+		/**
+		 * @param item   The item.
+		 * @param bounds Set to the item's minimum x, minimum y, maximum x and
+		 *               maximum y.
+		 * @return False if there is no such item.
+		 */
+		boolean get(int item, double[] bounds);
+	}
+
+	private static final double MIN_CELL_SIZE = 256;
+	private static final int MAX_CELLS_PER_AXIS = 1024;
+
+	private final IntConsumer show;
+	private final IntConsumer hide;
+	private final IntPredicate shown;
+
+	private double cellSize = MIN_CELL_SIZE;
+	private int columns = 0;
+	private int rows = 0;
+	// Compressed sparse rows of the items overlapping each cell.
+	private int[] cellStarts = new int[1];
+	private int[] cellItems = new int[0];
+	private int itemCount = 0;
+	// Bounding box of each item, and whether it exists.
+	private double[] boxes = new double[0];
+	private boolean[] exists = new boolean[0];
+	// The query each item was last visited in, so items in several cells are
+	// only reported once.
+	private int[] queries = new int[0];
+	private int query = 0;
+	// How many visible cells each item overlaps.
+	private int[] visibleCells = new int[0];
+
+	// Visible cells, [firstColumn, lastColumn] x [firstRow, lastRow]. Empty if
+	// firstColumn > lastColumn.
+	private int firstColumn = 0;
+	private int lastColumn = -1;
+	private int firstRow = 0;
+	private int lastRow = -1;
+
+	/**
+	 * @param show  Called when an item becomes visible.
+	 * @param hide  Called when an item stops being visible.
+	 * @param shown Whether an item is currently shown.
+	 */
+	SpatialGrid(final IntConsumer show, final IntConsumer hide, final IntPredicate shown) {
+		this.show = Objects.requireNonNull(show, "show is null");
+		this.hide = Objects.requireNonNull(hide, "hide is null");
+		this.shown = Objects.requireNonNull(shown, "shown is null");
+	}
+
+	/**
+	 * Builds the grid from the items' current bounding boxes. Must be followed by
+	 * a call to showViewport() before setViewport() is used.
+	 *
+	 * @param count  Every item is less than this.
+	 * @param bounds Bounding boxes of the items.
+	 */
+	void build(final int count, final Bounds bounds) {
+		itemCount = count;
+		boxes = new double[count * 4];
+		exists = new boolean[count];
+		queries = new int[count];
+		final double[] box = new double[4];
+		double extentX = 0;
+		double extentY = 0;
+		for (int i = 0; i < count; ++i) {
+			if (bounds.get(i, box)) {
+				exists[i] = true;
+				System.arraycopy(box, 0, boxes, i * 4, 4);
+				extentX = Math.max(extentX, box[2]);
+				extentY = Math.max(extentY, box[3]);
+			}
+		}
+
+		cellSize = Math.max(MIN_CELL_SIZE, Math.max(extentX, extentY) / MAX_CELLS_PER_AXIS);
+		columns = (int) (extentX / cellSize) + 1;
+		rows = (int) (extentY / cellSize) + 1;
+
+		// Counting sort of the items into the cells they overlap.
+		cellStarts = new int[columns * rows + 1];
+		for (int pass = 0; pass < 2; ++pass) {
+			final int[] next = pass == 0 ? null : cellStarts.clone();
+			for (int i = 0; i < count; ++i) {
+				if (!exists[i]) {
+					continue;
+				}
+				final int c1 = column(boxes[i * 4 + 2]);
+				final int r1 = row(boxes[i * 4 + 3]);
+				for (int r = row(boxes[i * 4 + 1]); r <= r1; ++r) {
+					for (int c = column(boxes[i * 4]); c <= c1; ++c) {
+						final int cell = r * columns + c;
+						if (pass == 0) {
+							++cellStarts[cell + 1];
+						} else {
+							cellItems[next[cell]++] = i;
+						}
+					}
+				}
+			}
+			if (pass == 0) {
+				for (int cell = 0; cell < columns * rows; ++cell) {
+					cellStarts[cell + 1] += cellStarts[cell];
+				}
+				cellItems = new int[cellStarts[columns * rows]];
+			}
+		}
+		visibleCells = new int[count];
+		firstColumn = 0;
+		lastColumn = -1;
+		firstRow = 0;
+		lastRow = -1;
+	}
+
+	private int column(final double x) {
+		return Math.max(0, Math.min(columns - 1, (int) Math.floor(x / cellSize)));
+	}
+
+	/**
+	 * Calls consumer once with each item whose bounding box intersects a
+	 * rectangle.
+	 *
+	 * @param minX     Left of the rectangle.
+	 * @param minY     Top of the rectangle.
+	 * @param maxX     Right of the rectangle.
+	 * @param maxY     Bottom of the rectangle.
+	 * @param consumer Consumer of the items.
+	 */
+	void query(final double minX, final double minY, final double maxX, final double maxY,
+			final IntConsumer consumer) {
+		if (maxX < 0 || maxY < 0 || minX > maxX || minY > maxY) {
+			return;
+		}
+		++query;
+		final int c1 = column(maxX);
+		final int r1 = row(maxY);
+		for (int r = row(minY); r <= r1; ++r) {
+			for (int c = column(minX); c <= c1; ++c) {
+				final int cell = r * columns + c;
+				for (int j = cellStarts[cell]; j < cellStarts[cell + 1]; ++j) {
+					final int i = cellItems[j];
+					if (queries[i] != query) {
+						queries[i] = query;
+						if (boxes[i * 4] <= maxX && boxes[i * 4 + 2] >= minX && boxes[i * 4 + 1] <= maxY
+								&& boxes[i * 4 + 3] >= minY) {
+							consumer.accept(i);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private int row(final double y) {
+		return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / cellSize)));
+	}
+
+	private void setRange(final double minX, final double minY, final double maxX, final double maxY) {
+		if (maxX < 0 || maxY < 0 || minX > maxX || minY > maxY || minX >= columns * cellSize
+				|| minY >= rows * cellSize) {
+			firstColumn = 0;
+			lastColumn = -1;
+			firstRow = 0;
+			lastRow = -1;
+		} else {
+			firstColumn = column(minX);
+			lastColumn = column(maxX);
+			firstRow = row(minY);
+			lastRow = row(maxY);
+		}
+	}
+
+	/**
+	 * Moves the viewport, showing and hiding the items in the cells that entered
+	 * or left it.
+	 *
+	 * @param minX Left of the viewport.
+	 * @param minY Top of the viewport.
+	 * @param maxX Right of the viewport.
+	 * @param maxY Bottom of the viewport.
+	 */
+	void setViewport(final double minX, final double minY, final double maxX, final double maxY) {
+		final int oldFirstColumn = firstColumn;
+		final int oldLastColumn = lastColumn;
+		final int oldFirstRow = firstRow;
+		final int oldLastRow = lastRow;
+		setRange(minX, minY, maxX, maxY);
+
+		// Entering cells first, so items that span both kinds are never hidden
+		// and shown again.
+		for (int r = firstRow; r <= lastRow; ++r) {
+			for (int c = firstColumn; c <= lastColumn; ++c) {
+				if (r < oldFirstRow || r > oldLastRow || c < oldFirstColumn || c > oldLastColumn) {
+					final int cell = r * columns + c;
+					for (int j = cellStarts[cell]; j < cellStarts[cell + 1]; ++j) {
+						if (visibleCells[cellItems[j]]++ == 0) {
+							show.accept(cellItems[j]);
+						}
+					}
+				}
+			}
+		}
+		for (int r = oldFirstRow; r <= oldLastRow; ++r) {
+			for (int c = oldFirstColumn; c <= oldLastColumn; ++c) {
+				if (r < firstRow || r > lastRow || c < firstColumn || c > lastColumn) {
+					final int cell = r * columns + c;
+					for (int j = cellStarts[cell]; j < cellStarts[cell + 1]; ++j) {
+						if (--visibleCells[cellItems[j]] == 0) {
+							hide.accept(cellItems[j]);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Shows or hides every item whose visibility in a viewport differs from
+	 * whether it is currently shown.
+	 *
+	 * @param minX Left of the viewport.
+	 * @param minY Top of the viewport.
+	 * @param maxX Right of the viewport.
+	 * @param maxY Bottom of the viewport.
+	 */
+	void showViewport(final double minX, final double minY, final double maxX, final double maxY) {
+		Arrays.fill(visibleCells, 0);
+		setRange(minX, minY, maxX, maxY);
+		for (int r = firstRow; r <= lastRow; ++r) {
+			for (int c = firstColumn; c <= lastColumn; ++c) {
+				final int cell = r * columns + c;
+				for (int j = cellStarts[cell]; j < cellStarts[cell + 1]; ++j) {
+					++visibleCells[cellItems[j]];
+				}
+			}
+		}
+		for (int i = 0; i < itemCount; ++i) {
+			if (exists[i] && (visibleCells[i] > 0) != shown.test(i)) {
+				if (visibleCells[i] > 0) {
+					show.accept(i);
+				} else {
+					hide.accept(i);
+				}
+			}
+		}
+	}
+
+}
@@ -22,48 +22,36 @@
  */
 package com.github.sdankbar.qml.graph;
 
-import java.util.HashSet;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 import com.github.sdankbar.qml.JVariant;
-import com.github.sdankbar.qml.graph.parsing.NodeDefinition;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 
 /**
- * Represents a vertex in the graph.
+ * Represents a vertex in the graph. A lightweight view of a vertex handle in
+ * its GraphModel, so any number of Vertex objects may refer to the same vertex
+ * and compare equal.
  *
  * @param <K> Type used to define user specified model roles. toString() method
  *        must return valid QML identifier.
  */
 public class Vertex<K> {
 
-	private static JVariant toPixels(final double inches, final double dpi) {
-		return new JVariant(inches * dpi);
-	}
-
+	private final GraphModel<K> graph;
+	private final int handle;
+	private final int generation;
+	// Kept so the identifier can still be read after the vertex is removed.
 	private final String uuid;
 
-	private GraphModel<K> graph;
-	private final Set<Vertex<K>> children = new HashSet<>();
-
-	private final Set<Vertex<K>> parents = new HashSet<>();
-
-	private final Map<String, JVariant> qmlModelMap;
-
-	private double vertexWidthInches = 1;
-	private double vertexHeightInches = 1;
-
-	Vertex(final String uuid, final double widthInches, final double heightInches, final GraphModel<K> graph,
-			final Map<String, JVariant> qmlModelMap) {
-		this.uuid = Objects.requireNonNull(uuid, "uuid is null");
+	Vertex(final GraphModel<K> graph, final int handle, final int generation, final String uuid) {
 		this.graph = Objects.requireNonNull(graph, "graph is null");
-		this.qmlModelMap = Objects.requireNonNull(qmlModelMap, "qmlModelMap is null");
-		setVertexSizeDimensionInches(widthInches, heightInches);
+		this.handle = handle;
+		this.generation = generation;
+		this.uuid = Objects.requireNonNull(uuid, "uuid is null");
 	}
 
 	/**
@@ -79,49 +67,23 @@ public class Vertex<K> {
 	 */
 	public void addChild(final Vertex<K> v) {
 		Objects.requireNonNull(v, "v is null");
-		checkIsAttachedToGraph();
-		Preconditions.checkArgument(v.graph == graph, "v is not from the same GraphModel as this Vertex");
-		children.add(v);
-		v.addParent(this);
-	}
-
-	void addGraphVizEdgeDefinition(final StringBuilder builder) {
-		if (!children.isEmpty()) {
-			builder.append(uuid);
-			builder.append(" -> {");
-
-			builder.append(children.stream().map(c -> c.uuid).collect(Collectors.joining(", ")));
-
-			// arrowhead=none so that the last point of the returned spline touches the
-			// vertex the edge ends on.
-			builder.append("} [arrowhead=none]");
-		}
-	}
-
-	void addGraphVizNodeDefinition(final StringBuilder builder) {
-		builder.append(uuid);
-		builder.append(" [width=");
-		builder.append(vertexWidthInches);
-		builder.append(" height=");
-		builder.append(vertexHeightInches);
-		builder.append(" shape=box]");
-	}
-
-	private void addParent(final Vertex<K> parent) {
-		parents.add(parent);
-	}
-
-	void apply(final NodeDefinition def, final double dpi) {
-		qmlModelMap.put(VertexKey.x.toString(), toPixels(def.getX(), dpi));
-		qmlModelMap.put(VertexKey.y.toString(), toPixels(def.getY(), dpi));
-		qmlModelMap.put(VertexKey.width.toString(), toPixels(def.getWidth(), dpi));
-		qmlModelMap.put(VertexKey.height.toString(), toPixels(def.getHeight(), dpi));
+		final GraphCore core = getCore();
+		Preconditions.checkArgument(v.getOwningGraph() == graph, "v is not from the same GraphModel as this Vertex");
+		core.addEdge(handle, v.handle);
 	}
 
-	private void checkIsAttachedToGraph() {
-		if (graph == null) {
-			throw new IllegalStateException("Vertex was removed from its parent graph");
+	/**
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		} else if (!(obj instanceof Vertex)) {
+			return false;
 		}
+		final Vertex<?> other = (Vertex<?>) obj;
+		return graph == other.graph && handle == other.handle && generation == other.generation;
 	}
 
 	/**
@@ -133,19 +95,42 @@ public class Vertex<K> {
 	 */
 	public Optional<JVariant> get(final K key) {
 		Objects.requireNonNull(key, "key is null");
-		checkIsAttachedToGraph();
-		return Optional.ofNullable(qmlModelMap.get(key.toString()));
+		return Optional.ofNullable(getCore().getValue(handle, key.toString()));
 	}
 
 	/**
-	 * @return a list of this Vertex's children.
+	 * @return a list of this Vertex's children, in the order they were added.
 	 * @throws IllegalStateException Thrown if this function is called after the
 	 *                               Vertex has been removed from its parent
 	 *                               GraphModel.
 	 */
 	public ImmutableList<Vertex<K>> getChildren() {
-		checkIsAttachedToGraph();
-		return ImmutableList.copyOf(children);
+		final GraphCore core = getCore();
+		final ImmutableList.Builder<Vertex<K>> builder = ImmutableList.builder();
+		for (int i = 0; i < core.getChildCount(handle); ++i) {
+			builder.add(graph.getVertex(core.getChild(handle, i)));
+		}
+		return builder.build();
+	}
+
+	private GraphCore getCore() {
+		final GraphCore core = graph.getCore();
+		if (!core.isCurrent(handle, generation)) {
+			throw new IllegalStateException("Vertex was removed from its parent graph");
+		}
+		return core;
+	}
+
+	/**
+	 * @return The handle of this Vertex in its GraphModel. Only valid until the
+	 *         Vertex is removed.
+	 * @throws IllegalStateException Thrown if this function is called after the
+	 *                               Vertex has been removed from its parent
+	 *                               GraphModel.
+	 */
+	public int getHandle() {
+		getCore();
+		return handle;
 	}
 
 	/**
@@ -156,17 +141,20 @@ public class Vertex<K> {
 	 *                               GraphModel.
 	 */
 	public int getHeight() {
-		checkIsAttachedToGraph();
-		return qmlModelMap.get(VertexKey.height.toString()).asInteger();
+		return (int) getCore().getHeight(handle);
 	}
 
 	GraphModel<K> getOwningGraph() {
-		return graph;
+		if (graph.getCore().isCurrent(handle, generation)) {
+			return graph;
+		} else {
+			return null;
+		}
 	}
 
 	/**
 	 * @return The unique identifier for this Vertex. Identifier is only unique per
-	 *         GraphModel.
+	 *         GraphModel. Still available after the Vertex has been removed.
 	 */
 	public String getUUID() {
 		return uuid;
@@ -180,8 +168,7 @@ public class Vertex<K> {
 	 *                               GraphModel.
 	 */
 	public int getWidth() {
-		checkIsAttachedToGraph();
-		return qmlModelMap.get(VertexKey.width.toString()).asInteger();
+		return (int) getCore().getWidth(handle);
 	}
 
 	/**
@@ -192,8 +179,7 @@ public class Vertex<K> {
 	 *                               GraphModel.
 	 */
 	public int getX() {
-		checkIsAttachedToGraph();
-		return qmlModelMap.get(VertexKey.x.toString()).asInteger();
+		return (int) getCore().getX(handle);
 	}
 
 	/**
@@ -204,14 +190,16 @@ public class Vertex<K> {
 	 *                               GraphModel.
 	 */
 	int getY() {
-		checkIsAttachedToGraph();
-		return qmlModelMap.get(VertexKey.y.toString()).asInteger();
+		return (int) getCore().getY(handle);
 	}
 
-	void invalidate() {
-		graph = null;
-		children.clear();
-		parents.clear();
+	/**
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return Objects.hash(Integer.valueOf(System.identityHashCode(graph)), Integer.valueOf(handle),
+				Integer.valueOf(generation));
 	}
 
 	/**
@@ -221,8 +209,7 @@ public class Vertex<K> {
 	 *                               GraphModel.
 	 */
 	public boolean isLeaf() {
-		checkIsAttachedToGraph();
-		return children.isEmpty();
+		return getCore().getChildCount(handle) == 0;
 	}
 
 	/**
@@ -232,8 +219,7 @@ public class Vertex<K> {
 	 *                               GraphModel.
 	 */
 	public boolean isRoot() {
-		checkIsAttachedToGraph();
-		return parents.isEmpty();
+		return getCore().getParentCount(handle) == 0;
 	}
 
 	/**
@@ -246,10 +232,10 @@ public class Vertex<K> {
 	 *                               GraphModel.
 	 */
 	public void put(final K key, final JVariant value) {
-		checkIsAttachedToGraph();
+		final GraphCore core = getCore();
 		Objects.requireNonNull(key, "key is null");
 		Objects.requireNonNull(value, "value is null");
-		qmlModelMap.put(key.toString(), value);
+		core.put(handle, key.toString(), value);
 	}
 
 	/**
@@ -262,9 +248,9 @@ public class Vertex<K> {
 	 *                               GraphModel.
 	 */
 	public boolean remove(final K key) {
-		checkIsAttachedToGraph();
+		final GraphCore core = getCore();
 		Objects.requireNonNull(key, "key is null");
-		return qmlModelMap.remove(key.toString()) != null;
+		return core.removeKey(handle, key.toString());
 	}
 
 	/**
@@ -281,18 +267,10 @@ public class Vertex<K> {
 	 */
 	public boolean removeChild(final Vertex<K> removed) {
 		Objects.requireNonNull(removed, "removed is null");
-		checkIsAttachedToGraph();
-		Preconditions.checkArgument(removed.graph == graph, "v is not from the same GraphModel as this Vertex");
-		if (children.remove(removed)) {
-			removeParent(this);
-			return true;
-		} else {
-			return false;
-		}
-	}
-
-	private void removeParent(final Vertex<K> parent) {
-		parents.remove(parent);
+		final GraphCore core = getCore();
+		Preconditions.checkArgument(removed.getOwningGraph() == graph,
+				"v is not from the same GraphModel as this Vertex");
+		return core.removeEdge(handle, removed.handle);
 	}
 
 	/**
@@ -308,9 +286,7 @@ public class Vertex<K> {
 	public void setVertexSizeDimensionInches(final double w, final double h) {
 		Preconditions.checkArgument(w > 0, "w <= 0 ", Double.valueOf(w));
 		Preconditions.checkArgument(h > 0, "h <= 0 ", Double.valueOf(h));
-		checkIsAttachedToGraph();
-		vertexWidthInches = w;
-		vertexHeightInches = h;
+		getCore().setSizeInches(handle, w, h);
 	}
 
 	/**
@@ -318,10 +294,19 @@ public class Vertex<K> {
 	 */
 	@Override
 	public String toString() {
-		if (graph != null) {
-			return "Vertex [uuid=" + uuid + ", graph=" + graph + ", children=" + children + ", parents=" + parents
-					+ ", qmlModelMap=" + qmlModelMap + ", vertexWidthInches=" + vertexWidthInches
-					+ ", vertexHeightInches=" + vertexHeightInches + "]";
+		final GraphCore core = graph.getCore();
+		if (core.isCurrent(handle, generation)) {
+			final List<String> children = new ArrayList<>(core.getChildCount(handle));
+			for (int i = 0; i < core.getChildCount(handle); ++i) {
+				children.add(core.getID(core.getChild(handle, i)));
+			}
+			final List<String> parents = new ArrayList<>(core.getParentCount(handle));
+			for (int i = 0; i < core.getParentCount(handle); ++i) {
+				parents.add(core.getID(core.getParent(handle, i)));
+			}
+			return "Vertex [uuid=" + uuid + ", graph=" + graph + ", children=" + children
+					+ ", parents=" + parents + ", values=" + core.getValues(handle) + ", vertexWidthInches="
+					+ core.getWidthInches(handle) + ", vertexHeightInches=" + core.getHeightInches(handle) + "]";
 		} else {
 			return "Vertex [uuid=" + uuid + "]";
 		}
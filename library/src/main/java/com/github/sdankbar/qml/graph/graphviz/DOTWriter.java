@@ -0,0 +1,263 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.graphviz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+
+import com.github.sdankbar.qml.graph.GraphSnapshot;
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.ImmutableIntArray;
+
+/**
+ * Writes GraphSnapshots in GraphViz's DOT language straight to a
+ * WritableByteChannel through a reusable buffer, so the document is never held
+ * in memory as a whole. Numbers are formatted without allocating. Vertices
+ * with a DOT fragment in the snapshot are copied as is instead of being
+ * formatted.
+ *
+ * Not thread safe.
+ */
+public class DOTWriter {
+
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	// Enough for the digits of any long.
+	private static final int MAX_ATOM_BYTES = 20;
+	// Sizes are written with 6 decimal places, far finer than "dot" positions
+	// anything.
+	private static final double FRACTION_SCALE = 1_000_000;
+	private static final int FRACTION_DIGITS = 6;
+	private static final double MAX_FIXED_POINT = 1e12;
+	// arrowhead=none so that the last point of the returned spline touches the
+	// vertex the edge ends on.
+	private static final String EDGE_ATTRIBUTES = "} [arrowhead=none]\n";
+
+	private final ByteBuffer buffer;
+	private final byte[] digits = new byte[MAX_ATOM_BYTES];
+	private WritableByteChannel channel = null;
+
+	/**
+	 * Creates a writer with a 64KB buffer.
+	 */
+	public DOTWriter() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param bufferSize Size of the buffer in bytes.
+	 */
+	public DOTWriter(final int bufferSize) {
+		Preconditions.checkArgument(bufferSize >= MAX_ATOM_BYTES, "bufferSize < %s", MAX_ATOM_BYTES);
+		buffer = ByteBuffer.allocate(bufferSize);
+	}
+
+	private void ensure(final int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void put(final char c) throws IOException {
+		ensure(1);
+		buffer.put((byte) c);
+	}
+
+	private void put(final String s) throws IOException {
+		for (int i = 0; i < s.length(); ++i) {
+			final char c = s.charAt(i);
+			if (c < 0x80) {
+				ensure(1);
+				buffer.put((byte) c);
+			} else {
+				// Rare, identifiers are normally ASCII.
+				putBytes(s.substring(i).getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+		}
+	}
+
+	private void putBytes(final byte[] bytes) throws IOException {
+		if (bytes.length > buffer.remaining()) {
+			flush();
+			if (bytes.length > buffer.capacity()) {
+				final ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+				while (wrapped.hasRemaining()) {
+					channel.write(wrapped);
+				}
+				return;
+			}
+		}
+		buffer.put(bytes);
+	}
+
+	private void putDouble(final double value) throws IOException {
+		if (!(Math.abs(value) < MAX_FIXED_POINT)) {
+			// NaN, infinite or huge. Never a sensible size, so allocating is fine.
+			put(Double.toString(value));
+			return;
+		}
+
+		final long scaled = Math.round(Math.abs(value) * FRACTION_SCALE);
+		if (value < 0 && scaled != 0) {
+			put('-');
+		}
+		putLong(scaled / (long) FRACTION_SCALE);
+
+		int fraction = (int) (scaled % (long) FRACTION_SCALE);
+		if (fraction != 0) {
+			ensure(FRACTION_DIGITS + 1);
+			buffer.put((byte) '.');
+			int divisor = (int) FRACTION_SCALE / 10;
+			while (fraction != 0) {
+				buffer.put((byte) ('0' + fraction / divisor));
+				fraction %= divisor;
+				divisor /= 10;
+			}
+		}
+	}
+
+	private void putLong(final long value) throws IOException {
+		// value is never negative.
+		long v = value;
+		int count = 0;
+		do {
+			digits[count++] = (byte) ('0' + v % 10);
+			v /= 10;
+		} while (v != 0);
+
+		ensure(count);
+		while (count > 0) {
+			buffer.put(digits[--count]);
+		}
+	}
+
+	private void putNode(final String id, final double widthInches, final double heightInches)
+			throws IOException {
+		put(id);
+		put(" [width=");
+		putDouble(widthInches);
+		put(" height=");
+		putDouble(heightInches);
+		put(" shape=box]\n");
+	}
+
+	/**
+	 * Writes the definition of a single vertex and its edges, in the form that
+	 * write() writes it, for use with GraphSnapshot.Builder.setDOTFragment().
+	 *
+	 * @param id           Identifier of the vertex.
+	 * @param widthInches  Width of the vertex in inches.
+	 * @param heightInches Height of the vertex in inches.
+	 * @param childIDs     Identifiers of the vertices that have an edge from this
+	 *                     vertex.
+	 * @return The vertex's DOT fragment.
+	 */
+	public byte[] toFragment(final String id, final double widthInches, final double heightInches,
+			final List<String> childIDs) {
+		Objects.requireNonNull(id, "id is null");
+		Objects.requireNonNull(childIDs, "childIDs is null");
+		final ByteArrayOutputStream output = new ByteArrayOutputStream(64 + 16 * childIDs.size());
+		channel = Channels.newChannel(output);
+		buffer.clear();
+		try {
+			putNode(id, widthInches, heightInches);
+			if (!childIDs.isEmpty()) {
+				put(id);
+				put(" -> {");
+				for (int j = 0; j < childIDs.size(); ++j) {
+					if (j > 0) {
+						put(", ");
+					}
+					put(childIDs.get(j));
+				}
+				put(EDGE_ATTRIBUTES);
+			}
+			flush();
+		} catch (final IOException e) {
+			// Not possible when writing to memory.
+			throw new IllegalStateException("Failed to write DOT fragment", e);
+		} finally {
+			channel = null;
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * Writes graph to channel. All of the graph has been written to channel once
+	 * this returns.
+	 *
+	 * @param graph   Graph to write.
+	 * @param channel Channel to write to. Is not closed.
+	 * @throws IOException Thrown if writing to channel fails.
+	 */
+	public void write(final GraphSnapshot graph, final WritableByteChannel channel) throws IOException {
+		Objects.requireNonNull(graph, "graph is null");
+		this.channel = Objects.requireNonNull(channel, "channel is null");
+		buffer.clear();
+		try {
+			put("digraph {\n");
+			for (int i = 0; i < graph.getVertexCount(); ++i) {
+				final byte[] fragment = graph.getDOTFragment(i);
+				if (fragment != null) {
+					putBytes(fragment);
+					continue;
+				}
+
+				final String id = graph.getID(i);
+				putNode(id, graph.getWidthInches(i), graph.getHeightInches(i));
+
+				final ImmutableIntArray children = graph.getChildren(i);
+				if (!children.isEmpty()) {
+					put(id);
+					put(" -> {");
+					for (int j = 0; j < children.length(); ++j) {
+						if (j > 0) {
+							put(", ");
+						}
+						put(graph.getID(children.get(j)));
+					}
+					put(EDGE_ATTRIBUTES);
+				}
+			}
+			put("}\n");
+			flush();
+		} finally {
+			this.channel = null;
+		}
+	}
+
+}
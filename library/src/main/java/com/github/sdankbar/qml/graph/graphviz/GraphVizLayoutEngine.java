@@ -0,0 +1,133 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.graphviz;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sdankbar.qml.graph.GraphSnapshot;
+import com.github.sdankbar.qml.graph.LayoutEngine;
+import com.github.sdankbar.qml.graph.LayoutResult;
+import com.github.sdankbar.qml.graph.LayoutTimeoutException;
+import com.github.sdankbar.qml.graph.parsing.EdgeDefinition;
+import com.github.sdankbar.qml.graph.parsing.NodeDefinition;
+import com.github.sdankbar.qml.graph.parsing.PlainFormatListener;
+import com.google.common.base.Preconditions;
+
+/**
+ * LayoutEngine that lays out graphs using GraphViz's "dot" executable.
+ */
+public class GraphVizLayoutEngine implements LayoutEngine {
+
+	private static final Logger log = LoggerFactory.getLogger(GraphVizLayoutEngine.class);
+
+	private final GraphVizProcessPool pool;
+	// 0 to use the pool's timeout.
+	private final long timeoutMilliseconds;
+
+	/**
+	 * Creates a new engine that uses the default GraphVizProcessPool.
+	 */
+	public GraphVizLayoutEngine() {
+		pool = null;
+		timeoutMilliseconds = 0;
+	}
+
+	/**
+	 * @param pool Pool of "dot" processes to run layouts on.
+	 */
+	public GraphVizLayoutEngine(final GraphVizProcessPool pool) {
+		this.pool = Objects.requireNonNull(pool, "pool is null");
+		timeoutMilliseconds = 0;
+	}
+
+	/**
+	 * @param pool                Pool of "dot" processes to run layouts on.
+	 * @param timeoutMilliseconds Time "dot" is given to lay out each graph before
+	 *                            it is destroyed and LayoutTimeoutException is
+	 *                            thrown.
+	 */
+	public GraphVizLayoutEngine(final GraphVizProcessPool pool, final long timeoutMilliseconds) {
+		Preconditions.checkArgument(timeoutMilliseconds > 0, "timeoutMilliseconds <= 0");
+		this.pool = Objects.requireNonNull(pool, "pool is null");
+		this.timeoutMilliseconds = timeoutMilliseconds;
+	}
+
+	private GraphVizProcessPool getPool() {
+		// The default pool is only created once it is needed so that creating an
+		// engine does not start any processes.
+		if (pool != null) {
+			return pool;
+		} else {
+			return GraphVizProcessPool.getDefault();
+		}
+	}
+
+	@Override
+	public LayoutResult layout(final GraphSnapshot graph) {
+		Objects.requireNonNull(graph, "graph is null");
+		final double dpi = graph.getDPI();
+		final LayoutResult.Builder builder = LayoutResult.builder();
+		try {
+			final GraphVizProcessPool p = getPool();
+			final long timeout = timeoutMilliseconds > 0 ? timeoutMilliseconds : p.getTimeoutMilliseconds();
+			p.layout(graph, timeout, new PlainFormatListener() {
+				@Override
+				public void edge(final String tailID, final String headID, final double[] points,
+						final int pointCount) {
+					builder.addEdge(new EdgeDefinition(tailID, headID, points, pointCount, dpi));
+				}
+
+				@Override
+				public void graph(final double widthInches, final double heightInches) {
+					builder.setGraphSize(widthInches, heightInches);
+				}
+
+				@Override
+				public void node(final String nodeID, final double centerX, final double centerY,
+						final double widthInches, final double heightInches) {
+					builder.addNode(new NodeDefinition(nodeID, centerX, centerY, widthInches, heightInches));
+				}
+			});
+		} catch (final GraphVizTimeoutException e) {
+			log.error("\"dot\" did not lay out graph of {} vertices within {} milliseconds", graph.getVertexCount(),
+					e.getTimeoutMilliseconds());
+			throw new LayoutTimeoutException(e.getMessage(), e);
+		} catch (final InterruptedIOException e) {
+			final CancellationException cancelled = new CancellationException("Layout interrupted");
+			cancelled.initCause(e);
+			throw cancelled;
+		} catch (final IOException e) {
+			log.error("Failed to run \"dot\" utility.  Check that it is installed and on the PATH.", e);
+			throw new IllegalStateException("Failed to run \"dot\" utility", e);
+		}
+
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,414 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.graphviz;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sdankbar.qml.graph.GraphSnapshot;
+import com.github.sdankbar.qml.graph.parsing.PlainFormatListener;
+import com.github.sdankbar.qml.graph.parsing.PlainFormatReader;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Pool of long running GraphViz "dot" processes. Each process is fed one graph
+ * at a time over stdin and the "plain" output for that graph is streamed to a
+ * PlainFormatListener up to its terminating "stop" line. Workers that exit or
+ * stop responding are destroyed and replaced the next time a worker is needed.
+ *
+ * The graph is written to stdin, the layout read from stdout and stderr drained
+ * on separate threads so that "dot" can never block on a full pipe. A worker
+ * that does not finish within its deadline is forcibly destroyed.
+ *
+ * Interrupting a thread waiting in layout() destroys the worker laying out its
+ * graph so that cancelled layouts do not keep "dot" busy.
+ */
+public class GraphVizProcessPool implements AutoCloseable {
+
+	private class Worker {
+		private final Process process;
+		private final OutputStream stdin;
+		private final WritableByteChannel stdinChannel;
+		private final DOTWriter writer = new DOTWriter();
+		private final PlainFormatReader stdout;
+
+		Worker() throws IOException {
+			process = new ProcessBuilder(command("-Tplain", "-y")).start();
+			stdin = process.getOutputStream();
+			stdinChannel = Channels.newChannel(stdin);
+			stdout = new PlainFormatReader(process.getInputStream());
+
+			// Drain stderr so that warnings can never fill the pipe and block dot.
+			final Thread errorDrain = new Thread(() -> drainErrorStream(process), "graphviz-stderr");
+			errorDrain.setDaemon(true);
+			errorDrain.start();
+		}
+
+		private void abort(final Future<?> writer, final Future<?> reader) {
+			// Destroying the process unblocks both I/O threads.
+			destroy();
+			writer.cancel(true);
+			reader.cancel(true);
+		}
+
+		void destroy() {
+			process.destroyForcibly();
+		}
+
+		boolean isAlive() {
+			return process.isAlive();
+		}
+
+		void layout(final GraphSnapshot graph, final long timeoutMilliseconds, final PlainFormatListener listener)
+				throws IOException {
+			final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMilliseconds);
+			// Pipe I/O can neither be interrupted nor timed out, so the graph is
+			// written and its layout read on I/O threads while the caller waits.
+			final Future<?> writer = IO_EXEC.submit(() -> {
+				write(graph);
+				return null;
+			});
+			final Future<?> reader = IO_EXEC.submit(() -> {
+				read(listener);
+				return null;
+			});
+			try {
+				reader.get(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+				writer.get(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+			} catch (final InterruptedException e) {
+				abort(writer, reader);
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for \"dot\"");
+			} catch (final TimeoutException e) {
+				abort(writer, reader);
+				throw new GraphVizTimeoutException(timeoutMilliseconds);
+			} catch (final ExecutionException e) {
+				abort(writer, reader);
+				Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+				Throwables.throwIfUnchecked(e.getCause());
+				throw new IOException("Failed to communicate with \"dot\"", e.getCause());
+			}
+		}
+
+		private void read(final PlainFormatListener listener) throws IOException {
+			if (!stdout.read(listener)) {
+				throw new IOException("\"dot\" exited before completing the graph");
+			}
+		}
+
+		private void write(final GraphSnapshot graph) throws IOException {
+			writer.write(graph, stdinChannel);
+			stdin.flush();
+		}
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(GraphVizProcessPool.class);
+
+	private static final long DEFAULT_TIMEOUT_MILLISECONDS = 60_000;
+
+	private static final ExecutorService IO_EXEC = Executors.newCachedThreadPool(
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graphviz-io-%d").build());
+
+	private static final Object DEFAULT_LOCK = new Object();
+	// Guarded by DEFAULT_LOCK. At most one of the two is non-null.
+	private static GraphVizProcessPool defaultPool = null;
+	private static IllegalStateException defaultFailure = null;
+
+	/**
+	 * Creates the default pool, checking that GraphViz is installed, unless it
+	 * already exists. Retries if an earlier attempt failed.
+	 *
+	 * @throws IllegalStateException Thrown if "dot" cannot be run.
+	 */
+	public static void checkInstalled() {
+		synchronized (DEFAULT_LOCK) {
+			if (defaultPool == null) {
+				defaultFailure = null;
+				createDefault();
+			}
+		}
+	}
+
+	private static void createDefault() {
+		try {
+			defaultPool = new GraphVizProcessPool(Math.min(4, Runtime.getRuntime().availableProcessors()),
+					DEFAULT_TIMEOUT_MILLISECONDS);
+		} catch (final IllegalStateException e) {
+			defaultFailure = e;
+			throw e;
+		}
+	}
+
+	private static void drainErrorStream(final Process process) {
+		try (final BufferedReader stderr = new BufferedReader(
+				new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = stderr.readLine()) != null) {
+				log.warn("dot: {}", line);
+			}
+		} catch (final IOException e) {
+			log.debug("stderr of \"dot\" closed", e);
+		}
+	}
+
+	/**
+	 * @return The pool shared by all GraphModels that do not provide their own.
+	 *         Created, and the GraphViz installation checked, on first use.
+	 * @throws IllegalStateException Thrown if "dot" cannot be run. The failure
+	 *                               is remembered until checkInstalled() is
+	 *                               called again.
+	 */
+	public static GraphVizProcessPool getDefault() {
+		synchronized (DEFAULT_LOCK) {
+			if (defaultPool == null) {
+				if (defaultFailure != null) {
+					throw new IllegalStateException("GraphViz is not available", defaultFailure);
+				}
+				createDefault();
+			}
+			return defaultPool;
+		}
+	}
+
+	/**
+	 * @param args Arguments to pass to "dot".
+	 * @return The command line that runs "dot" with the provided arguments.
+	 */
+	public static ImmutableList<String> getDotCommand(final String... args) {
+		final ImmutableList.Builder<String> builder = ImmutableList.builder();
+		if (SystemUtils.IS_OS_WINDOWS) {
+			builder.add("dot.exe");
+		} else {
+			builder.add("dot");
+		}
+		builder.add(args);
+		return builder.build();
+	}
+
+	private static String queryVersion(final ImmutableList<String> versionCommand) {
+		try {
+			final Process p = new ProcessBuilder(versionCommand).redirectErrorStream(true).start();
+			p.getOutputStream().close();
+
+			final StringBuilder output = new StringBuilder();
+			try (final BufferedReader input = new BufferedReader(
+					new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = input.readLine()) != null) {
+					output.append(line);
+				}
+			}
+
+			if (!p.waitFor(DEFAULT_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+				p.destroyForcibly();
+				throw new IllegalStateException("\"dot -V\" did not exit");
+			} else if (p.exitValue() != 0) {
+				throw new IllegalStateException("\"dot -V\" failed with exit code " + p.exitValue());
+			}
+
+			final String version = output.toString().trim();
+			log.info("Using {}", version);
+			return version;
+		} catch (final IOException e) {
+			log.error("Failed to run \"dot\" utility.  Check that it is installed and on the PATH.", e);
+			throw new IllegalStateException("Failed to run \"dot\" utility", e);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while checking \"dot\" version", e);
+		}
+	}
+
+	private static long remainingNanos(final long deadline) {
+		return Math.max(0, deadline - System.nanoTime());
+	}
+
+	private final ImmutableList<String> dotCommand;
+	private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+	private final Semaphore permits;
+	private final long timeoutMilliseconds;
+	private final String version;
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a new pool and starts its workers. Checks that GraphViz is
+	 * installed before starting any workers.
+	 *
+	 * @param size                Maximum number of "dot" processes to keep.
+	 * @param timeoutMilliseconds Default time a worker is given to lay out a
+	 *                            single graph before it is considered hung and is
+	 *                            destroyed.
+	 * @throws IllegalStateException Thrown if "dot" cannot be run.
+	 */
+	public GraphVizProcessPool(final int size, final long timeoutMilliseconds) {
+		this(size, timeoutMilliseconds, getDotCommand());
+	}
+
+	/**
+	 * @param size                Maximum number of "dot" processes to keep.
+	 * @param timeoutMilliseconds Time a worker is given to lay out a single graph.
+	 * @param dotCommand          Command line that runs "dot", without any
+	 *                            arguments.
+	 */
+	GraphVizProcessPool(final int size, final long timeoutMilliseconds, final ImmutableList<String> dotCommand) {
+		Preconditions.checkArgument(size > 0, "size <= 0");
+		Preconditions.checkArgument(timeoutMilliseconds > 0, "timeoutMilliseconds <= 0");
+		Preconditions.checkArgument(!dotCommand.isEmpty(), "dotCommand is empty");
+		this.dotCommand = dotCommand;
+		permits = new Semaphore(size, true);
+		this.timeoutMilliseconds = timeoutMilliseconds;
+		version = queryVersion(command("-V"));
+
+		try {
+			for (int i = 0; i < size; ++i) {
+				idleWorkers.add(new Worker());
+			}
+		} catch (final IOException e) {
+			close();
+			log.error("Failed to run \"dot\" utility.  Check that it is installed and on the PATH.", e);
+			throw new IllegalStateException("Failed to run \"dot\" utility", e);
+		}
+	}
+
+	/**
+	 * Destroys all idle workers. Workers currently laying out a graph are
+	 * destroyed when they are returned.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		Worker w;
+		while ((w = idleWorkers.poll()) != null) {
+			w.destroy();
+		}
+	}
+
+	private ImmutableList<String> command(final String... args) {
+		return ImmutableList.<String>builder().addAll(dotCommand).add(args).build();
+	}
+
+	/**
+	 * @return The version string reported by "dot -V".
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return The default time a worker is given to lay out a single graph.
+	 */
+	public long getTimeoutMilliseconds() {
+		return timeoutMilliseconds;
+	}
+
+	/**
+	 * Lays out a graph using one of the pool's workers and the pool's default
+	 * timeout. Blocks until a worker is available.
+	 *
+	 * @param graph    Graph to lay out.
+	 * @param listener Receives the layout, in GraphViz's "plain" format, as it is
+	 *                 read. Called on an I/O thread.
+	 * @throws IOException Thrown if the worker failed, GraphVizTimeoutException
+	 *                     if it timed out, or InterruptedIOException if the
+	 *                     calling thread was interrupted. The worker is
+	 *                     destroyed and replaced.
+	 */
+	public void layout(final GraphSnapshot graph, final PlainFormatListener listener) throws IOException {
+		layout(graph, timeoutMilliseconds, listener);
+	}
+
+	/**
+	 * Lays out a graph using one of the pool's workers. Blocks until a worker is
+	 * available. The timeout does not include the time spent waiting for a
+	 * worker.
+	 *
+	 * @param graph               Graph to lay out. Written to "dot" while it is
+	 *                            read.
+	 * @param timeoutMilliseconds Time the worker is given to lay out the graph.
+	 * @param listener            Receives the layout, in GraphViz's "plain"
+	 *                            format, as it is read. Called on an I/O thread.
+	 * @throws IOException Thrown if the worker failed, GraphVizTimeoutException
+	 *                     if it timed out, or InterruptedIOException if the
+	 *                     calling thread was interrupted. The worker is
+	 *                     destroyed and replaced.
+	 */
+	public void layout(final GraphSnapshot graph, final long timeoutMilliseconds, final PlainFormatListener listener)
+			throws IOException {
+		Objects.requireNonNull(graph, "graph is null");
+		Objects.requireNonNull(listener, "listener is null");
+		Preconditions.checkArgument(timeoutMilliseconds > 0, "timeoutMilliseconds <= 0");
+		Preconditions.checkState(!closed, "GraphVizProcessPool is closed");
+		try {
+			permits.acquire();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a \"dot\" worker");
+		}
+
+		try {
+			Worker w = idleWorkers.poll();
+			if (w == null || !w.isAlive()) {
+				if (w != null) {
+					log.warn("\"dot\" worker exited with code {}, restarting", w.process.exitValue());
+				}
+				w = new Worker();
+			}
+
+			try {
+				w.layout(graph, timeoutMilliseconds, listener);
+				if (closed) {
+					w.destroy();
+				} else {
+					idleWorkers.add(w);
+				}
+			} catch (final IOException e) {
+				w.destroy();
+				throw e;
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.graphviz;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a "dot" process does not finish laying out a graph before its
+ * deadline. The process is destroyed before this is thrown.
+ */
+public class GraphVizTimeoutException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long timeoutMilliseconds;
+
+	/**
+	 * @param timeoutMilliseconds The deadline that was exceeded.
+	 */
+	public GraphVizTimeoutException(final long timeoutMilliseconds) {
+		super("\"dot\" did not finish within " + timeoutMilliseconds + " milliseconds");
+		this.timeoutMilliseconds = timeoutMilliseconds;
+	}
+
+	/**
+	 * @return The deadline that was exceeded.
+	 */
+	public long getTimeoutMilliseconds() {
+		return timeoutMilliseconds;
+	}
+
+}
@@ -0,0 +1,137 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.layout;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+import com.github.sdankbar.qml.graph.GraphSnapshot;
+import com.github.sdankbar.qml.graph.LayoutEngine;
+import com.github.sdankbar.qml.graph.LayoutResult;
+import com.github.sdankbar.qml.graph.graphviz.DOTWriter;
+import com.github.sdankbar.qml.graph.parsing.EdgeDefinition;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * LayoutEngine that remembers the layouts produced by another LayoutEngine.
+ * Graphs are identified by a hash of their DOT text and the DPI, so laying out
+ * a graph identical to a recently laid out one returns the earlier result
+ * without calling the wrapped engine. The least recently used layouts are
+ * evicted once the estimated size of the cached layouts exceeds a limit.
+ */
+public class CachingLayoutEngine implements LayoutEngine {
+
+	private static final long DEFAULT_MAXIMUM_BYTES = 32 * 1024 * 1024;
+
+	// Rough sizes of the objects that make up a LayoutResult.
+	private static final int RESULT_BYTES = 128;
+	private static final int NODE_BYTES = 96;
+	private static final int EDGE_BYTES = 160;
+	private static final int POINT_BYTES = 40;
+	private static final int HASH_BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * @param graph The graph to hash.
+	 * @return A hash that identifies graph.
+	 */
+	public static HashCode hash(final GraphSnapshot graph) {
+		final Hasher hasher = Hashing.sha256().newHasher().putDouble(graph.getDPI());
+		// Hash the DOT text as it is written rather than building it.
+		try {
+			new DOTWriter(HASH_BUFFER_SIZE).write(graph, Channels.newChannel(Funnels.asOutputStream(hasher)));
+		} catch (final IOException e) {
+			// Not possible when writing to a Hasher.
+			throw new IllegalStateException("Failed to hash graph", e);
+		}
+		return hasher.hash();
+	}
+
+	private static int weigh(final LayoutResult result) {
+		long bytes = RESULT_BYTES + (long) NODE_BYTES * result.getNodes().size();
+		for (final EdgeDefinition e : result.getEdges()) {
+			bytes += EDGE_BYTES + (long) POINT_BYTES * e.getControlPoints().size();
+		}
+		return (int) Math.min(Integer.MAX_VALUE, bytes);
+	}
+
+	private final LayoutEngine delegate;
+	private final Cache<HashCode, LayoutResult> cache;
+
+	/**
+	 * Creates a new engine that caches up to 32MB of layouts.
+	 *
+	 * @param delegate Engine used to lay out graphs that are not in the cache.
+	 */
+	public CachingLayoutEngine(final LayoutEngine delegate) {
+		this(delegate, DEFAULT_MAXIMUM_BYTES);
+	}
+
+	/**
+	 * @param delegate     Engine used to lay out graphs that are not in the cache.
+	 * @param maximumBytes Approximate maximum size of the cached layouts.
+	 */
+	public CachingLayoutEngine(final LayoutEngine delegate, final long maximumBytes) {
+		this.delegate = Objects.requireNonNull(delegate, "delegate is null");
+		Preconditions.checkArgument(maximumBytes >= 0, "maximumBytes < 0");
+		// Single segment so that eviction is strictly least recently used.
+		cache = CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(maximumBytes)
+				.weigher((final HashCode k, final LayoutResult v) -> weigh(v)).recordStats().build();
+	}
+
+	/**
+	 * @return Hit, miss and eviction counts.
+	 */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	/**
+	 * Removes all cached layouts.
+	 */
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public LayoutResult layout(final GraphSnapshot graph) {
+		Objects.requireNonNull(graph, "graph is null");
+		try {
+			return cache.get(hash(graph), () -> delegate.layout(graph));
+		} catch (final ExecutionException | UncheckedExecutionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new IllegalStateException("Failed to lay out graph", e.getCause());
+		}
+	}
+
+}
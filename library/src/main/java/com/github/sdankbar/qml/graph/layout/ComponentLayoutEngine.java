@@ -0,0 +1,334 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.github.sdankbar.qml.graph.GraphSnapshot;
+import com.github.sdankbar.qml.graph.LayoutEngine;
+import com.github.sdankbar.qml.graph.LayoutResult;
+import com.github.sdankbar.qml.graph.parsing.EdgeDefinition;
+import com.github.sdankbar.qml.graph.parsing.NodeDefinition;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.primitives.ImmutableIntArray;
+
+/**
+ * LayoutEngine that splits a graph into its weakly connected components, lays
+ * out each component separately using another LayoutEngine, and then packs the
+ * components together. Components are laid out concurrently on the provided
+ * Executor. Since layout cost grows faster than linearly with the size of a
+ * graph, graphs made of many components are laid out much faster.
+ *
+ * The layout of each component is remembered. If every vertex of a component
+ * has the same identifier and non-zero version as in a previously laid out
+ * component (see GraphSnapshot.Builder.setVersion()), the component is
+ * unchanged and its earlier layout is reused, only its position in the packed
+ * graph may change.
+ */
+public class ComponentLayoutEngine implements LayoutEngine {
+
+	/**
+	 * A weakly connected component of a snapshot.
+	 */
+	static class Component {
+		// Indices of the component's vertices in the original snapshot, ascending.
+		final int[] vertices;
+		final GraphSnapshot graph;
+
+		Component(final int[] vertices, final GraphSnapshot graph) {
+			this.vertices = vertices;
+			this.graph = graph;
+		}
+	}
+
+	/**
+	 * Layout of a component along with the identity of the vertices it was
+	 * computed for.
+	 */
+	private static class ComponentRecord {
+		private final double dpi;
+		private final String[] ids;
+		private final long[] versions;
+		private final LayoutResult layout;
+
+		ComponentRecord(final Component c, final LayoutResult layout) {
+			dpi = c.graph.getDPI();
+			ids = new String[c.vertices.length];
+			versions = new long[c.vertices.length];
+			for (int i = 0; i < ids.length; ++i) {
+				ids[i] = c.graph.getID(i);
+				versions[i] = c.graph.getVersion(i);
+			}
+			this.layout = layout;
+		}
+
+		boolean matches(final Component c) {
+			if (dpi != c.graph.getDPI() || ids.length != c.vertices.length) {
+				return false;
+			}
+			for (int i = 0; i < ids.length; ++i) {
+				if (versions[i] != c.graph.getVersion(i) || !ids[i].equals(c.graph.getID(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static final long DEFAULT_MAXIMUM_REMEMBERED_VERTICES = 1_000_000;
+
+	private static int find(final int[] parent, final int v) {
+		int root = v;
+		while (parent[root] != root) {
+			root = parent[root];
+		}
+		// Path compression.
+		int w = v;
+		while (parent[w] != root) {
+			final int next = parent[w];
+			parent[w] = root;
+			w = next;
+		}
+		return root;
+	}
+
+	/**
+	 * Packs the layouts of a graph's components together using shelf packing.
+	 * Components are placed left to right, tallest first, on rows no wider than
+	 * the widest component or the side of a square with the total area of all
+	 * the components, whichever is larger.
+	 *
+	 * @param layouts Layout of each component.
+	 * @return The combined layout.
+	 */
+	static LayoutResult pack(final List<LayoutResult> layouts) {
+		final Integer[] order = new Integer[layouts.size()];
+		double area = 0;
+		double widest = 0;
+		for (int i = 0; i < order.length; ++i) {
+			order[i] = Integer.valueOf(i);
+			final LayoutResult r = layouts.get(i);
+			area += r.getGraphWidthInches() * r.getGraphHeightInches();
+			widest = Math.max(widest, r.getGraphWidthInches());
+		}
+		// Stable, equal heights keep the order of their first vertex.
+		Arrays.sort(order, (a, b) -> Double.compare(layouts.get(b.intValue()).getGraphHeightInches(),
+				layouts.get(a.intValue()).getGraphHeightInches()));
+		final double rowWidth = Math.max(widest, Math.sqrt(area));
+
+		final LayoutResult.Builder builder = LayoutResult.builder();
+		double x = 0;
+		double y = 0;
+		double rowHeight = 0;
+		double width = 0;
+		for (final Integer i : order) {
+			final LayoutResult r = layouts.get(i.intValue());
+			if (x > 0 && x + r.getGraphWidthInches() > rowWidth) {
+				x = 0;
+				y += rowHeight;
+				rowHeight = 0;
+			}
+			for (final NodeDefinition def : r.getNodes()) {
+				builder.addNode(def.translate(x, y));
+			}
+			for (final EdgeDefinition def : r.getEdges()) {
+				builder.addEdge(def.translate(x, y));
+			}
+			x += r.getGraphWidthInches();
+			width = Math.max(width, x);
+			rowHeight = Math.max(rowHeight, r.getGraphHeightInches());
+		}
+		builder.setGraphSize(width, y + rowHeight);
+		return builder.build();
+	}
+
+	private static String recordKey(final Component c) {
+		return c.graph.getID(0) + '@' + c.graph.getVersion(0);
+	}
+
+	/**
+	 * @param graph Graph to split.
+	 * @return The weakly connected components of graph, ordered by their lowest
+	 *         vertex index.
+	 */
+	static List<Component> split(final GraphSnapshot graph) {
+		final int n = graph.getVertexCount();
+		final int[] parent = new int[n];
+		for (int v = 0; v < n; ++v) {
+			parent[v] = v;
+		}
+		for (int v = 0; v < n; ++v) {
+			final ImmutableIntArray children = graph.getChildren(v);
+			for (int i = 0; i < children.length(); ++i) {
+				final int a = find(parent, v);
+				final int b = find(parent, children.get(i));
+				if (a != b) {
+					parent[Math.max(a, b)] = Math.min(a, b);
+				}
+			}
+		}
+
+		// Number the components in order of their lowest vertex, and each vertex
+		// within its component.
+		final int[] componentOf = new int[n];
+		final int[] localIndex = new int[n];
+		final List<int[]> members = new ArrayList<>();
+		final int[] sizes = new int[n];
+		int componentCount = 0;
+		for (int v = 0; v < n; ++v) {
+			final int root = find(parent, v);
+			if (root == v) {
+				componentOf[v] = componentCount++;
+			} else {
+				componentOf[v] = componentOf[root];
+			}
+			localIndex[v] = sizes[componentOf[v]]++;
+		}
+		for (int c = 0; c < componentCount; ++c) {
+			members.add(new int[sizes[c]]);
+		}
+		for (int v = 0; v < n; ++v) {
+			members.get(componentOf[v])[localIndex[v]] = v;
+		}
+
+		final List<Component> components = new ArrayList<>(componentCount);
+		for (final int[] vertices : members) {
+			final GraphSnapshot.Builder builder = GraphSnapshot.builder(graph.getDPI());
+			for (final int v : vertices) {
+				final int local = builder.addVertex(graph.getID(v), graph.getWidthInches(v),
+						graph.getHeightInches(v));
+				builder.setVersion(local, graph.getVersion(v));
+				builder.setDOTFragment(local, graph.getDOTFragment(v));
+			}
+			for (final int v : vertices) {
+				final ImmutableIntArray children = graph.getChildren(v);
+				for (int i = 0; i < children.length(); ++i) {
+					builder.addEdge(localIndex[v], localIndex[children.get(i)]);
+				}
+			}
+			components.add(new Component(vertices, builder.build()));
+		}
+		return components;
+	}
+
+	private final LayoutEngine delegate;
+	private final Executor executor;
+	// Keyed by the identifier and version of the component's first vertex.
+	private final Cache<String, ComponentRecord> records = CacheBuilder.newBuilder()
+			.maximumWeight(DEFAULT_MAXIMUM_REMEMBERED_VERTICES)
+			.weigher((final String k, final ComponentRecord v) -> v.ids.length).build();
+
+	/**
+	 * @param delegate Engine used to lay out each component.
+	 * @param executor Executor the components are laid out on. Must not be the
+	 *                 executor that calls layout() if it has a single thread.
+	 */
+	public ComponentLayoutEngine(final LayoutEngine delegate, final Executor executor) {
+		this.delegate = Objects.requireNonNull(delegate, "delegate is null");
+		this.executor = Objects.requireNonNull(executor, "executor is null");
+	}
+
+	@Override
+	public LayoutResult layout(final GraphSnapshot graph) {
+		Objects.requireNonNull(graph, "graph is null");
+		final List<Component> components = split(graph);
+
+		final List<LayoutResult> layouts = new ArrayList<>(components.size());
+		final List<Component> pending = new ArrayList<>();
+		for (final Component c : components) {
+			final ComponentRecord record = c.graph.getVersion(0) != 0 ? records.getIfPresent(recordKey(c)) : null;
+			if (record != null && record.matches(c)) {
+				layouts.add(record.layout);
+			} else {
+				layouts.add(null);
+				pending.add(c);
+			}
+		}
+
+		final List<LayoutResult> laidOut = layoutAll(pending);
+		for (int i = 0, p = 0; i < layouts.size(); ++i) {
+			if (layouts.get(i) == null) {
+				final Component c = pending.get(p);
+				final LayoutResult r = laidOut.get(p);
+				++p;
+				layouts.set(i, r);
+				if (c.graph.getVersion(0) != 0) {
+					records.put(recordKey(c), new ComponentRecord(c, r));
+				}
+			}
+		}
+
+		if (layouts.size() == 1) {
+			return layouts.get(0);
+		} else {
+			return pack(layouts);
+		}
+	}
+
+	private List<LayoutResult> layoutAll(final List<Component> components) {
+		if (components.size() <= 1) {
+			final List<LayoutResult> layouts = new ArrayList<>(1);
+			for (final Component c : components) {
+				layouts.add(delegate.layout(c.graph));
+			}
+			return layouts;
+		}
+
+		final List<Future<LayoutResult>> futures = new ArrayList<>(components.size());
+		for (final Component c : components) {
+			final FutureTask<LayoutResult> task = new FutureTask<>(() -> delegate.layout(c.graph));
+			executor.execute(task);
+			futures.add(task);
+		}
+
+		final List<LayoutResult> layouts = new ArrayList<>(components.size());
+		try {
+			for (final Future<LayoutResult> f : futures) {
+				layouts.add(f.get());
+			}
+		} catch (final InterruptedException e) {
+			futures.forEach(f -> f.cancel(true));
+			Thread.currentThread().interrupt();
+			final CancellationException cancelled = new CancellationException(
+					"Interrupted while laying out components");
+			cancelled.initCause(e);
+			throw cancelled;
+		} catch (final ExecutionException e) {
+			futures.forEach(f -> f.cancel(true));
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new IllegalStateException("Failed to lay out component", e.getCause());
+		}
+		return layouts;
+	}
+
+}
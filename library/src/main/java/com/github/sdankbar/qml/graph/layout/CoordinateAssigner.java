@@ -0,0 +1,341 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.layout;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Assigns x coordinates to the nodes of a LayerGraph using the algorithm from
+ * Brandes and Köpf, "Fast and Simple Horizontal Coordinate Assignment". Four
+ * candidate layouts are computed by aligning each node with its median upper or
+ * lower neighbor while compacting to the left or right, and are then balanced.
+ * Block compaction uses a longest path pass over the block graph instead of the
+ * class shifting in the paper.
+ */
+class CoordinateAssigner {
+
+	/**
+	 * @param g              Graph, with the final order of each rank.
+	 * @param nodeSeparation Minimum horizontal distance between adjacent nodes.
+	 * @return The x coordinate of the center of each node.
+	 */
+	static double[] assign(final LayerGraph g, final double nodeSeparation) {
+		final Set<Long> conflicts = findTypeOneConflicts(g);
+
+		final double[][] candidates = new double[4][];
+		int k = 0;
+		for (final boolean up : new boolean[] { true, false }) {
+			final int[][] vertical = up ? g.layers : reverse(g.layers);
+			final int[][] neighbors = up ? g.upper : g.lower;
+			for (final boolean right : new boolean[] { false, true }) {
+				final int[][] layering = right ? reverseEach(vertical) : vertical;
+				final int[] pos = positions(g.nodeCount, layering);
+				final int[] root = new int[g.nodeCount];
+				final int[] align = new int[g.nodeCount];
+				alignVertically(g, layering, neighbors, pos, conflicts, root, align);
+
+				final double[] xs = compact(g, layering, root, nodeSeparation);
+				if (right) {
+					for (int v = 0; v < xs.length; ++v) {
+						xs[v] = -xs[v];
+					}
+				}
+				candidates[k++] = xs;
+			}
+		}
+
+		return balance(g, candidates);
+	}
+
+	private static void alignVertically(final LayerGraph g, final int[][] layering, final int[][] neighbors,
+			final int[] pos, final Set<Long> conflicts, final int[] root, final int[] align) {
+		for (int v = 0; v < g.nodeCount; ++v) {
+			root[v] = v;
+			align[v] = v;
+		}
+
+		for (final int[] layer : layering) {
+			int previous = -1;
+			for (final int v : layer) {
+				final int[] ws = sortedBy(pos, neighbors[v]);
+				if (ws.length == 0) {
+					continue;
+				}
+				// Lower and upper median, equal when there are an odd number.
+				final int lowMedian = (ws.length - 1) / 2;
+				final int highMedian = ws.length / 2;
+				for (int m = lowMedian; m <= highMedian; ++m) {
+					final int w = ws[m];
+					if (align[v] == v && previous < pos[w] && !conflicts.contains(key(g, v, w))) {
+						align[w] = v;
+						root[v] = root[w];
+						align[v] = root[v];
+						previous = pos[w];
+					}
+				}
+			}
+		}
+	}
+
+	private static double[] balance(final LayerGraph g, final double[][] candidates) {
+		// Align every candidate to the narrowest one, left candidates by their
+		// minimum and right candidates by their maximum.
+		int narrowest = 0;
+		double narrowestWidth = Double.POSITIVE_INFINITY;
+		for (int k = 0; k < candidates.length; ++k) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int v = 0; v < g.nodeCount; ++v) {
+				min = Math.min(min, candidates[k][v] - g.width[v] / 2);
+				max = Math.max(max, candidates[k][v] + g.width[v] / 2);
+			}
+			if (max - min < narrowestWidth) {
+				narrowestWidth = max - min;
+				narrowest = k;
+			}
+		}
+
+		final double targetMin = min(candidates[narrowest]);
+		final double targetMax = max(candidates[narrowest]);
+		for (int k = 0; k < candidates.length; ++k) {
+			final boolean right = (k % 2) == 1;
+			final double delta = right ? targetMax - max(candidates[k]) : targetMin - min(candidates[k]);
+			for (int v = 0; v < g.nodeCount; ++v) {
+				candidates[k][v] += delta;
+			}
+		}
+
+		final double[] x = new double[g.nodeCount];
+		final double[] values = new double[candidates.length];
+		for (int v = 0; v < g.nodeCount; ++v) {
+			for (int k = 0; k < candidates.length; ++k) {
+				values[k] = candidates[k][v];
+			}
+			Arrays.sort(values);
+			x[v] = (values[1] + values[2]) / 2;
+		}
+		return x;
+	}
+
+	private static double[] compact(final LayerGraph g, final int[][] layering, final int[] root,
+			final double nodeSeparation) {
+		// Block graph, an edge from the root of each node's block to the root of its
+		// right neighbor's block weighted by the separation they need.
+		int edgeCount = 0;
+		for (final int[] layer : layering) {
+			edgeCount += Math.max(0, layer.length - 1);
+		}
+		final int[] from = new int[edgeCount];
+		final int[] to = new int[edgeCount];
+		final double[] separation = new double[edgeCount];
+		int e = 0;
+		for (final int[] layer : layering) {
+			for (int i = 1; i < layer.length; ++i) {
+				final int u = layer[i - 1];
+				final int v = layer[i];
+				from[e] = root[u];
+				to[e] = root[v];
+				separation[e] = (g.width[u] + g.width[v]) / 2 + nodeSeparation;
+				++e;
+			}
+		}
+		final int[][] outEdges = edgesBy(g.nodeCount, from);
+		final int[][] inEdges = edgesBy(g.nodeCount, to);
+
+		// Topological order of the block roots.
+		final int[] inDegree = new int[g.nodeCount];
+		for (int i = 0; i < edgeCount; ++i) {
+			++inDegree[to[i]];
+		}
+		final int[] order = new int[g.nodeCount];
+		int head = 0;
+		int tail = 0;
+		for (int v = 0; v < g.nodeCount; ++v) {
+			if (root[v] == v && inDegree[v] == 0) {
+				order[tail++] = v;
+			}
+		}
+		while (head < tail) {
+			final int v = order[head++];
+			for (final int out : outEdges[v]) {
+				if (--inDegree[to[out]] == 0) {
+					order[tail++] = to[out];
+				}
+			}
+		}
+
+		// Place each block as far left as possible, then pull blocks right towards
+		// their right neighbors to remove gaps.
+		final double[] xs = new double[g.nodeCount];
+		for (int i = 0; i < tail; ++i) {
+			final int v = order[i];
+			double x = 0;
+			for (final int in : inEdges[v]) {
+				x = Math.max(x, xs[from[in]] + separation[in]);
+			}
+			xs[v] = x;
+		}
+		for (int i = tail - 1; i >= 0; --i) {
+			final int v = order[i];
+			double x = Double.POSITIVE_INFINITY;
+			for (final int out : outEdges[v]) {
+				x = Math.min(x, xs[to[out]] - separation[out]);
+			}
+			if (x != Double.POSITIVE_INFINITY) {
+				xs[v] = Math.max(xs[v], x);
+			}
+		}
+
+		for (int v = 0; v < g.nodeCount; ++v) {
+			xs[v] = xs[root[v]];
+		}
+		return xs;
+	}
+
+	private static int[][] edgesBy(final int nodeCount, final int[] endpoint) {
+		final int[] sizes = new int[nodeCount];
+		for (final int v : endpoint) {
+			++sizes[v];
+		}
+		final int[][] edges = new int[nodeCount][];
+		for (int v = 0; v < nodeCount; ++v) {
+			edges[v] = new int[sizes[v]];
+			sizes[v] = 0;
+		}
+		for (int e = 0; e < endpoint.length; ++e) {
+			final int v = endpoint[e];
+			edges[v][sizes[v]++] = e;
+		}
+		return edges;
+	}
+
+	/**
+	 * Marks edges that cross an inner segment (an edge between two dummy nodes).
+	 * Inner segments are kept straight so long edges are drawn vertically.
+	 */
+	private static Set<Long> findTypeOneConflicts(final LayerGraph g) {
+		final Set<Long> conflicts = new HashSet<>();
+		for (int r = 1; r < g.layers.length; ++r) {
+			final int[] previousLayer = g.layers[r - 1];
+			final int[] layer = g.layers[r];
+			int k0 = 0;
+			int scanPos = 0;
+			for (int i = 0; i < layer.length; ++i) {
+				final int v = layer[i];
+				final int innerNeighbor = innerSegmentNeighbor(g, v);
+				final int k1 = innerNeighbor >= 0 ? g.pos[innerNeighbor] : previousLayer.length;
+				if (innerNeighbor >= 0 || i == layer.length - 1) {
+					for (int s = scanPos; s <= i; ++s) {
+						final int scanNode = layer[s];
+						for (final int u : g.upper[scanNode]) {
+							final int uPos = g.pos[u];
+							if ((uPos < k0 || k1 < uPos) && !(g.isDummy(u) && g.isDummy(scanNode))) {
+								conflicts.add(key(g, u, scanNode));
+							}
+						}
+					}
+					scanPos = i + 1;
+					k0 = k1;
+				}
+			}
+		}
+		return conflicts;
+	}
+
+	private static int innerSegmentNeighbor(final LayerGraph g, final int v) {
+		if (g.isDummy(v)) {
+			for (final int u : g.upper[v]) {
+				if (g.isDummy(u)) {
+					return u;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static Long key(final LayerGraph g, final int a, final int b) {
+		return Long.valueOf((long) Math.min(a, b) * g.nodeCount + Math.max(a, b));
+	}
+
+	private static double max(final double[] values) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (final double v : values) {
+			max = Math.max(max, v);
+		}
+		return max;
+	}
+
+	private static double min(final double[] values) {
+		double min = Double.POSITIVE_INFINITY;
+		for (final double v : values) {
+			min = Math.min(min, v);
+		}
+		return min;
+	}
+
+	private static int[] positions(final int nodeCount, final int[][] layering) {
+		final int[] pos = new int[nodeCount];
+		for (final int[] layer : layering) {
+			for (int i = 0; i < layer.length; ++i) {
+				pos[layer[i]] = i;
+			}
+		}
+		return pos;
+	}
+
+	private static int[][] reverse(final int[][] layers) {
+		final int[][] reversed = new int[layers.length][];
+		for (int r = 0; r < layers.length; ++r) {
+			reversed[r] = layers[layers.length - 1 - r];
+		}
+		return reversed;
+	}
+
+	private static int[][] reverseEach(final int[][] layers) {
+		final int[][] reversed = new int[layers.length][];
+		for (int r = 0; r < layers.length; ++r) {
+			final int[] layer = layers[r];
+			reversed[r] = new int[layer.length];
+			for (int i = 0; i < layer.length; ++i) {
+				reversed[r][i] = layer[layer.length - 1 - i];
+			}
+		}
+		return reversed;
+	}
+
+	private static int[] sortedBy(final int[] pos, final int[] nodes) {
+		final int[] sorted = nodes.clone();
+		final long[] packed = new long[sorted.length];
+		for (int i = 0; i < sorted.length; ++i) {
+			packed[i] = ((long) pos[sorted[i]] << 32) | sorted[i];
+		}
+		Arrays.sort(packed);
+		for (int i = 0; i < sorted.length; ++i) {
+			sorted[i] = (int) packed[i];
+		}
+		return sorted;
+	}
+
+}
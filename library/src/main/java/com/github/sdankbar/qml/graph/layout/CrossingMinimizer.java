@@ -0,0 +1,180 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.layout;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Reduces edge crossings by reordering the nodes in each rank using the
+ * barycenter heuristic. Ranks are swept in two half steps, first the even ranks
+ * and then the odd ranks. Ranks of the same parity never share edges, so every
+ * rank in a half step is reordered in parallel using the current order of both
+ * of its neighboring ranks.
+ */
+class CrossingMinimizer {
+
+	private static final int PARALLEL_THRESHOLD = 2000;
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private static long countCrossings(final LayerGraph g, final int r) {
+		// Edges between rank r and r + 1, sorted by their top end then bottom end,
+		// cross once for every earlier edge that has a larger bottom position.
+		final int[] bottomLayer = g.layers[r + 1];
+		final int[] tree = new int[bottomLayer.length + 1];
+		long crossings = 0;
+		int inserted = 0;
+		for (final int v : g.layers[r]) {
+			final int[] below = sortedByPosition(g, g.lower[v]);
+			for (final int w : below) {
+				final int p = g.pos[w] + 1;
+				int notGreater = 0;
+				for (int i = p; i > 0; i -= i & -i) {
+					notGreater += tree[i];
+				}
+				crossings += inserted - notGreater;
+			}
+			for (final int w : below) {
+				for (int i = g.pos[w] + 1; i < tree.length; i += i & -i) {
+					++tree[i];
+				}
+				++inserted;
+			}
+		}
+		return crossings;
+	}
+
+	static long countCrossings(final LayerGraph g) {
+		return ranks(g, 0, g.layers.length - 1, 1).mapToLong(r -> countCrossings(g, r)).sum();
+	}
+
+	/**
+	 * Reorders the ranks of g to reduce the number of crossings. g is left with
+	 * the best order found.
+	 *
+	 * @param g          Graph to reorder.
+	 * @param iterations Maximum number of sweeps.
+	 */
+	static void minimize(final LayerGraph g, final int iterations) {
+		long bestCrossings = countCrossings(g);
+		int[][] best = copyLayers(g.layers);
+		for (int i = 0; i < iterations && bestCrossings > 0; ++i) {
+			ranks(g, 0, g.layers.length, 2).forEach(r -> reorder(g, r));
+			ranks(g, 1, g.layers.length, 2).forEach(r -> reorder(g, r));
+
+			final long crossings = countCrossings(g);
+			if (crossings < bestCrossings) {
+				bestCrossings = crossings;
+				best = copyLayers(g.layers);
+			}
+		}
+
+		for (int r = 0; r < g.layers.length; ++r) {
+			System.arraycopy(best[r], 0, g.layers[r], 0, best[r].length);
+			g.updatePositions(r);
+		}
+	}
+
+	private static int[][] copyLayers(final int[][] layers) {
+		final int[][] copy = new int[layers.length][];
+		for (int r = 0; r < layers.length; ++r) {
+			copy[r] = layers[r].clone();
+		}
+		return copy;
+	}
+
+	private static IntStream ranks(final LayerGraph g, final int start, final int end, final int step) {
+		final IntStream ranks = IntStream.range(0, Math.max(0, (end - start + step - 1) / step))
+				.map(i -> start + i * step);
+		if (g.nodeCount >= PARALLEL_THRESHOLD) {
+			return ranks.parallel();
+		} else {
+			return ranks;
+		}
+	}
+
+	private static double relativePosition(final LayerGraph g, final int v) {
+		return (g.pos[v] + 0.5) / g.layers[g.rank[v]].length;
+	}
+
+	private static void reorder(final LayerGraph g, final int r) {
+		final int[] layer = g.layers[r];
+		final double[] barycenter = new double[layer.length];
+		final Integer[] order = new Integer[layer.length];
+		for (int i = 0; i < layer.length; ++i) {
+			final int v = layer[i];
+			final int degree = g.upper[v].length + g.lower[v].length;
+			if (degree == 0) {
+				// Nodes without neighbors keep their relative position.
+				barycenter[i] = relativePosition(g, v);
+			} else {
+				double sum = 0;
+				for (final int u : g.upper[v]) {
+					sum += relativePosition(g, u);
+				}
+				for (final int w : g.lower[v]) {
+					sum += relativePosition(g, w);
+				}
+				barycenter[i] = sum / degree;
+			}
+			order[i] = Integer.valueOf(i);
+		}
+
+		// Stable, so ties keep their current order.
+		Arrays.sort(order, (a, b) -> Double.compare(barycenter[a.intValue()], barycenter[b.intValue()]));
+
+		final int[] reordered = new int[layer.length];
+		for (int i = 0; i < layer.length; ++i) {
+			reordered[i] = layer[order[i].intValue()];
+		}
+		System.arraycopy(reordered, 0, layer, 0, layer.length);
+		g.updatePositions(r);
+	}
+
+	static int[] sortedByPosition(final LayerGraph g, final int[] nodes) {
+		final int[] sorted = nodes.clone();
+		if (sorted.length <= INSERTION_SORT_THRESHOLD) {
+			for (int i = 1; i < sorted.length; ++i) {
+				final int v = sorted[i];
+				int j = i - 1;
+				while (j >= 0 && g.pos[sorted[j]] > g.pos[v]) {
+					sorted[j + 1] = sorted[j];
+					--j;
+				}
+				sorted[j + 1] = v;
+			}
+		} else {
+			// Pack the position above the node so a primitive sort orders by position.
+			final long[] packed = new long[sorted.length];
+			for (int i = 0; i < sorted.length; ++i) {
+				packed[i] = ((long) g.pos[sorted[i]] << 32) | sorted[i];
+			}
+			Arrays.sort(packed);
+			for (int i = 0; i < sorted.length; ++i) {
+				sorted[i] = (int) packed[i];
+			}
+		}
+		return sorted;
+	}
+
+}
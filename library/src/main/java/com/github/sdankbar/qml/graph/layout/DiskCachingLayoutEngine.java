@@ -0,0 +1,246 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.layout;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sdankbar.qml.graph.GraphSnapshot;
+import com.github.sdankbar.qml.graph.LayoutEngine;
+import com.github.sdankbar.qml.graph.LayoutResult;
+import com.github.sdankbar.qml.graph.parsing.EdgeDefinition;
+import com.github.sdankbar.qml.graph.parsing.NodeDefinition;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+
+/**
+ * LayoutEngine that stores the layouts produced by another LayoutEngine in a
+ * directory so that they survive restarts. Graphs are identified the same way
+ * as in CachingLayoutEngine. A graph found on disk is returned without calling
+ * the wrapped engine, so with a GraphVizLayoutEngine no "dot" process is
+ * started. Once the store grows past its maximum size it is compacted down to
+ * the most recently used half. If compaction fails it is not retried until the
+ * store has grown by another half of its maximum size.
+ *
+ * Typically wrapped by a CachingLayoutEngine so that repeated layouts do not
+ * need to be decoded from disk.
+ */
+public class DiskCachingLayoutEngine implements LayoutEngine, AutoCloseable {
+
+	private static final Logger log = LoggerFactory.getLogger(DiskCachingLayoutEngine.class);
+
+	private static final String FILE_NAME = "layouts.seg";
+	// The store is compacted after it passes maximumBytes, so leave room for it
+	// to grow past the limit without reaching the 2GB a mapping can address.
+	private static final long MAXIMUM_BYTES_LIMIT = Integer.MAX_VALUE / 2;
+
+	private static LayoutResult decode(final ByteBuffer buffer, final double dpi) {
+		final LayoutResult.Builder builder = LayoutResult.builder();
+		builder.setGraphSize(buffer.getDouble(), buffer.getDouble());
+
+		final int nodeCount = buffer.getInt();
+		for (int i = 0; i < nodeCount; ++i) {
+			final String id = readString(buffer);
+			final double x = buffer.getDouble();
+			final double y = buffer.getDouble();
+			final double width = buffer.getDouble();
+			final double height = buffer.getDouble();
+			builder.addNode(new NodeDefinition(id, x + width / 2.0, y + height / 2.0, width, height));
+		}
+
+		final int edgeCount = buffer.getInt();
+		for (int i = 0; i < edgeCount; ++i) {
+			final String tail = readString(buffer);
+			final String head = readString(buffer);
+			final int pointCount = buffer.getInt();
+			final List<Point2D> points = new ArrayList<>(pointCount);
+			for (int j = 0; j < pointCount; ++j) {
+				points.add(new Point2D.Double(buffer.getDouble() / dpi, buffer.getDouble() / dpi));
+			}
+			builder.addEdge(new EdgeDefinition(tail, head, points, dpi));
+		}
+		return builder.build();
+	}
+
+	private static ByteBuffer encode(final LayoutResult result) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeDouble(result.getGraphWidthInches());
+			out.writeDouble(result.getGraphHeightInches());
+
+			out.writeInt(result.getNodes().size());
+			for (final NodeDefinition def : result.getNodes()) {
+				writeString(out, def.getNodeID());
+				out.writeDouble(def.getX());
+				out.writeDouble(def.getY());
+				out.writeDouble(def.getWidth());
+				out.writeDouble(def.getHeight());
+			}
+
+			out.writeInt(result.getEdges().size());
+			for (final EdgeDefinition def : result.getEdges()) {
+				writeString(out, def.getTailUUID());
+				writeString(out, def.getHeadUUID());
+				out.writeInt(def.getControlPoints().size());
+				for (final Point2D p : def.getControlPoints()) {
+					out.writeDouble(p.getX());
+					out.writeDouble(p.getY());
+				}
+			}
+		}
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+	private static LayoutSegmentFile open(final Path directory) {
+		Objects.requireNonNull(directory, "directory is null");
+		try {
+			Files.createDirectories(directory);
+			return new LayoutSegmentFile(directory.resolve(FILE_NAME));
+		} catch (final IOException e) {
+			log.error("Failed to open layout cache in {}", directory, e);
+			throw new IllegalStateException("Failed to open layout cache", e);
+		}
+	}
+
+	private static String readString(final ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(final DataOutputStream out, final String s) throws IOException {
+		final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private final LayoutEngine delegate;
+	private final LayoutSegmentFile store;
+	private final long maximumBytes;
+	// Guarded by this. The store is compacted once it grows past compactionBytes.
+	private long compactionBytes;
+	private boolean compactionFailed = false;
+
+	/**
+	 * @param delegate     Engine used to lay out graphs that are not stored.
+	 * @param directory    Directory to store layouts in. Created if it does not
+	 *                     exist. May only be used by one DiskCachingLayoutEngine
+	 *                     at a time.
+	 * @param maximumBytes Size the store may grow to before it is compacted. At
+	 *                     most 1GB.
+	 * @throws IllegalStateException Thrown if the store cannot be opened.
+	 */
+	public DiskCachingLayoutEngine(final LayoutEngine delegate, final Path directory, final long maximumBytes) {
+		this(delegate, open(directory), maximumBytes);
+	}
+
+	/**
+	 * @param delegate     Engine used to lay out graphs that are not stored.
+	 * @param store        Opened store of layouts.
+	 * @param maximumBytes Size the store may grow to before it is compacted.
+	 */
+	DiskCachingLayoutEngine(final LayoutEngine delegate, final LayoutSegmentFile store, final long maximumBytes) {
+		this.delegate = Objects.requireNonNull(delegate, "delegate is null");
+		this.store = Objects.requireNonNull(store, "store is null");
+		Preconditions.checkArgument(0 < maximumBytes && maximumBytes <= MAXIMUM_BYTES_LIMIT,
+				"maximumBytes must be in (0, 1GB]");
+		this.maximumBytes = maximumBytes;
+		compactionBytes = maximumBytes;
+	}
+
+	/**
+	 * Closes the store. Layouts are always flushed to disk as they are added, so
+	 * not closing loses nothing.
+	 */
+	@Override
+	public void close() {
+		try {
+			store.close();
+		} catch (final IOException e) {
+			log.warn("Failed to close layout cache", e);
+		}
+	}
+
+	private synchronized void compactIfNeeded() {
+		final long size = store.size();
+		if (size <= compactionBytes) {
+			return;
+		}
+
+		try {
+			store.compact(maximumBytes / 2);
+			compactionBytes = maximumBytes;
+			if (compactionFailed) {
+				log.info("Compacted layout cache after earlier failures");
+				compactionFailed = false;
+			}
+		} catch (final IOException e) {
+			// Retrying on every layout would rewrite the store each time, so wait
+			// for it to grow first. Only the first of a run of failures is logged.
+			compactionBytes = size + maximumBytes / 2;
+			if (!compactionFailed) {
+				log.warn("Failed to compact layout cache, retrying once it grows past {} bytes",
+						Long.valueOf(compactionBytes), e);
+				compactionFailed = true;
+			}
+		}
+	}
+
+	@Override
+	public LayoutResult layout(final GraphSnapshot graph) {
+		Objects.requireNonNull(graph, "graph is null");
+		final HashCode key = CachingLayoutEngine.hash(graph);
+		try {
+			final Optional<ByteBuffer> stored = store.read(key);
+			if (stored.isPresent()) {
+				return decode(stored.get(), graph.getDPI());
+			}
+		} catch (final IOException | BufferUnderflowException | IllegalArgumentException e) {
+			log.warn("Failed to read stored layout, laying out again", e);
+		}
+
+		final LayoutResult result = delegate.layout(graph);
+		try {
+			store.append(key, encode(result));
+		} catch (final IOException e) {
+			log.warn("Failed to store layout", e);
+		}
+		compactIfNeeded();
+		return result;
+	}
+
+}
@@ -0,0 +1,186 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.layout;
+
+import java.util.Arrays;
+
+/**
+ * Proper layered graph used while laying out a graph. Every edge spans exactly
+ * one rank; edges that spanned more than one rank are split by dummy nodes.
+ * Nodes [0, realCount) are the graph's vertices, the rest are dummies. Arrays
+ * are exposed directly to the other layout classes for speed.
+ */
+class LayerGraph {
+
+	final int realCount;
+	final int nodeCount;
+	final int[] rank;
+	final double[] width;
+	final double[] height;
+	// Neighbors in the rank above (predecessors) and below (successors).
+	final int[][] upper;
+	final int[][] lower;
+	// For each input edge, the nodes it passes through from its top to its bottom
+	// end. Null for self loops.
+	final int[][] chains;
+	final int[][] layers;
+	final int[] pos;
+
+	/**
+	 * @param realCount Number of vertices.
+	 * @param rank      Rank of each vertex.
+	 * @param width     Width of each vertex.
+	 * @param height    Height of each vertex.
+	 * @param tops      Upper end of each edge, after cycles are removed.
+	 * @param bottoms   Lower end of each edge, after cycles are removed. Equal to
+	 *                  the upper end for self loops.
+	 */
+	LayerGraph(final int realCount, final int[] rank, final double[] width, final double[] height, final int[] tops,
+			final int[] bottoms) {
+		this.realCount = realCount;
+
+		int dummyCount = 0;
+		for (int e = 0; e < tops.length; ++e) {
+			if (tops[e] != bottoms[e]) {
+				dummyCount += rank[bottoms[e]] - rank[tops[e]] - 1;
+			}
+		}
+		nodeCount = realCount + dummyCount;
+		this.rank = Arrays.copyOf(rank, nodeCount);
+		this.width = Arrays.copyOf(width, nodeCount);
+		this.height = Arrays.copyOf(height, nodeCount);
+
+		// Split long edges and record the resulting unit length edges.
+		chains = new int[tops.length][];
+		final int[] linkTop = new int[tops.length + dummyCount];
+		final int[] linkBottom = new int[linkTop.length];
+		int links = 0;
+		int nextDummy = realCount;
+		for (int e = 0; e < tops.length; ++e) {
+			if (tops[e] == bottoms[e]) {
+				continue;
+			}
+			final int span = rank[bottoms[e]] - rank[tops[e]];
+			final int[] chain = new int[span + 1];
+			chain[0] = tops[e];
+			for (int i = 1; i < span; ++i) {
+				final int d = nextDummy++;
+				this.rank[d] = rank[tops[e]] + i;
+				chain[i] = d;
+			}
+			chain[span] = bottoms[e];
+			for (int i = 0; i < span; ++i) {
+				linkTop[links] = chain[i];
+				linkBottom[links] = chain[i + 1];
+				++links;
+			}
+			chains[e] = chain;
+		}
+
+		upper = group(nodeCount, linkBottom, linkTop, links);
+		lower = group(nodeCount, linkTop, linkBottom, links);
+
+		int rankCount = 0;
+		for (int v = 0; v < nodeCount; ++v) {
+			rankCount = Math.max(rankCount, this.rank[v] + 1);
+		}
+		layers = new int[rankCount][];
+		pos = new int[nodeCount];
+		initialOrder();
+	}
+
+	private static int[][] group(final int nodeCount, final int[] keys, final int[] values, final int count) {
+		final int[] sizes = new int[nodeCount];
+		for (int i = 0; i < count; ++i) {
+			++sizes[keys[i]];
+		}
+		final int[][] grouped = new int[nodeCount][];
+		for (int v = 0; v < nodeCount; ++v) {
+			grouped[v] = new int[sizes[v]];
+			sizes[v] = 0;
+		}
+		for (int i = 0; i < count; ++i) {
+			final int k = keys[i];
+			grouped[k][sizes[k]++] = values[i];
+		}
+		return grouped;
+	}
+
+	/**
+	 * Orders each rank by the order a depth first search reaches its nodes, which
+	 * gives crossing minimization a reasonable starting point.
+	 */
+	private void initialOrder() {
+		final int[] layerSizes = new int[layers.length];
+		for (int v = 0; v < nodeCount; ++v) {
+			++layerSizes[rank[v]];
+		}
+		for (int r = 0; r < layers.length; ++r) {
+			layers[r] = new int[layerSizes[r]];
+			layerSizes[r] = 0;
+		}
+
+		final boolean[] visited = new boolean[nodeCount];
+		final int[] stack = new int[nodeCount];
+		for (int s = 0; s < nodeCount; ++s) {
+			if (visited[s]) {
+				continue;
+			}
+			int top = 0;
+			stack[top++] = s;
+			visited[s] = true;
+			while (top > 0) {
+				final int v = stack[--top];
+				final int r = rank[v];
+				pos[v] = layerSizes[r];
+				layers[r][layerSizes[r]++] = v;
+				// Push in reverse so that children are visited in order.
+				final int[] children = lower[v];
+				for (int i = children.length - 1; i >= 0; --i) {
+					final int c = children[i];
+					if (!visited[c]) {
+						visited[c] = true;
+						stack[top++] = c;
+					}
+				}
+			}
+		}
+	}
+
+	boolean isDummy(final int v) {
+		return v >= realCount;
+	}
+
+	/**
+	 * Recomputes pos from the order of the nodes in a rank.
+	 *
+	 * @param r Rank to update.
+	 */
+	void updatePositions(final int r) {
+		final int[] layer = layers[r];
+		for (int i = 0; i < layer.length; ++i) {
+			pos[layer[i]] = i;
+		}
+	}
+
+}
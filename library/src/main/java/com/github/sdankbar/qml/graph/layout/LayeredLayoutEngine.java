@@ -0,0 +1,320 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.layout;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import com.github.sdankbar.qml.graph.GraphSnapshot;
+import com.github.sdankbar.qml.graph.LayoutEngine;
+import com.github.sdankbar.qml.graph.LayoutResult;
+import com.github.sdankbar.qml.graph.parsing.EdgeDefinition;
+import com.github.sdankbar.qml.graph.parsing.NodeDefinition;
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.ImmutableIntArray;
+
+/**
+ * LayoutEngine that lays out graphs in process, without GraphViz, using the
+ * same layered approach as "dot". Cycles are broken by reversing depth first
+ * search back edges, vertices are ranked by longest path followed by a pass
+ * that pulls vertices towards their children, crossings are reduced with the
+ * barycenter heuristic and x coordinates are assigned using Brandes-Köpf.
+ * Produces node boxes and edge splines in the same form as GraphVizParser.
+ */
+public class LayeredLayoutEngine implements LayoutEngine {
+
+	// Defaults match "dot".
+	private static final double DEFAULT_NODE_SEPARATION_INCHES = 0.25;
+	private static final double DEFAULT_RANK_SEPARATION_INCHES = 0.5;
+	private static final double MARGIN_INCHES = 4.0 / 72.0;
+	private static final double SELF_LOOP_INCHES = 0.25;
+	private static final int CROSSING_ITERATIONS = 24;
+
+	private static void addSegment(final List<Point2D> points, final Point2D end) {
+		// Splines are made of cubic segments, 3 control points per segment after the
+		// first point. Straight segments have their inner points a third of the way
+		// along.
+		final Point2D start = points.get(points.size() - 1);
+		final double dx = end.getX() - start.getX();
+		final double dy = end.getY() - start.getY();
+		points.add(new Point2D.Double(start.getX() + dx / 3, start.getY() + dy / 3));
+		points.add(new Point2D.Double(start.getX() + 2 * dx / 3, start.getY() + 2 * dy / 3));
+		points.add(end);
+	}
+
+	/**
+	 * Finds the edges that need to be reversed to make the graph acyclic, the back
+	 * edges of a depth first search.
+	 */
+	private static boolean[] findBackEdges(final int n, final int[] tails, final int[] heads) {
+		final int[][] outEdges = new int[n][];
+		final int[] sizes = new int[n];
+		for (final int t : tails) {
+			++sizes[t];
+		}
+		for (int v = 0; v < n; ++v) {
+			outEdges[v] = new int[sizes[v]];
+			sizes[v] = 0;
+		}
+		for (int e = 0; e < tails.length; ++e) {
+			outEdges[tails[e]][sizes[tails[e]]++] = e;
+		}
+
+		final boolean[] reversed = new boolean[tails.length];
+		final byte[] state = new byte[n];// 0 unvisited, 1 on stack, 2 done
+		final int[] stack = new int[n];
+		final int[] next = new int[n];
+		for (int s = 0; s < n; ++s) {
+			if (state[s] != 0) {
+				continue;
+			}
+			int top = 0;
+			stack[top++] = s;
+			state[s] = 1;
+			while (top > 0) {
+				final int v = stack[top - 1];
+				if (next[v] < outEdges[v].length) {
+					final int e = outEdges[v][next[v]++];
+					final int w = heads[e];
+					if (state[w] == 1) {
+						reversed[e] = w != v;
+					} else if (state[w] == 0) {
+						state[w] = 1;
+						stack[top++] = w;
+					}
+				} else {
+					state[v] = 2;
+					--top;
+				}
+			}
+		}
+		return reversed;
+	}
+
+	/**
+	 * Ranks the vertices of an acyclic graph. Each vertex starts at the length of
+	 * the longest path to it. Vertices with more children than parents are then
+	 * moved down as far as their children allow, shortening their edges.
+	 */
+	private static int[] rank(final int n, final int[] tops, final int[] bottoms) {
+		final int[] inDegree = new int[n];
+		final int[] outDegree = new int[n];
+		final int[][] children = new int[n][];
+		for (int e = 0; e < tops.length; ++e) {
+			if (tops[e] != bottoms[e]) {
+				++outDegree[tops[e]];
+				++inDegree[bottoms[e]];
+			}
+		}
+		for (int v = 0; v < n; ++v) {
+			children[v] = new int[outDegree[v]];
+		}
+		final int[] filled = new int[n];
+		for (int e = 0; e < tops.length; ++e) {
+			if (tops[e] != bottoms[e]) {
+				children[tops[e]][filled[tops[e]]++] = bottoms[e];
+			}
+		}
+
+		final int[] remaining = inDegree.clone();
+		final int[] order = new int[n];
+		int head = 0;
+		int tail = 0;
+		for (int v = 0; v < n; ++v) {
+			if (remaining[v] == 0) {
+				order[tail++] = v;
+			}
+		}
+		final int[] rank = new int[n];
+		while (head < tail) {
+			final int v = order[head++];
+			for (final int c : children[v]) {
+				rank[c] = Math.max(rank[c], rank[v] + 1);
+				if (--remaining[c] == 0) {
+					order[tail++] = c;
+				}
+			}
+		}
+
+		for (int i = n - 1; i >= 0; --i) {
+			final int v = order[i];
+			if (outDegree[v] > inDegree[v]) {
+				int lowest = Integer.MAX_VALUE;
+				for (final int c : children[v]) {
+					lowest = Math.min(lowest, rank[c]);
+				}
+				rank[v] = Math.max(rank[v], lowest - 1);
+			}
+		}
+
+		int minRank = Integer.MAX_VALUE;
+		for (int v = 0; v < n; ++v) {
+			minRank = Math.min(minRank, rank[v]);
+		}
+		for (int v = 0; v < n; ++v) {
+			rank[v] -= minRank;
+		}
+		return rank;
+	}
+
+	private static List<Point2D> selfLoop(final double right, final double centerY, final double height) {
+		final List<Point2D> points = new ArrayList<>(4);
+		final double quarter = height / 4;
+		points.add(new Point2D.Double(right, centerY - quarter));
+		points.add(new Point2D.Double(right + 2 * SELF_LOOP_INCHES, centerY - 2 * quarter));
+		points.add(new Point2D.Double(right + 2 * SELF_LOOP_INCHES, centerY + 2 * quarter));
+		points.add(new Point2D.Double(right, centerY + quarter));
+		return points;
+	}
+
+	private final double nodeSeparation;
+	private final double rankSeparation;
+
+	/**
+	 * Creates a new engine that uses the same node and rank separation as "dot".
+	 */
+	public LayeredLayoutEngine() {
+		this(DEFAULT_NODE_SEPARATION_INCHES, DEFAULT_RANK_SEPARATION_INCHES);
+	}
+
+	/**
+	 * @param nodeSeparationInches Minimum horizontal distance between vertices in
+	 *                             the same rank.
+	 * @param rankSeparationInches Vertical distance between ranks.
+	 */
+	public LayeredLayoutEngine(final double nodeSeparationInches, final double rankSeparationInches) {
+		Preconditions.checkArgument(nodeSeparationInches >= 0, "nodeSeparationInches < 0");
+		Preconditions.checkArgument(rankSeparationInches >= 0, "rankSeparationInches < 0");
+		nodeSeparation = nodeSeparationInches;
+		rankSeparation = rankSeparationInches;
+	}
+
+	@Override
+	public LayoutResult layout(final GraphSnapshot graph) {
+		Objects.requireNonNull(graph, "graph is null");
+		final int n = graph.getVertexCount();
+		final LayoutResult.Builder builder = LayoutResult.builder();
+		if (n == 0) {
+			builder.setGraphSize(2 * MARGIN_INCHES, 2 * MARGIN_INCHES);
+			return builder.build();
+		}
+
+		int edgeCount = 0;
+		for (int v = 0; v < n; ++v) {
+			edgeCount += graph.getChildren(v).length();
+		}
+		final int[] tails = new int[edgeCount];
+		final int[] heads = new int[edgeCount];
+		int e = 0;
+		for (int v = 0; v < n; ++v) {
+			final ImmutableIntArray children = graph.getChildren(v);
+			for (int i = 0; i < children.length(); ++i) {
+				tails[e] = v;
+				heads[e] = children.get(i);
+				++e;
+			}
+		}
+
+		final boolean[] reversed = findBackEdges(n, tails, heads);
+		final int[] tops = new int[edgeCount];
+		final int[] bottoms = new int[edgeCount];
+		for (e = 0; e < edgeCount; ++e) {
+			tops[e] = reversed[e] ? heads[e] : tails[e];
+			bottoms[e] = reversed[e] ? tails[e] : heads[e];
+		}
+
+		final double[] widths = new double[n];
+		final double[] heights = new double[n];
+		for (int v = 0; v < n; ++v) {
+			widths[v] = graph.getWidthInches(v);
+			heights[v] = graph.getHeightInches(v);
+		}
+
+		final LayerGraph g = new LayerGraph(n, rank(n, tops, bottoms), widths, heights, tops, bottoms);
+		CrossingMinimizer.minimize(g, CROSSING_ITERATIONS);
+		final double[] x = CoordinateAssigner.assign(g, nodeSeparation);
+
+		// Each rank is as tall as its tallest vertex.
+		final double[] rankHeight = new double[g.layers.length];
+		for (int v = 0; v < g.nodeCount; ++v) {
+			rankHeight[g.rank[v]] = Math.max(rankHeight[g.rank[v]], g.height[v]);
+		}
+		final double[] rankY = new double[g.layers.length];
+		double y = MARGIN_INCHES;
+		for (int r = 0; r < rankY.length; ++r) {
+			rankY[r] = y + rankHeight[r] / 2;
+			y += rankHeight[r] + rankSeparation;
+		}
+		final double graphHeight = y - rankSeparation + MARGIN_INCHES;
+
+		// Self loops are drawn to the right of their vertex.
+		final boolean[] hasSelfLoop = new boolean[n];
+		for (e = 0; e < edgeCount; ++e) {
+			hasSelfLoop[tails[e]] |= tails[e] == heads[e];
+		}
+
+		double minX = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		for (int v = 0; v < g.nodeCount; ++v) {
+			minX = Math.min(minX, x[v] - g.width[v] / 2);
+			maxX = Math.max(maxX, x[v] + g.width[v] / 2 + (v < n && hasSelfLoop[v] ? SELF_LOOP_INCHES : 0));
+		}
+		final double offset = MARGIN_INCHES - minX;
+		for (int v = 0; v < g.nodeCount; ++v) {
+			x[v] += offset;
+		}
+		builder.setGraphSize(maxX - minX + 2 * MARGIN_INCHES, graphHeight);
+
+		for (int v = 0; v < n; ++v) {
+			builder.addNode(new NodeDefinition(graph.getID(v), x[v], rankY[g.rank[v]], widths[v], heights[v]));
+		}
+
+		final double dpi = graph.getDPI();
+		for (e = 0; e < edgeCount; ++e) {
+			final List<Point2D> points;
+			if (tails[e] == heads[e]) {
+				points = selfLoop(x[tails[e]] + widths[tails[e]] / 2, rankY[g.rank[tails[e]]], heights[tails[e]]);
+			} else {
+				final int[] chain = g.chains[e];
+				points = new ArrayList<>(3 * chain.length);
+				final int top = chain[0];
+				final int bottom = chain[chain.length - 1];
+				points.add(new Point2D.Double(x[top], rankY[g.rank[top]] + heights[top] / 2));
+				for (int i = 1; i < chain.length - 1; ++i) {
+					addSegment(points, new Point2D.Double(x[chain[i]], rankY[g.rank[chain[i]]]));
+				}
+				addSegment(points, new Point2D.Double(x[bottom], rankY[g.rank[bottom]] - heights[bottom] / 2));
+				if (reversed[e]) {
+					Collections.reverse(points);
+				}
+			}
+			builder.addEdge(new EdgeDefinition(graph.getID(tails[e]), graph.getID(heads[e]), points, dpi));
+		}
+
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,327 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.layout;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashCode;
+
+/**
+ * Append only file of keyed records, read through a memory mapping. Each record
+ * is stored with its length and a CRC32 so that a record partially written
+ * when the process died is detected, and truncated, the next time the file is
+ * opened. An index from key to record offset is rebuilt when the file is
+ * opened and kept in least recently used order. Compaction rewrites the most
+ * recently used records to a new file and atomically replaces the old one.
+ */
+class LayoutSegmentFile implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(LayoutSegmentFile.class);
+
+	private static final int FILE_MAGIC = 0x4A51474C;
+	private static final int FILE_VERSION = 1;
+	private static final int FILE_HEADER_BYTES = 8;
+	private static final int RECORD_MAGIC = 0x4C41594F;
+	// Magic, payload length and CRC32 of the payload.
+	private static final int RECORD_HEADER_BYTES = 12;
+	private static final int KEY_BYTES = 32;
+	// The whole file is mapped, and a mapping cannot exceed 2GB.
+	private static final long MAXIMUM_FILE_BYTES = Integer.MAX_VALUE;
+
+	private static int crc(final ByteBuffer buffer) {
+		final CRC32 crc = new CRC32();
+		crc.update(buffer);
+		return (int) crc.getValue();
+	}
+
+	private static FileChannel openChannel(final Path file) throws IOException {
+		return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	private static ByteBuffer record(final byte[] key, final ByteBuffer payload) {
+		final ByteBuffer body = ByteBuffer.allocate(KEY_BYTES + payload.remaining());
+		body.put(key);
+		body.put(payload);
+		body.flip();
+
+		final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + body.remaining());
+		record.putInt(RECORD_MAGIC);
+		record.putInt(body.remaining());
+		record.putInt(crc(body.duplicate()));
+		record.put(body);
+		record.flip();
+		return record;
+	}
+
+	private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+			throws IOException {
+		long p = position;
+		while (buffer.hasRemaining()) {
+			p += channel.write(buffer, p);
+		}
+	}
+
+	private final Path file;
+	private FileChannel channel;
+	private FileLock lock;
+	private MappedByteBuffer mapped;
+	private long end;
+	// Key to the offset of the record's header, in least recently used order.
+	private final LinkedHashMap<HashCode, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Opens the file, creating it if it does not exist, and recovers from any
+	 * partially written record.
+	 *
+	 * @param file File to store records in.
+	 * @throws IOException Thrown if the file cannot be opened or is locked by
+	 *                     another process.
+	 */
+	LayoutSegmentFile(final Path file) throws IOException {
+		this.file = file;
+		open();
+	}
+
+	/**
+	 * Appends a record. The record is flushed to disk before returning.
+	 *
+	 * @param key     Key of the record. Replaces any earlier record with the same
+	 *                key.
+	 * @param payload Record contents.
+	 * @throws IOException Thrown if the record could not be written or would
+	 *                     grow the file past 2GB.
+	 */
+	synchronized void append(final HashCode key, final ByteBuffer payload) throws IOException {
+		final ByteBuffer record = record(key.asBytes(), payload);
+		final long offset = end;
+		if (offset + record.limit() > MAXIMUM_FILE_BYTES) {
+			throw new IOException("Appending " + record.limit() + " bytes would grow " + file + " past 2GB");
+		}
+		writeFully(channel, record, offset);
+		channel.force(false);
+		end = offset + record.limit();
+		index.put(key, Long.valueOf(offset));
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		mapped = null;
+		if (lock != null) {
+			lock.release();
+		}
+		channel.close();
+	}
+
+	/**
+	 * Rewrites the file keeping only the most recently used records that fit in
+	 * maximumBytes.
+	 *
+	 * @param maximumBytes Maximum size of the compacted file.
+	 * @throws IOException Thrown if the file could not be rewritten. The existing
+	 *                     file is left unchanged and reopened.
+	 */
+	synchronized void compact(final long maximumBytes) throws IOException {
+		final List<Map.Entry<HashCode, Long>> entries = new ArrayList<>(index.entrySet());
+		long bytes = FILE_HEADER_BYTES;
+		int first = entries.size();
+		while (first > 0) {
+			final long length = RECORD_HEADER_BYTES + recordLength(entries.get(first - 1).getValue().longValue());
+			if (bytes + length > maximumBytes) {
+				break;
+			}
+			bytes += length;
+			--first;
+		}
+
+		// Least recently used first, so the order of the records is the order of use.
+		final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			long position = writeHeader(out);
+			for (final Map.Entry<HashCode, Long> entry : entries.subList(first, entries.size())) {
+				final long offset = entry.getValue().longValue();
+				final ByteBuffer record = map(offset, RECORD_HEADER_BYTES + recordLength(offset));
+				position += record.remaining();
+				writeFully(out, record, position - record.remaining());
+			}
+			out.force(true);
+		}
+
+		close();
+		try {
+			replaceFile(temp);
+		} catch (final IOException | RuntimeException e) {
+			// Keep using the original file.
+			try {
+				Files.deleteIfExists(temp);
+				open();
+			} catch (final IOException reopen) {
+				e.addSuppressed(reopen);
+			}
+			throw e;
+		}
+		open();
+		log.debug("Compacted {} to {} of {} layouts", file, Integer.valueOf(entries.size() - first),
+				Integer.valueOf(entries.size()));
+	}
+
+	private ByteBuffer map(final long offset, final long length) throws IOException {
+		if (mapped == null || offset + length > mapped.capacity()) {
+			mapped = channel.map(MapMode.READ_ONLY, 0, end);
+		}
+		final ByteBuffer slice = mapped.duplicate();
+		slice.position((int) offset);
+		slice.limit((int) (offset + length));
+		return slice.slice();
+	}
+
+	private void open() throws IOException {
+		channel = openChannel(file);
+		lock = channel.tryLock();
+		if (lock == null) {
+			channel.close();
+			throw new IOException(file + " is in use by another process");
+		}
+
+		if (channel.size() < FILE_HEADER_BYTES) {
+			channel.truncate(0);
+			end = writeHeader(channel);
+			channel.force(true);
+		} else {
+			final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+			channel.read(header, 0);
+			header.flip();
+			if (header.getInt() != FILE_MAGIC || header.getInt() != FILE_VERSION) {
+				log.warn("{} is not a layout cache of this version, discarding it", file);
+				channel.truncate(0);
+				end = writeHeader(channel);
+				channel.force(true);
+			} else {
+				end = channel.size();
+			}
+		}
+
+		mapped = null;
+		index.clear();
+		scan();
+	}
+
+	/**
+	 * @param key Key to search for.
+	 * @return The payload of the most recent record with key. Valid until the
+	 *         next call to compact().
+	 * @throws IOException Thrown if the record could not be read.
+	 */
+	synchronized Optional<ByteBuffer> read(final HashCode key) throws IOException {
+		final Long offset = index.get(key);
+		if (offset == null) {
+			return Optional.empty();
+		}
+		final long o = offset.longValue();
+		return Optional.of(map(o + RECORD_HEADER_BYTES + KEY_BYTES, recordLength(o) - KEY_BYTES).asReadOnlyBuffer());
+	}
+
+	private int recordLength(final long offset) throws IOException {
+		return map(offset, RECORD_HEADER_BYTES).getInt(4);
+	}
+
+	/**
+	 * Atomically replaces the file with a rewritten copy. Only called while the
+	 * file is closed.
+	 *
+	 * @param temp The rewritten copy.
+	 * @throws IOException Thrown if the file could not be replaced.
+	 */
+	void replaceFile(final Path temp) throws IOException {
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Rebuilds the index from the file and truncates the file after the last
+	 * complete, valid, record.
+	 */
+	private void scan() throws IOException {
+		long offset = FILE_HEADER_BYTES;
+		while (offset + RECORD_HEADER_BYTES <= end) {
+			final ByteBuffer header = map(offset, RECORD_HEADER_BYTES);
+			final int magic = header.getInt();
+			final int length = header.getInt();
+			final int crc = header.getInt();
+			if (magic != RECORD_MAGIC || length < KEY_BYTES || offset + RECORD_HEADER_BYTES + length > end) {
+				break;
+			}
+			final ByteBuffer body = map(offset + RECORD_HEADER_BYTES, length);
+			if (crc(body.duplicate()) != crc) {
+				break;
+			}
+			final byte[] key = new byte[KEY_BYTES];
+			body.get(key);
+			index.put(HashCode.fromBytes(key), Long.valueOf(offset));
+			offset += RECORD_HEADER_BYTES + length;
+		}
+
+		if (offset != end) {
+			log.warn("Discarding {} bytes of incomplete or corrupt layouts from {}", Long.valueOf(end - offset), file);
+			channel.truncate(offset);
+			channel.force(true);
+			end = offset;
+			mapped = null;
+		}
+	}
+
+	/**
+	 * @return Size of the file in bytes.
+	 */
+	synchronized long size() {
+		return end;
+	}
+
+	private long writeHeader(final FileChannel out) throws IOException {
+		final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+		header.putInt(FILE_MAGIC);
+		header.putInt(FILE_VERSION);
+		header.flip();
+		writeFully(out, header, 0);
+		return FILE_HEADER_BYTES;
+	}
+
+}
@@ -22,12 +22,12 @@
  */
 package com.github.sdankbar.qml.graph.parsing;
 
-import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import com.github.sdankbar.qml.graph.splines.BSpline;
+import com.github.sdankbar.qml.graph.splines.SplineTessellator;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 
@@ -36,17 +36,6 @@ import com.google.common.collect.ImmutableList;
  */
 public class EdgeDefinition {
 
-	private static class InterpolatedPoint {
-		private final double n;
-		private final Point2D p;
-
-		public InterpolatedPoint(final double n, final Point2D p) {
-			this.n = n;
-			this.p = p;
-		}
-	}
-
-	private static double MIN_INTERPOLATION_DISTANCE = 10 * 10;
 	private static double arrowLengthInches = 0.125;
 	private static final double COSINE = Math.cos(Math.toRadians(30));
 
@@ -55,24 +44,68 @@ public class EdgeDefinition {
 
 	private static final double SINE_NEG = Math.sin(Math.toRadians(-30));
 
-	private static boolean needsAdditionalPoints(final Point2D p1, final Point2D p2, final Point2D p3) {
-		final Line2D l = new Line2D.Double(p1, p3);
-		if (l.ptLineDist(p2) < 0.5) {
-			return false;
-		} else if (p1.distanceSq(p2) > MIN_INTERPOLATION_DISTANCE) {
-			return true;
-		} else if (p2.distanceSq(p3) > MIN_INTERPOLATION_DISTANCE) {
-			return true;
-		} else {
-			return false;
-		}
-	}
-
 	private final double dpi;
+	private final ImmutableList<Point2D> controlPoints;
 	private final BSpline spline;
 	private final String headUUID;
 	private final String tailUUID;
 
+	/**
+	 * @param tailUUID            Identifier of the vertex the edge starts at.
+	 * @param headUUID            Identifier of the vertex the edge ends at.
+	 * @param controlPointsInches The edge's spline control points in inches.
+	 * @param dpi                 The number of dots per inch on the display the
+	 *                            edge will be drawn on. Used to convert inches to
+	 *                            pixels.
+	 */
+	public EdgeDefinition(final String tailUUID, final String headUUID, final List<Point2D> controlPointsInches,
+			final double dpi) {
+		this.dpi = dpi;
+		this.tailUUID = Objects.requireNonNull(tailUUID, "tailUUID is null");
+		this.headUUID = Objects.requireNonNull(headUUID, "headUUID is null");
+		Preconditions.checkArgument(controlPointsInches.size() >= 2, "Edge must have at least 2 control points");
+
+		final ImmutableList.Builder<Point2D> builder = ImmutableList.builder();
+		for (final Point2D p : controlPointsInches) {
+			builder.add(new Point2D.Double(dpi * p.getX(), dpi * p.getY()));
+		}
+		controlPoints = builder.build();
+		spline = new BSpline(controlPoints);
+	}
+
+	/**
+	 * @param tailUUID     Identifier of the vertex the edge starts at.
+	 * @param headUUID     Identifier of the vertex the edge ends at.
+	 * @param pointsInches Interleaved x and y coordinates of the edge's spline
+	 *                     control points in inches.
+	 * @param pointCount   Number of control points in pointsInches.
+	 * @param dpi          The number of dots per inch on the display the edge
+	 *                     will be drawn on. Used to convert inches to pixels.
+	 */
+	public EdgeDefinition(final String tailUUID, final String headUUID, final double[] pointsInches,
+			final int pointCount, final double dpi) {
+		this.dpi = dpi;
+		this.tailUUID = Objects.requireNonNull(tailUUID, "tailUUID is null");
+		this.headUUID = Objects.requireNonNull(headUUID, "headUUID is null");
+		Preconditions.checkArgument(pointCount >= 2, "Edge must have at least 2 control points");
+		Preconditions.checkArgument(pointsInches.length >= 2 * pointCount, "pointsInches is too short");
+
+		final Point2D[] points = new Point2D[pointCount];
+		for (int i = 0; i < pointCount; ++i) {
+			points[i] = new Point2D.Double(dpi * pointsInches[2 * i], dpi * pointsInches[2 * i + 1]);
+		}
+		controlPoints = ImmutableList.copyOf(points);
+		spline = new BSpline(controlPoints);
+	}
+
+	private EdgeDefinition(final EdgeDefinition other, final ImmutableList<Point2D> controlPoints) {
+		dpi = other.dpi;
+		tailUUID = other.tailUUID;
+		headUUID = other.headUUID;
+		this.controlPoints = controlPoints;
+		spline = new BSpline(controlPoints);
+	}
+
 	/**
 	 * @param line Line from an edge definition in GraphViz, in the "plain" format.
 	 * @param dpi  The number of dots per inch on the display the edge will be drawn
@@ -95,21 +128,73 @@ public class EdgeDefinition {
 				final double y = dpi * Double.parseDouble(tokens[4 + 2 * i + 1]);
 				builder.add(new Point2D.Double(x, y));
 			}
-			spline = new BSpline(builder.build());
+			controlPoints = builder.build();
+			spline = new BSpline(controlPoints);
 		} catch (final NumberFormatException e) {
 			throw new IllegalArgumentException("Error parsing number", e);
 		}
 	}
 
-	private void evaluateSpline(final double s, final double e, final Point2D sPoint, final Point2D ePoint,
-			final List<InterpolatedPoint> working) {
-		final double middle = (s + e) / 2;
-		final Point2D middlePoint = spline.evaluate(middle);
-		working.add(new InterpolatedPoint(middle, middlePoint));
-		if (needsAdditionalPoints(sPoint, middlePoint, ePoint)) {
-			evaluateSpline(s, middle, sPoint, middlePoint, working);
-			evaluateSpline(middle, e, middlePoint, ePoint, working);
+	/**
+	 * Adds the 3 points of an arrow head pointing from "from" to "tip".
+	 */
+	private void addArrowHead(final ImmutableList.Builder<Point2D> builder, final Point2D from, final Point2D tip) {
+		final double arrowLength = arrowLengthInches * dpi;
+
+		final double deltaX = from.getX() - tip.getX();
+		final double deltaY = from.getY() - tip.getY();
+		final double length = Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+		final double normalX = arrowLength * deltaX / length;
+		final double normalY = arrowLength * deltaY / length;
+
+		final Point2D arrow1 = new Point2D.Double(tip.getX() + COSINE * normalX - SINE * normalY,
+				tip.getY() + SINE * normalX + COSINE * normalY);
+		final Point2D arrow2 = new Point2D.Double(tip.getX() + COSINE_NEG * normalX - SINE_NEG * normalY,
+				tip.getY() + SINE_NEG * normalX + COSINE_NEG * normalY);
+
+		builder.add(arrow1);
+		builder.add(tip);
+		builder.add(arrow2);
+	}
+
+	/**
+	 * @return Returns the edge as a piecewise cubic Bézier curve in pixels: the
+	 *         start point, then 2 control points and an end point per segment,
+	 *         followed by the 3 points of the arrow head. Control points that do
+	 *         not form whole cubic segments are joined by straight segments.
+	 */
+	public ImmutableList<Point2D> getBezier() {
+		final int size = controlPoints.size();
+		final ImmutableList.Builder<Point2D> builder;
+		if ((size - 1) % 3 == 0) {
+			builder = ImmutableList.builderWithExpectedSize(size + 3);
+			builder.addAll(controlPoints);
+		} else {
+			builder = ImmutableList.builderWithExpectedSize(3 * size + 1);
+			builder.add(controlPoints.get(0));
+			for (int i = 1; i < size; ++i) {
+				builder.add(controlPoints.get(i - 1));
+				builder.add(controlPoints.get(i));
+				builder.add(controlPoints.get(i));
+			}
+		}
+
+		// The arrow head follows the curve's direction at its end, which is
+		// towards the last control point that differs from the end point.
+		final Point2D lastPoint = controlPoints.get(size - 1);
+		int from = size - 2;
+		while (from > 0 && controlPoints.get(from).equals(lastPoint)) {
+			--from;
 		}
+		addArrowHead(builder, controlPoints.get(from), lastPoint);
+		return builder.build();
+	}
+
+	/**
+	 * @return The edge's spline control points in pixels.
+	 */
+	public ImmutableList<Point2D> getControlPoints() {
+		return controlPoints;
 	}
 
 	/**
@@ -121,42 +206,29 @@ public class EdgeDefinition {
 
 	/**
 	 * @return Returns the edge as a list of points (polyline), including the arrow
-	 *         head.
+	 *         head, tessellated with the default tolerances.
 	 */
 	public ImmutableList<Point2D> getPolyLine() {
-		final List<InterpolatedPoint> tempList = new ArrayList<>();
-
-		tempList.add(new InterpolatedPoint(0.0, spline.evaluate(0.0)));
-		tempList.add(new InterpolatedPoint(1.0, spline.evaluate(1.0)));
-
-		evaluateSpline(0.0, 1.0, tempList.get(0).p, tempList.get(1).p, tempList);
+		// Tessellators are not thread safe, so one is not shared between calls.
+		return getPolyLine(
+				new SplineTessellator(SplineTessellator.DEFAULT_FLATNESS, SplineTessellator.DEFAULT_MIN_SEGMENT_LENGTH));
+	}
 
-		tempList.sort((l, r) -> Double.compare(l.n, r.n));
+	/**
+	 * @param tessellator Converts the edge's spline into points.
+	 * @return Returns the edge as a list of points (polyline), including the arrow
+	 *         head.
+	 */
+	public ImmutableList<Point2D> getPolyLine(final SplineTessellator tessellator) {
+		final ImmutableList<Point2D> points = tessellator.tessellate(spline);
 
-		final Point2D secondToLastPoint = tempList.get(tempList.size() - 2).p;
-		final Point2D lastPoint = tempList.get(tempList.size() - 1).p;
+		final Point2D secondToLastPoint = points.get(points.size() - 2);
+		final Point2D lastPoint = points.get(points.size() - 1);
 
-		final ImmutableList.Builder<Point2D> builder = ImmutableList.builder();
-		for (final InterpolatedPoint inter : tempList) {
-			builder.add(inter.p);
-		}
+		final ImmutableList.Builder<Point2D> builder = ImmutableList.builderWithExpectedSize(points.size() + 3);
+		builder.addAll(points);
 		if (secondToLastPoint != null && lastPoint != null) {
-			final double arrowLength = arrowLengthInches * dpi;
-
-			final double deltaX = secondToLastPoint.getX() - lastPoint.getX();
-			final double deltaY = secondToLastPoint.getY() - lastPoint.getY();
-			final double length = Math.sqrt(deltaX * deltaX + deltaY * deltaY);
-			final double normalX = arrowLength * deltaX / length;
-			final double normalY = arrowLength * deltaY / length;
-
-			final Point2D arrow1 = new Point2D.Double(lastPoint.getX() + COSINE * normalX - SINE * normalY,
-					lastPoint.getY() + SINE * normalX + COSINE * normalY);
-			final Point2D arrow2 = new Point2D.Double(lastPoint.getX() + COSINE_NEG * normalX - SINE_NEG * normalY,
-					lastPoint.getY() + SINE_NEG * normalX + COSINE_NEG * normalY);
-
-			builder.add(arrow1);
-			builder.add(lastPoint);
-			builder.add(arrow2);
+			addArrowHead(builder, secondToLastPoint, lastPoint);
 		}
 
 		return builder.build();
@@ -169,4 +241,19 @@ public class EdgeDefinition {
 		return tailUUID;
 	}
 
+	/**
+	 * @param dxInches Distance to move the edge along the x axis in inches.
+	 * @param dyInches Distance to move the edge along the y axis in inches.
+	 * @return A copy of this edge moved by (dxInches, dyInches).
+	 */
+	public EdgeDefinition translate(final double dxInches, final double dyInches) {
+		final double dx = dxInches * dpi;
+		final double dy = dyInches * dpi;
+		final ImmutableList.Builder<Point2D> builder = ImmutableList.builder();
+		for (final Point2D p : controlPoints) {
+			builder.add(new Point2D.Double(p.getX() + dx, p.getY() + dy));
+		}
+		return new EdgeDefinition(this, builder.build());
+	}
+
 }
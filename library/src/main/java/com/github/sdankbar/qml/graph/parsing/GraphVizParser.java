@@ -22,6 +22,9 @@
  */
 package com.github.sdankbar.qml.graph.parsing;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,7 +35,8 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
 
 /**
- * Parser for GraphViz's "plain" output format.
+ * Parser for GraphViz's "plain" output format held in memory. Use
+ * PlainFormatReader to parse the output as it is read from "dot".
  */
 public class GraphVizParser {
 
@@ -47,21 +51,41 @@ public class GraphVizParser {
 	 *                     GraphViz's inches to pixels.
 	 */
 	public GraphVizParser(final String graphViaData, final double dpi) {
-		final String[] lines = graphViaData.split(System.lineSeparator());
+		final PlainFormatReader reader = new PlainFormatReader(
+				new ByteArrayInputStream(graphViaData.getBytes(StandardCharsets.UTF_8)));
+		try {
+			reader.read(new PlainFormatListener() {
+				@Override
+				public void edge(final String tailID, final String headID, final double[] points,
+						final int pointCount) {
+					edges.put(headID, new EdgeDefinition(tailID, headID, points, pointCount, dpi));
+				}
+
+				@Override
+				public void graph(final double widthInches, final double heightInches) {
+					graphWidth = widthInches;
+					graphHeight = heightInches;
+				}
 
-		for (final String l : lines) {
-			if (l.startsWith("graph")) {
-				parseGraphLine(l);
-			} else if (l.startsWith("node")) {
-				final NodeDefinition def = new NodeDefinition(l);
-				nodes.put(def.getNodeID(), def);
-			} else if (l.startsWith("edge")) {
-				final EdgeDefinition def = new EdgeDefinition(l, dpi);
-				edges.put(def.getHeadUUID(), def);
-			}
+				@Override
+				public void node(final String nodeID, final double centerX, final double centerY,
+						final double widthInches, final double heightInches) {
+					nodes.put(nodeID, new NodeDefinition(nodeID, centerX, centerY, widthInches, heightInches));
+				}
+			});
+		} catch (final IOException e) {
+			// Not possible when reading from memory.
+			throw new IllegalStateException("Failed to read graph", e);
 		}
 	}
 
+	/**
+	 * @return All edges in the graph.
+	 */
+	public List<EdgeDefinition> getEdges() {
+		return ImmutableList.copyOf(edges.values());
+	}
+
 	/**
 	 * @param nodeID The node to search for.
 	 * @return The edges that end at the vertex "nodeID".
@@ -94,15 +118,11 @@ public class GraphVizParser {
 		return def;
 	}
 
-	private void parseGraphLine(final String line) {
-		final String[] tokens = line.split(" ");
-		Preconditions.checkArgument(tokens.length == 4, "Unexpected number of tokens on line \"{}\"", line);
-		try {
-			graphWidth = Double.parseDouble(tokens[2]);
-			graphHeight = Double.parseDouble(tokens[3]);
-		} catch (final NumberFormatException e) {
-			throw new IllegalArgumentException("Error parsing number", e);
-		}
+	/**
+	 * @return All nodes in the graph.
+	 */
+	public List<NodeDefinition> getNodes() {
+		return ImmutableList.copyOf(nodes.values());
 	}
 
 }
@@ -22,6 +22,8 @@
  */
 package com.github.sdankbar.qml.graph.parsing;
 
+import java.util.Objects;
+
 import com.google.common.base.Preconditions;
 
 /**
@@ -35,6 +37,22 @@ public class NodeDefinition {
 	private final double width;
 	private final double height;
 
+	/**
+	 * @param nodeID  Identifier of the node.
+	 * @param centerX X coordinate of the node's center in inches.
+	 * @param centerY Y coordinate of the node's center in inches.
+	 * @param width   Width of the node in inches.
+	 * @param height  Height of the node in inches.
+	 */
+	public NodeDefinition(final String nodeID, final double centerX, final double centerY, final double width,
+			final double height) {
+		this.nodeID = Objects.requireNonNull(nodeID, "nodeID is null");
+		this.width = width;
+		this.height = height;
+		x = centerX - width / 2.0;
+		y = centerY - height / 2.0;
+	}
+
 	/**
 	 * @param line Line from a node definition in GraphViz, in the "plain" format.
 	 */
@@ -89,4 +107,13 @@ public class NodeDefinition {
 		return y;
 	}
 
+	/**
+	 * @param dx Distance to move the node along the x axis in inches.
+	 * @param dy Distance to move the node along the y axis in inches.
+	 * @return A copy of this node moved by (dx, dy).
+	 */
+	public NodeDefinition translate(final double dx, final double dy) {
+		return new NodeDefinition(nodeID, x + dx + width / 2.0, y + dy + height / 2.0, width, height);
+	}
+
 }
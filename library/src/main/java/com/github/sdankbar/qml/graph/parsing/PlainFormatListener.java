@@ -0,0 +1,56 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.parsing;
+
+/**
+ * Receives the records of GraphViz's "plain" output format as they are read by
+ * a PlainFormatReader. All dimensions are in inches.
+ */
+public interface PlainFormatListener {
+
+	/**
+	 * @param tailID     Identifier of the node the edge starts at.
+	 * @param headID     Identifier of the node the edge ends at.
+	 * @param points     Interleaved x and y coordinates of the edge's spline
+	 *                   control points. Reused for the next edge, so must be
+	 *                   copied if kept.
+	 * @param pointCount Number of control points in points.
+	 */
+	void edge(String tailID, String headID, double[] points, int pointCount);
+
+	/**
+	 * @param widthInches  Width of the graph.
+	 * @param heightInches Height of the graph.
+	 */
+	void graph(double widthInches, double heightInches);
+
+	/**
+	 * @param nodeID       Identifier of the node.
+	 * @param centerX      X coordinate of the node's center.
+	 * @param centerY      Y coordinate of the node's center.
+	 * @param widthInches  Width of the node.
+	 * @param heightInches Height of the node.
+	 */
+	void node(String nodeID, double centerX, double centerY, double widthInches, double heightInches);
+
+}
@@ -0,0 +1,312 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.parsing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Streaming reader for GraphViz's "plain" output format. Reads straight from an
+ * InputStream into a reusable buffer and reports each record to a
+ * PlainFormatListener as soon as its line is complete, so records are handled
+ * while "dot" is still writing. Numbers are parsed in place without creating
+ * Strings. Only identifiers are turned into Strings.
+ *
+ * Not thread safe.
+ */
+public class PlainFormatReader {
+
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+	// Integers up to 10^15 and these powers of ten are exact doubles, so a single
+	// multiplication or division gives the correctly rounded result.
+	private static final int MAX_FAST_DIGITS = 15;
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private static boolean isSpace(final byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	private final InputStream input;
+	private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+	// Valid data is [0, end). The current line is [lineStart, lineEnd) and pos is
+	// the tokenizer's position within it.
+	private int end = 0;
+	private int lineStart = 0;
+	private int lineEnd = -1;
+	private int pos = 0;
+	private double[] points = new double[64];
+
+	/**
+	 * @param input Stream to read. Is not closed by this reader.
+	 */
+	public PlainFormatReader(final InputStream input) {
+		this.input = Objects.requireNonNull(input, "input is null");
+	}
+
+	private boolean atTokenEnd(final int p) {
+		return p >= lineEnd || isSpace(buffer[p]);
+	}
+
+	private boolean keyword(final String word) {
+		final int length = word.length();
+		if (lineEnd - pos < length || !atTokenEnd(pos + length)) {
+			return false;
+		}
+		for (int i = 0; i < length; ++i) {
+			if (buffer[pos + i] != word.charAt(i)) {
+				return false;
+			}
+		}
+		pos += length;
+		return true;
+	}
+
+	private double nextDouble() {
+		skipSpaces();
+		final int start = pos;
+		int p = pos;
+		boolean negative = false;
+		if (p < lineEnd && (buffer[p] == '-' || buffer[p] == '+')) {
+			negative = buffer[p] == '-';
+			++p;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean anyDigits = false;
+		boolean fraction = false;
+		for (; p < lineEnd; ++p) {
+			final int b = buffer[p];
+			if (b >= '0' && b <= '9') {
+				anyDigits = true;
+				if (mantissa != 0 || b != '0') {
+					++digits;
+				}
+				if (digits <= MAX_FAST_DIGITS) {
+					mantissa = mantissa * 10 + (b - '0');
+					if (fraction) {
+						--exponent;
+					}
+				} else if (!fraction) {
+					++exponent;
+				}
+			} else if (b == '.' && !fraction) {
+				fraction = true;
+			} else {
+				break;
+			}
+		}
+
+		if (anyDigits && p < lineEnd && (buffer[p] == 'e' || buffer[p] == 'E')) {
+			++p;
+			boolean negativeExponent = false;
+			if (p < lineEnd && (buffer[p] == '-' || buffer[p] == '+')) {
+				negativeExponent = buffer[p] == '-';
+				++p;
+			}
+			int e = 0;
+			boolean anyExponentDigits = false;
+			for (; p < lineEnd && buffer[p] >= '0' && buffer[p] <= '9'; ++p) {
+				anyExponentDigits = true;
+				e = Math.min(e * 10 + (buffer[p] - '0'), 10_000);
+			}
+			anyDigits = anyExponentDigits;
+			exponent += negativeExponent ? -e : e;
+		}
+
+		if (anyDigits && atTokenEnd(p) && digits <= MAX_FAST_DIGITS && Math.abs(exponent) < POWERS_OF_TEN.length) {
+			pos = p;
+			final double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent]
+					: mantissa * POWERS_OF_TEN[exponent];
+			return negative ? -value : value;
+		}
+
+		// Too many digits, an exponent out of range or malformed. Rare, so let
+		// the JDK deal with it.
+		while (!atTokenEnd(p)) {
+			++p;
+		}
+		pos = p;
+		final String token = new String(buffer, start, p - start, StandardCharsets.US_ASCII);
+		try {
+			return Double.parseDouble(token);
+		} catch (final NumberFormatException e) {
+			throw new IllegalArgumentException("Error parsing number \"" + token + "\"", e);
+		}
+	}
+
+	private int nextInt() {
+		final double value = nextDouble();
+		final int i = (int) value;
+		if (i != value || i < 0) {
+			throw new IllegalArgumentException("Expected a count, found " + value);
+		}
+		return i;
+	}
+
+	private boolean nextLine() throws IOException {
+		lineStart = Math.min(lineEnd + 1, end);
+		int scan = lineStart;
+		boolean quoted = false;
+		while (true) {
+			while (scan < end) {
+				final byte b = buffer[scan];
+				if (quoted) {
+					if (b == '\\') {
+						// Skip the escaped byte, even if it has not been read yet.
+						++scan;
+					} else if (b == '"') {
+						quoted = false;
+					}
+				} else if (b == '"') {
+					quoted = true;
+				} else if (b == '\n') {
+					lineEnd = scan;
+					pos = lineStart;
+					return true;
+				}
+				++scan;
+			}
+
+			if (end == buffer.length) {
+				if (lineStart > 0) {
+					System.arraycopy(buffer, lineStart, buffer, 0, end - lineStart);
+					scan -= lineStart;
+					end -= lineStart;
+					lineStart = 0;
+				} else {
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+			}
+
+			final int count = input.read(buffer, end, buffer.length - end);
+			if (count < 0) {
+				// A final line without a newline.
+				lineEnd = end;
+				pos = lineStart;
+				return lineStart < end;
+			}
+			end += count;
+		}
+	}
+
+	private String nextString() {
+		skipSpaces();
+		if (pos >= lineEnd) {
+			throw new IllegalArgumentException("Expected an identifier");
+		}
+
+		if (buffer[pos] != '"') {
+			final int start = pos;
+			while (!atTokenEnd(pos)) {
+				++pos;
+			}
+			return new String(buffer, start, pos - start, StandardCharsets.UTF_8);
+		}
+
+		// Quoted. Only copy if there are escapes to remove.
+		final int start = ++pos;
+		boolean escaped = false;
+		while (pos < lineEnd && buffer[pos] != '"') {
+			if (buffer[pos] == '\\' && pos + 1 < lineEnd) {
+				escaped = true;
+				++pos;
+			}
+			++pos;
+		}
+		final int stop = pos;
+		if (pos < lineEnd) {
+			++pos;
+		}
+		if (!escaped) {
+			return new String(buffer, start, stop - start, StandardCharsets.UTF_8);
+		}
+
+		final byte[] unescaped = new byte[stop - start];
+		int length = 0;
+		for (int i = start; i < stop; ++i) {
+			if (buffer[i] == '\\' && i + 1 < stop && (buffer[i + 1] == '"' || buffer[i + 1] == '\\')) {
+				++i;
+			}
+			unescaped[length++] = buffer[i];
+		}
+		return new String(unescaped, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads one graph, up to and including its "stop" line, and reports its
+	 * records to listener. Lines that are not graph, node or edge records are
+	 * ignored.
+	 *
+	 * @param listener Receives the graph's records.
+	 * @return True if the "stop" line was read, false if the stream ended first.
+	 * @throws IOException Thrown if reading from the stream fails.
+	 */
+	public boolean read(final PlainFormatListener listener) throws IOException {
+		Objects.requireNonNull(listener, "listener is null");
+		while (nextLine()) {
+			skipSpaces();
+			if (keyword("node")) {
+				final String id = nextString();
+				final double x = nextDouble();
+				final double y = nextDouble();
+				final double width = nextDouble();
+				final double height = nextDouble();
+				listener.node(id, x, y, width, height);
+			} else if (keyword("edge")) {
+				final String tail = nextString();
+				final String head = nextString();
+				final int n = nextInt();
+				if (points.length < 2 * n) {
+					points = new double[Math.max(2 * n, 2 * points.length)];
+				}
+				for (int i = 0; i < 2 * n; ++i) {
+					points[i] = nextDouble();
+				}
+				listener.edge(tail, head, points, n);
+			} else if (keyword("graph")) {
+				// Scale
+				nextDouble();
+				final double width = nextDouble();
+				final double height = nextDouble();
+				listener.graph(width, height);
+			} else if (keyword("stop")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void skipSpaces() {
+		while (pos < lineEnd && isSpace(buffer[pos])) {
+			++pos;
+		}
+	}
+
+}
@@ -34,6 +34,12 @@ public class BSpline {
 
 	private static final int p = 3;// cubic
 
+	private static void checkParameter(final double t) {
+		if (!(0 <= t && t <= 1)) {
+			throw new IllegalArgumentException("t is not in the range [0, 1] t=" + t);
+		}
+	}
+
 	private final double[] knots;
 	private final double[] controlX;
 	private final double[] controlY;
@@ -74,6 +80,70 @@ public class BSpline {
 		}
 	}
 
+	/**
+	 * @param t Value in [0, 1).
+	 * @param i Index of the control point being blended.
+	 * @param r Level of de Boor's algorithm, in [1, p].
+	 * @return Weight of control point i against control point i - 1.
+	 */
+	private double alpha(final double t, final int i, final int r) {
+		final double left = knots[i];
+		return (t - left) / (knots[i + p + 1 - r] - left);
+	}
+
+	/**
+	 * Evaluates the spline at each value in "ts" and writes the points into
+	 * "outX" and "outY". Sorted values reuse the current knot span, and no
+	 * objects are allocated.
+	 *
+	 * @param ts   Values to evaluate the spline at. Valid range is [0, 1].
+	 * @param outX Receives the x coordinate of each point. Must be at least as
+	 *             long as ts.
+	 * @param outY Receives the y coordinate of each point. Must be at least as
+	 *             long as ts.
+	 */
+	public void evaluate(final double[] ts, final double[] outX, final double[] outY) {
+		Preconditions.checkArgument(outX.length >= ts.length, "outX is shorter than ts");
+		Preconditions.checkArgument(outY.length >= ts.length, "outY is shorter than ts");
+
+		int k = p;
+		for (int i = 0; i < ts.length; ++i) {
+			final double t = ts[i];
+			checkParameter(t);
+
+			if (n >= p && t < 1.0) {
+				if (knots[k] <= t) {
+					// Walk forward from the previous span.
+					while (knots[k + 1] <= t) {
+						++k;
+					}
+				} else {
+					k = findSpan(t);
+				}
+			}
+			outX[i] = evaluate(controlX, t, k);
+			outY[i] = evaluate(controlY, t, k);
+		}
+	}
+
+	/**
+	 * Evaluates the spline at the value "t" and writes the point into
+	 * outX[index] and outY[index], so that callers can keep points in reused
+	 * arrays.
+	 *
+	 * @param t     Value to evaluate the spline at. Valid range is [0, 1].
+	 * @param outX  Receives the x coordinate of the point.
+	 * @param outY  Receives the y coordinate of the point.
+	 * @param index Index in outX and outY to write the point to.
+	 */
+	void evaluate(final double t, final double[] outX, final double[] outY, final int index) {
+		checkParameter(t);
+
+		final int k = n >= p && t < 1.0 ? findSpan(t) : p;
+		outX[index] = evaluate(controlX, t, k);
+		outY[index] = evaluate(controlY, t, k);
+	}
+
 	/**
 	 * Evaluates the spline at the value "t".
 	 *
@@ -81,21 +151,78 @@ public class BSpline {
 	 * @return The point on the spline.
 	 */
 	public Point2D evaluate(final double t) {
-		Preconditions.checkArgument(0 <= t && t <= 1, "t is not in the range [0, 1] t=" + t);
+		checkParameter(t);
+
+		final int k = n >= p && t < 1.0 ? findSpan(t) : p;
+		return new Point2D.Double(evaluate(controlX, t, k), evaluate(controlY, t, k));
+	}
 
+	/**
+	 * Evaluates one coordinate of the spline at "t". The coordinates are
+	 * evaluated separately so that no scratch space is needed.
+	 *
+	 * @param control The control points' x or y coordinates.
+	 * @param t       Value in [0, 1].
+	 * @param k       Knot span containing t. Ignored when t == 1 or n &lt; p.
+	 * @return The coordinate of the point on the spline.
+	 */
+	private double evaluate(final double[] control, final double t, final int k) {
 		if (t == 1.0) {
 			// Basis function is not defined at t == 1.0, so handle as a special case
-			return new Point2D.Double(controlX[controlX.length - 1], controlY[controlY.length - 1]);
-		} else {
-			double x = 0;
-			double y = 0;
+			return control[control.length - 1];
+		} else if (n < p) {
+			// Too few control points for a full knot span, so sum the basis functions
+			// directly.
+			double c = 0;
 			for (int i = 0; i <= n; ++i) {
-				final double basisFunction = nFunction(i, p, t);
-				x += controlX[i] * basisFunction;
-				y += controlY[i] * basisFunction;
+				c += control[i] * nFunction(i, p, t);
+			}
+			return c;
+		} else {
+			// de Boor's algorithm over the p + 1 control points whose basis
+			// functions are non-zero at t, unrolled for p == 3 so that the
+			// points are kept in locals.
+			final int s = k - p;
+			final double c0 = control[s];
+			double c1 = control[s + 1];
+			double c2 = control[s + 2];
+			double c3 = control[s + 3];
+
+			double a = alpha(t, s + 3, 1);
+			c3 = (1 - a) * c2 + a * c3;
+			a = alpha(t, s + 2, 1);
+			c2 = (1 - a) * c1 + a * c2;
+			a = alpha(t, s + 1, 1);
+			c1 = (1 - a) * c0 + a * c1;
+
+			a = alpha(t, s + 3, 2);
+			c3 = (1 - a) * c2 + a * c3;
+			a = alpha(t, s + 2, 2);
+			c2 = (1 - a) * c1 + a * c2;
+
+			a = alpha(t, s + 3, 3);
+			return (1 - a) * c2 + a * c3;
+		}
+	}
+
+	/**
+	 * @param t Value in [0, 1).
+	 * @return Index k of the knot span containing t, so that knots[k] &lt;= t &lt;
+	 *         knots[k + 1] and p &lt;= k &lt;= n.
+	 */
+	private int findSpan(final double t) {
+		int low = p;
+		int high = n + 1;
+		// Binary search for the last knot that is <= t.
+		while (high - low > 1) {
+			final int mid = (low + high) >>> 1;
+			if (knots[mid] <= t) {
+				low = mid;
+			} else {
+				high = mid;
 			}
-			return new Point2D.Double(x, y);
 		}
+		return low;
 	}
 
 	private double nFunction(final int i, final int j, final double t) {
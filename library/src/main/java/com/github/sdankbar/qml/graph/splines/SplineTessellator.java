@@ -0,0 +1,154 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.splines;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Converts a BSpline into a polyline by adaptive subdivision. A piece of the
+ * spline is split in half while its midpoint is at least the flatness
+ * tolerance away from the piece's chord and one of its halves is longer than
+ * the minimum segment length.
+ *
+ * Not thread safe, the scratch space for the subdivision is reused between
+ * calls.
+ */
+public class SplineTessellator {
+
+	/**
+	 * Default flatness tolerance in pixels.
+	 */
+	public static final double DEFAULT_FLATNESS = 0.5;
+	/**
+	 * Default minimum segment length in pixels.
+	 */
+	public static final double DEFAULT_MIN_SEGMENT_LENGTH = 10;
+
+	// Limits the number of segments to 2^MAX_DEPTH.
+	private static final int MAX_DEPTH = 16;
+
+	private final double flatness;
+	private final double minSegmentLengthSq;
+
+	// Pieces still to be visited. The left half of a split piece is pushed last
+	// so the pieces are visited, and their points emitted, in order.
+	private final double[] startTs = new double[MAX_DEPTH + 1];
+	private final double[] endTs = new double[MAX_DEPTH + 1];
+	private final double[] startXs = new double[MAX_DEPTH + 1];
+	private final double[] startYs = new double[MAX_DEPTH + 1];
+	private final double[] endXs = new double[MAX_DEPTH + 1];
+	private final double[] endYs = new double[MAX_DEPTH + 1];
+	private final int[] depths = new int[MAX_DEPTH + 1];
+
+	/**
+	 * @param flatness         Pieces of the spline whose midpoint is less than
+	 *                         this distance from their chord are not split, in
+	 *                         pixels.
+	 * @param minSegmentLength Pieces of the spline whose halves are both shorter
+	 *                         than this are not split, in pixels.
+	 */
+	public SplineTessellator(final double flatness, final double minSegmentLength) {
+		Preconditions.checkArgument(flatness > 0, "flatness <= 0");
+		Preconditions.checkArgument(minSegmentLength >= 0, "minSegmentLength < 0");
+		this.flatness = flatness;
+		minSegmentLengthSq = minSegmentLength * minSegmentLength;
+	}
+
+	/**
+	 * @return The flatness tolerance in pixels.
+	 */
+	public double getFlatness() {
+		return flatness;
+	}
+
+	/**
+	 * @return The minimum segment length in pixels.
+	 */
+	public double getMinSegmentLength() {
+		return Math.sqrt(minSegmentLengthSq);
+	}
+
+	private boolean needsSplit(final double sx, final double sy, final double mx, final double my, final double ex,
+			final double ey) {
+		if (Line2D.ptLineDist(sx, sy, ex, ey, mx, my) < flatness) {
+			return false;
+		} else {
+			return Point2D.distanceSq(sx, sy, mx, my) > minSegmentLengthSq
+					|| Point2D.distanceSq(mx, my, ex, ey) > minSegmentLengthSq;
+		}
+	}
+
+	/**
+	 * @param spline The spline to tessellate.
+	 * @return Points along the spline, from t = 0 to t = 1.
+	 */
+	public ImmutableList<Point2D> tessellate(final BSpline spline) {
+		final ImmutableList.Builder<Point2D> builder = ImmutableList.builder();
+		spline.evaluate(0.0, startXs, startYs, 0);
+		spline.evaluate(1.0, endXs, endYs, 0);
+		builder.add(new Point2D.Double(startXs[0], startYs[0]));
+
+		int size = 1;
+		startTs[0] = 0.0;
+		endTs[0] = 1.0;
+		depths[0] = 0;
+		while (size > 0) {
+			--size;
+			final double s = startTs[size];
+			final double e = endTs[size];
+			final double sx = startXs[size];
+			final double sy = startYs[size];
+			final double ex = endXs[size];
+			final double ey = endYs[size];
+			final int d = depths[size];
+
+			// The middle point is the start of the right half if the piece is split.
+			final double middle = (s + e) / 2;
+			spline.evaluate(middle, startXs, startYs, size);
+			final double mx = startXs[size];
+			final double my = startYs[size];
+			if (d < MAX_DEPTH && needsSplit(sx, sy, mx, my, ex, ey)) {
+				startTs[size] = middle;
+				depths[size] = d + 1;
+				++size;
+				startTs[size] = s;
+				endTs[size] = middle;
+				startXs[size] = sx;
+				startYs[size] = sy;
+				endXs[size] = mx;
+				endYs[size] = my;
+				depths[size] = d + 1;
+				++size;
+			} else {
+				builder.add(new Point2D.Double(mx, my));
+				builder.add(new Point2D.Double(ex, ey));
+			}
+		}
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,175 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.github.sdankbar.qml.JVariant;
+import com.github.sdankbar.qml.graph.layout.LayeredLayoutEngine;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests GraphModel.Batch against in-memory models.
+ */
+public class BatchTest {
+
+	private final FakeModelFactory models = new FakeModelFactory();
+	private final GraphModel<String> graph = new GraphModel<>("test", models, ImmutableSet.of("label", "color", "n"),
+			96, new LayeredLayoutEngine());
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_arrays() {
+		final int[] handles = graph.batch().addVertices(new double[] { 1, 2, 3 }, new double[] { 4, 5, 6 })
+				.addEdges(new int[] { 0, 1 }, new int[] { 1, 2 }).commit();
+
+		assertEquals(3, handles.length);
+		assertEquals(3, graph.getVertexCount());
+		assertEquals(3, models.vertices.rows.size());
+		assertEquals(ImmutableMap.of("id", new JVariant(graph.getVertex(handles[0]).getUUID()), "x", new JVariant(0),
+				"y", new JVariant(0), "width", new JVariant(1), "height", new JVariant(1)),
+				models.vertices.rows.get(0));
+
+		graph.layoutGraph();
+		assertEquals(192, graph.getVertex(handles[1]).getWidth());
+		assertEquals(576, graph.getVertex(handles[2]).getHeight());
+		assertEquals(2, models.edges.rows.size());
+		assertEquals(1, graph.getChildCount(handles[1]));
+		assertEquals(handles[2], graph.getChild(handles[1], 0));
+		assertEquals(0, graph.getChildCount(handles[2]));
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void test_arrays_differ_in_length() {
+		graph.batch().addVertices(new double[] { 1, 2 }, new double[] { 1 });
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_column() {
+		final GraphModel.Batch<String> b = graph.batch();
+		b.addVertex(1, 1, ImmutableMap.of("label", new JVariant("a"), "color", new JVariant("red")));
+		b.addVertex(1, 1, ImmutableMap.of("label", new JVariant("b")));
+		b.putAll("label", new JVariant[] { new JVariant("A"), null });
+		// Added after the column was set.
+		b.addVertex(1, 1, ImmutableMap.of("label", new JVariant("c")));
+		final int[] handles = b.commit();
+
+		assertEquals(new JVariant("A"), graph.getVertex(handles[0]).get("label").get());
+		assertEquals(new JVariant("red"), graph.getVertex(handles[0]).get("color").get());
+		assertEquals(new JVariant("b"), graph.getVertex(handles[1]).get("label").get());
+		assertEquals(new JVariant("c"), graph.getVertex(handles[2]).get("label").get());
+		assertEquals(new JVariant("c"), models.vertices.rows.get(2).get("label"));
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void test_column_wrong_length() {
+		final GraphModel.Batch<String> b = graph.batch();
+		b.addVertex(1, 1);
+		b.putAll("label", new JVariant[2]);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_commit_after_existing_vertices() {
+		final int existing = graph.createVertexHandle(1, 1);
+		final int[] handles = graph.batch().addVertices(new double[] { 1, 1 }, new double[] { 1, 1 }).addEdge(0, 1)
+				.commit();
+
+		assertEquals(3, graph.getVertexCount());
+		assertEquals(3, models.vertices.rows.size());
+		assertEquals(3, ImmutableSet.of(graph.getVertex(existing).getUUID(), graph.getVertex(handles[0]).getUUID(),
+				graph.getVertex(handles[1]).getUUID()).size());
+		assertEquals(handles[1], graph.getChild(handles[0], 0));
+		assertEquals(0, graph.getChildCount(existing));
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void test_commit_twice() {
+		final GraphModel.Batch<String> b = graph.batch();
+		b.addVertex(1, 1);
+		b.commit();
+		b.commit();
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void test_edge_to_missing_vertex() {
+		final GraphModel.Batch<String> b = graph.batch();
+		b.addVertex(1, 1);
+		b.addEdge(0, 1);
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void test_negative_size() {
+		graph.batch().addVertex(-1, 1);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_streams() {
+		final int[] handles = graph.batch()
+				.addVertices(IntStream.range(0, 10).boxed(), i -> i + 1, i -> 2,
+						i -> ImmutableMap.of("n", new JVariant(i)))
+				.addEdges(IntStream.range(1, 10).boxed(), i -> (i - 1) / 2, i -> i).commit();
+
+		assertEquals(10, graph.getVertexCount());
+		graph.layoutGraph();
+		assertEquals(960, graph.getVertex(handles[9]).getWidth());
+		assertEquals(9, models.edges.rows.size());
+		assertEquals(new JVariant(4), graph.getVertex(handles[4]).get("n").get());
+		assertEquals(2, graph.getChildCount(handles[3]));
+		assertEquals(handles[7], graph.getChild(handles[3], 0));
+		assertEquals(handles[8], graph.getChild(handles[3], 1));
+		assertEquals(1, graph.getParentCount(handles[8]));
+		assertEquals(handles[3], graph.getParent(handles[8], 0));
+	}
+
+}
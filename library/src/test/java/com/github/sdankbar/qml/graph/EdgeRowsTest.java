@@ -0,0 +1,130 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.geom.Point2D;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.github.sdankbar.qml.JVariant;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the EdgeRows class against an in-memory edge model.
+ */
+public class EdgeRowsTest {
+
+	private static ImmutableList<Point2D> line(final double y) {
+		return ImmutableList.of(new Point2D.Double(0, y), new Point2D.Double(10, y));
+	}
+
+	private final FakeModelFactory.FakeListModel<EdgeKey> model = new FakeModelFactory.FakeListModel<>();
+	private final EdgeRows rows = new EdgeRows(model);
+
+	private void assertRow(final int row, final String tailID, final String headID) {
+		final Map<EdgeKey, JVariant> values = model.rows.get(row);
+		assertEquals(new JVariant(tailID), values.get(EdgeKey.tail_id));
+		assertEquals(new JVariant(headID), values.get(EdgeKey.head_id));
+	}
+
+	/**
+	 * Lays out edges from vertex 0 to each of heads, named "V" followed by the
+	 * handle.
+	 */
+	private void update(final int... heads) {
+		rows.beginUpdate();
+		for (final int head : heads) {
+			rows.put(0, head, "V0", "V" + head, line(head));
+		}
+		rows.finishUpdate();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_readded_edge_keeps_stable_rows() {
+		update(1, 2, 3);
+		update(2, 3);
+		update(1, 2, 3);
+		assertEquals(3, model.rows.size());
+		assertRow(0, "V0", "V3");
+		assertRow(1, "V0", "V2");
+		assertRow(2, "V0", "V1");
+
+		// Once re-added, the edge stays in its new row.
+		final int writes = model.writes;
+		update(1, 2, 3);
+		update(3, 2, 1);
+		assertEquals(writes, model.writes);
+		assertEquals(4, model.adds);
+		assertRow(2, "V0", "V1");
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_removed_edges_leave_rows_dense() {
+		update(1, 2, 3, 4);
+		update(2, 4);
+		assertEquals(2, rows.getRowCount());
+		assertEquals(2, model.rows.size());
+		assertEquals(2, model.removes);
+		// The last row moves into the row of the removed edge.
+		assertRow(0, "V0", "V4");
+		assertRow(1, "V0", "V2");
+
+		update();
+		assertEquals(0, rows.getRowCount());
+		assertEquals(0, model.rows.size());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_unchanged_edges_not_rewritten() {
+		update(1, 2, 3);
+		assertEquals(3, model.adds);
+		assertEquals(0, model.writes);
+
+		update(1, 2, 3);
+		assertEquals(3, model.adds);
+		assertEquals(0, model.removes);
+		assertEquals(0, model.writes);
+
+		// Only the value that changed is written.
+		rows.beginUpdate();
+		rows.put(0, 1, "V0", "V1", line(1));
+		rows.put(0, 2, "V0", "V2", line(20));
+		rows.put(0, 3, "V0", "V3", line(3));
+		rows.finishUpdate();
+		assertEquals(1, model.writes);
+		assertEquals(new JVariant(line(20)), model.rows.get(1).get(EdgeKey.polyline));
+	}
+
+}
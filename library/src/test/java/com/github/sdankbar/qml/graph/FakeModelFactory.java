@@ -0,0 +1,109 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.sdankbar.qml.JVariant;
+import com.google.common.collect.ForwardingMap;
+
+/**
+ * ModelFactory whose models are plain collections, for testing GraphModel
+ * without a QML application.
+ */
+class FakeModelFactory implements ModelFactory {
+
+	/**
+	 * List model that stores its rows in a List.
+	 *
+	 * @param <K> Key/role type.
+	 */
+	static class FakeListModel<K> implements ListModel<K> {
+		final List<Map<K, JVariant>> rows = new ArrayList<>();
+		// Number of rows added and removed, and of values written to added rows.
+		int adds = 0;
+		int removes = 0;
+		int writes = 0;
+
+		@Override
+		public Map<K, JVariant> add(final Map<K, JVariant> row) {
+			++adds;
+			final Map<K, JVariant> values = new HashMap<>(row);
+			rows.add(values);
+			return new ForwardingMap<K, JVariant>() {
+				@Override
+				protected Map<K, JVariant> delegate() {
+					return values;
+				}
+
+				@Override
+				public JVariant put(final K key, final JVariant value) {
+					++writes;
+					return super.put(key, value);
+				}
+
+				@Override
+				public void putAll(final Map<? extends K, ? extends JVariant> map) {
+					writes += map.size();
+					super.putAll(map);
+				}
+			};
+		}
+
+		@Override
+		public void clear() {
+			rows.clear();
+		}
+
+		@Override
+		public void remove(final int index) {
+			++removes;
+			rows.remove(index);
+		}
+	}
+
+	final Map<GraphKey, JVariant> graph = new EnumMap<>(GraphKey.class);
+	final FakeListModel<String> vertices = new FakeListModel<>();
+	final FakeListModel<EdgeKey> edges = new FakeListModel<>();
+
+	@Override
+	public ListModel<EdgeKey> createEdgeModel(final String name) {
+		return edges;
+	}
+
+	@Override
+	public SingletonModel<GraphKey> createGraphModel(final String name) {
+		return graph::put;
+	}
+
+	@Override
+	public ListModel<String> createVertexModel(final String name, final Set<String> keys) {
+		return vertices;
+	}
+
+}
@@ -0,0 +1,291 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.github.sdankbar.qml.JVariant;
+import com.github.sdankbar.qml.graph.graphviz.DOTWriter;
+import com.github.sdankbar.qml.graph.parsing.NodeDefinition;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests the GraphCore and EdgeSet classes.
+ */
+public class GraphCoreTest {
+
+	private static String children(final GraphCore core, final int handle) {
+		final StringBuilder b = new StringBuilder();
+		for (int i = 0; i < core.getChildCount(handle); ++i) {
+			b.append(core.getID(core.getChild(handle, i)));
+		}
+		return b.toString();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_apply_skips_vertices_not_in_layout() {
+		final GraphCore core = new GraphCore();
+		final int a = core.add("A", 1, 1, new HashMap<>());
+		final int b = core.add("B", 1, 1, new HashMap<>());
+		final LayoutResult layout = LayoutResult.builder().addNode(new NodeDefinition("A", 2, 3, 1, 1))
+				.addNode(new NodeDefinition("B", 4, 5, 1, 1)).build();
+
+		// Created after the layout was requested.
+		final int c = core.add("C", 1, 1, new HashMap<>());
+		// B's handle is reused by a vertex that is not in the layout.
+		core.remove(b);
+		final int d = core.add("D", 1, 1, new HashMap<>());
+		assertEquals(b, d);
+
+		final double x = core.getX(c);
+		assertTrue(core.apply(a, layout, 100));
+		assertFalse(core.apply(c, layout, 100));
+		assertFalse(core.apply(d, layout, 100));
+		assertEquals(x, core.getX(c), 0);
+		assertEquals(x, core.getX(d), 0);
+		assertTrue(core.getX(a) != x);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_dot_fragment() {
+		final GraphCore core = new GraphCore();
+		final DOTWriter writer = new DOTWriter();
+		final int a = core.add("A", 1, 1, new HashMap<>());
+		final int b = core.add("B", 1, 1, new HashMap<>());
+		final byte[] first = core.getDOTFragment(a, writer);
+		assertSame(first, core.getDOTFragment(a, writer));
+
+		core.addEdge(a, b);
+		final byte[] second = core.getDOTFragment(a, writer);
+		assertEquals("A [width=1 height=1 shape=box]\nA -> {B} [arrowhead=none]\n", new String(second, StandardCharsets.UTF_8));
+
+		core.setSizeInches(a, 1, 1);
+		assertSame(second, core.getDOTFragment(a, writer));
+		core.setSizeInches(a, 2, 1);
+		assertEquals("A [width=2 height=1 shape=box]\nA -> {B} [arrowhead=none]\n",
+				new String(core.getDOTFragment(a, writer), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_edge_set() {
+		final EdgeSet edges = new EdgeSet();
+		final Set<Long> expected = new HashSet<>();
+		final Random random = new Random(3);
+		for (int i = 0; i < 200_000; ++i) {
+			final int tail = random.nextInt(300);
+			final int head = random.nextInt(300);
+			final Long key = Long.valueOf(((long) tail << 32) | head);
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), edges.remove(tail, head));
+			} else {
+				assertEquals(expected.add(key), edges.add(tail, head));
+			}
+			assertEquals(expected.size(), edges.size());
+		}
+		for (int tail = 0; tail < 300; ++tail) {
+			for (int head = 0; head < 300; ++head) {
+				assertEquals(expected.contains(Long.valueOf(((long) tail << 32) | head)), edges.contains(tail, head));
+			}
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_edge_set_values() {
+		final EdgeSet edges = new EdgeSet();
+		final Map<Long, Integer> expected = new HashMap<>();
+		final Random random = new Random(5);
+		for (int i = 0; i < 200_000; ++i) {
+			final int tail = random.nextInt(300);
+			final int head = random.nextInt(300);
+			final Long key = Long.valueOf(((long) tail << 32) | head);
+			final Integer previous = expected.get(key);
+			final int value = random.nextInt(1000);
+			switch (random.nextInt(3)) {
+			case 0:
+				expected.remove(key);
+				edges.remove(tail, head);
+				break;
+			case 1:
+				// Adding an existing edge keeps its value.
+				expected.putIfAbsent(key, Integer.valueOf(0));
+				edges.add(tail, head);
+				break;
+			default:
+				expected.put(key, Integer.valueOf(value));
+				assertEquals(previous == null ? -1 : previous.intValue(), edges.put(tail, head, value));
+				break;
+			}
+			final Integer current = expected.get(key);
+			assertEquals(current == null ? -1 : current.intValue(), edges.get(tail, head));
+		}
+		for (final Map.Entry<Long, Integer> entry : expected.entrySet()) {
+			final long key = entry.getKey().longValue();
+			assertEquals(entry.getValue().intValue(), edges.get((int) (key >>> 32), (int) key));
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_edges_keep_insertion_order() {
+		final GraphCore core = new GraphCore();
+		final int a = core.add("A", 1, 1, new HashMap<>());
+		for (final String id : new String[] { "E", "B", "D", "C" }) {
+			assertTrue(core.addEdge(a, core.add(id, 1, 1, new HashMap<>())));
+		}
+		assertFalse(core.addEdge(a, 2));
+		assertEquals("EBDC", children(core, a));
+
+		assertTrue(core.removeEdge(a, 2));
+		assertFalse(core.removeEdge(a, 2));
+		assertEquals("EDC", children(core, a));
+		assertTrue(core.addEdge(a, 2));
+		assertEquals("EDCB", children(core, a));
+		assertEquals(1, core.getParentCount(2));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_remove() {
+		final GraphCore core = new GraphCore();
+		final int a = core.add("A", 1, 1, new HashMap<>());
+		final int b = core.add("B", 1, 1, new HashMap<>());
+		final int c = core.add("C", 1, 1, new HashMap<>());
+		core.addEdge(a, b);
+		core.addEdge(b, c);
+		core.addEdge(b, b);
+		core.addEdge(c, a);
+
+		final long versionA = core.getVersion(a);
+		final long versionC = core.getVersion(c);
+		final int generation = core.getGeneration(b);
+		assertTrue(core.remove(b));
+		assertFalse(core.remove(b));
+		assertFalse(core.isAlive(b));
+		assertFalse(core.isCurrent(b, generation));
+		assertEquals(2, core.getCount());
+
+		// Neighbours lost their edges and changed version.
+		assertEquals(0, core.getChildCount(a));
+		assertEquals(0, core.getParentCount(c));
+		assertEquals("A", children(core, c));
+		assertNotEquals(versionA, core.getVersion(a));
+		assertNotEquals(versionC, core.getVersion(c));
+
+		// The handle is reused with a new generation and no edges.
+		final int d = core.add("D", 1, 1, new HashMap<>());
+		assertEquals(b, d);
+		assertTrue(core.isCurrent(d, core.getGeneration(d)));
+		assertFalse(core.isCurrent(d, generation));
+		assertEquals(0, core.getChildCount(d));
+		assertTrue(core.addEdge(a, d));
+
+		final int generationA = core.getGeneration(a);
+		core.clear();
+		assertEquals(0, core.getCount());
+		assertFalse(core.isAlive(a));
+		final int e = core.add("E", 1, 1, new HashMap<>());
+		assertEquals(a, e);
+		assertFalse(core.isCurrent(e, generationA));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_unpublish_moves_last_row() {
+		final GraphCore core = new GraphCore();
+		final Map<String, JVariant> rowA = new HashMap<>();
+		final Map<String, JVariant> rowB = new HashMap<>();
+		final Map<String, JVariant> rowC = new HashMap<>();
+		final int a = core.add("A", 1, 1, ImmutableMap.of("id", new JVariant("A"), "user", new JVariant(1)));
+		final int b = core.add("B", 1, 1, ImmutableMap.of("id", new JVariant("B")));
+		final int c = core.add("C", 1, 1, ImmutableMap.of("id", new JVariant("C")));
+		assertEquals(b, core.getHandle("B"));
+		assertEquals(-1, core.getRowIndex(a));
+		rowA.putAll(core.getValues(a));
+		core.publish(a, rowA);
+		rowB.putAll(core.getValues(b));
+		core.publish(b, rowB);
+		rowC.putAll(core.getValues(c));
+		core.publish(c, rowC);
+
+		// Values are written to published rows.
+		core.put(c, "user", new JVariant(3));
+		assertEquals(new JVariant(3), rowC.get("user"));
+
+		// C's contents move into A's row, which C then owns.
+		assertTrue(core.remove(a));
+		assertEquals(-1, core.getHandle("A"));
+		assertEquals(c, core.getHandle("C"));
+		assertEquals(2, core.getRowCount());
+		assertEquals(0, core.getRowIndex(c));
+		assertEquals(c, core.getHandleAtRow(0));
+		assertEquals(b, core.getHandleAtRow(1));
+		assertEquals(core.getValues(c), rowA);
+
+		// Unpublished vertices keep their values.
+		core.unpublish(b);
+		assertFalse(core.isPublished(b));
+		assertEquals(1, core.getRowCount());
+		core.put(b, "user", new JVariant(2));
+		assertEquals(new JVariant(2), core.getValue(b, "user"));
+		assertFalse(rowB.containsKey("user"));
+
+		// Once published again, the row is the only copy of the values.
+		final Map<String, JVariant> newRowB = new HashMap<>(core.getValues(b));
+		core.publish(b, newRowB);
+		newRowB.put("user", new JVariant(4));
+		assertEquals(new JVariant(4), core.getValue(b, "user"));
+		assertEquals(new JVariant("B"), core.getValue(b, "id"));
+	}
+
+}
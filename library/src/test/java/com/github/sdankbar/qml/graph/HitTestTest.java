@@ -0,0 +1,169 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.github.sdankbar.qml.graph.parsing.EdgeDefinition;
+import com.github.sdankbar.qml.graph.parsing.NodeDefinition;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests GraphModel's hit testing against a fixed layout, at 1 dpi so that
+ * inches and pixels are the same.
+ */
+public class HitTestTest {
+
+	private static final double[] CENTER_XS = { 10, 50, 14 };
+	private static final double[] CENTER_YS = { 8, 8, 12 };
+	private static final double SIZE = 10;
+
+	private final GraphModel<String> graph = new GraphModel<>("test", new FakeModelFactory(), ImmutableSet.of(), 1,
+			this::layout);
+	private final Vertex<String> a = graph.createVertex(SIZE, SIZE);
+	private final Vertex<String> b = graph.createVertex(SIZE, SIZE);
+	private final Vertex<String> c = graph.createVertex(SIZE, SIZE);
+	// Offset of the inner control points of each edge from y = 8.
+	private double bulge = 0;
+
+	/**
+	 * Places the vertices at CENTER_XS and CENTER_YS, in the order they were
+	 * created, and draws each edge as a single cubic from (x0, 8) at the right
+	 * side of its tail to (x1, 8) at the left side of its head, which is a
+	 * straight line unless bulge is set.
+	 */
+	private LayoutResult layout(final GraphSnapshot graph) {
+		final LayoutResult.Builder builder = LayoutResult.builder();
+		for (int v = 0; v < graph.getVertexCount(); ++v) {
+			builder.addNode(new NodeDefinition(graph.getID(v), CENTER_XS[v], CENTER_YS[v], SIZE, SIZE));
+			for (final int head : graph.getChildren(v).toArray()) {
+				final double x0 = CENTER_XS[v] + SIZE / 2;
+				final double x1 = CENTER_XS[head] - SIZE / 2;
+				final double step = (x1 - x0) / 3;
+				builder.addEdge(new EdgeDefinition(graph.getID(v), graph.getID(head),
+						ImmutableList.of(new Point2D.Double(x0, 8), new Point2D.Double(x0 + step, 8 + bulge),
+								new Point2D.Double(x1 - step, 8 + bulge), new Point2D.Double(x1, 8)),
+						graph.getDPI()));
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_edges_near() {
+		graph.addEdge(a.getHandle(), b.getHandle());
+		graph.layoutGraph();
+
+		final ImmutableList<EdgeHit<String>> hits = graph.edgesNear(30, 10, 5);
+		assertEquals(1, hits.size());
+		assertEquals(a, hits.get(0).getTail());
+		assertEquals(b, hits.get(0).getHead());
+		assertEquals(2, hits.get(0).getDistance(), 1e-9);
+		assertTrue(graph.edgesNear(30, 14, 5).isEmpty());
+
+		// Edges of removed vertices are skipped until the next layout.
+		graph.removeVertex(b);
+		assertTrue(graph.edgesNear(30, 10, 5).isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_edges_near_bezier() {
+		// Control points (15, 8), (25, 40), (35, 40), (45, 8), so the curve's
+		// apex is at (30, 32) while its control polygon is at y = 40.
+		bulge = 32;
+		graph.setEdgeGeometry(EdgeGeometry.BEZIER);
+		graph.addEdge(a.getHandle(), b.getHandle());
+		graph.layoutGraph();
+
+		final ImmutableList<EdgeHit<String>> hits = graph.edgesNear(30, 32, 0.5);
+		assertEquals(1, hits.size());
+		assertTrue(hits.get(0).getDistance() < 0.5);
+		assertEquals(2, graph.edgesNear(30, 34, 3).get(0).getDistance(), 0.5);
+		assertTrue(graph.edgesNear(30, 40, 1).isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_edges_near_tolerance_boundary() {
+		graph.addEdge(a.getHandle(), b.getHandle());
+		graph.layoutGraph();
+
+		// The edge starts at (15, 8), so this point is exactly 3 pixels away.
+		assertEquals(1, graph.edgesNear(12, 8, 3).size());
+		assertEquals(3, graph.edgesNear(12, 8, 3).get(0).getDistance(), 0);
+		assertTrue(graph.edgesNear(12, 8, Math.nextDown(3.0)).isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void test_edges_near_negative_tolerance() {
+		graph.edgesNear(0, 0, -1);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_vertex_at() {
+		graph.layoutGraph();
+
+		assertEquals(Optional.of(a), graph.vertexAt(6, 4));
+		assertEquals(Optional.of(b), graph.vertexAt(50, 8));
+		// A and C overlap, the vertex whose center is nearest wins.
+		assertEquals(Optional.of(a), graph.vertexAt(11, 9));
+		assertEquals(Optional.of(c), graph.vertexAt(13, 11));
+		assertFalse(graph.vertexAt(30, 8).isPresent());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_vertices_in() {
+		graph.layoutGraph();
+
+		assertEquals(ImmutableSet.of(a, c), ImmutableSet.copyOf(graph.verticesIn(0, 0, 20, 20)));
+		assertEquals(ImmutableSet.of(c), ImmutableSet.copyOf(graph.verticesIn(16, 14, 10, 10)));
+		assertEquals(ImmutableList.of(b), graph.verticesIn(40, 0, 20, 20));
+		assertTrue(graph.verticesIn(25, 0, 10, 20).isEmpty());
+	}
+
+}
@@ -0,0 +1,139 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the SpatialGrid class.
+ */
+public class SpatialGridTest {
+
+	private static final int ITEMS = 2000;
+	private static final double SIZE = 20_000;
+
+	private static double[] randomBoxes(final Random random) {
+		final double[] boxes = new double[ITEMS * 4];
+		for (int i = 0; i < ITEMS; ++i) {
+			boxes[i * 4] = random.nextDouble() * SIZE;
+			boxes[i * 4 + 1] = random.nextDouble() * SIZE;
+			boxes[i * 4 + 2] = boxes[i * 4] + random.nextDouble() * (i % 10 == 0 ? 2000 : 100);
+			boxes[i * 4 + 3] = boxes[i * 4 + 1] + random.nextDouble() * 100;
+		}
+		return boxes;
+	}
+
+	private static SpatialGrid grid(final BitSet shown) {
+		return new SpatialGrid(shown::set, shown::clear, shown::get);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_query() {
+		final Random random = new Random(11);
+		final double[] boxes = randomBoxes(random);
+		final SpatialGrid grid = grid(new BitSet());
+		grid.build(ITEMS, (item, box) -> {
+			System.arraycopy(boxes, item * 4, box, 0, 4);
+			return true;
+		});
+
+		for (int step = 0; step < 500; ++step) {
+			final double x = random.nextDouble() * SIZE * 1.2 - 1000;
+			final double y = random.nextDouble() * SIZE * 1.2 - 1000;
+			final double w = step % 2 == 0 ? 0 : random.nextDouble() * 3000;
+			final double h = step % 2 == 0 ? 0 : random.nextDouble() * 3000;
+
+			final BitSet expected = new BitSet();
+			for (int i = 0; i < ITEMS; ++i) {
+				if (boxes[i * 4] <= x + w && boxes[i * 4 + 2] >= x && boxes[i * 4 + 1] <= y + h
+						&& boxes[i * 4 + 3] >= y) {
+					expected.set(i);
+				}
+			}
+			final BitSet found = new BitSet();
+			grid.query(x, y, x + w, y + h, i -> {
+				assertFalse(found.get(i));
+				found.set(i);
+			});
+			assertEquals(expected, found);
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_viewport() {
+		final Random random = new Random(7);
+		final double[] boxes = randomBoxes(random);
+		// Every third item does not exist.
+		final SpatialGrid.Bounds bounds = (item, box) -> {
+			if (item % 3 == 0) {
+				return false;
+			}
+			System.arraycopy(boxes, item * 4, box, 0, 4);
+			return true;
+		};
+
+		final BitSet shown = new BitSet();
+		final SpatialGrid grid = grid(shown);
+		grid.build(ITEMS, bounds);
+		grid.showViewport(0, 0, 1000, 1000);
+		for (int step = 0; step < 200; ++step) {
+			final double x = random.nextDouble() * SIZE - 500;
+			final double y = random.nextDouble() * SIZE - 500;
+			final double w = random.nextInt(4) == 0 ? SIZE : random.nextDouble() * 2000;
+			final double h = random.nextDouble() * 2000;
+			grid.setViewport(x, y, x + w, y + h);
+
+			// Moving the viewport gives the same items as building for it.
+			final BitSet expected = new BitSet();
+			final SpatialGrid built = grid(expected);
+			built.build(ITEMS, bounds);
+			built.showViewport(x, y, x + w, y + h);
+			assertEquals(expected, shown);
+
+			for (int i = 0; i < ITEMS; ++i) {
+				final boolean intersects = boxes[i * 4] <= x + w && boxes[i * 4 + 2] >= x && boxes[i * 4 + 1] <= y + h
+						&& boxes[i * 4 + 3] >= y;
+				if (i % 3 != 0 && intersects) {
+					assertTrue(shown.get(i));
+				}
+			}
+		}
+
+		grid.setViewport(SIZE * 2, SIZE * 2, SIZE * 3, SIZE * 3);
+		assertTrue(shown.isEmpty());
+	}
+
+}
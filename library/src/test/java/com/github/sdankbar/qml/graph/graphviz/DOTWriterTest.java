@@ -0,0 +1,99 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.graphviz;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.github.sdankbar.qml.graph.GraphSnapshot;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the DOTWriter class.
+ */
+public class DOTWriterTest {
+
+	private static String write(final DOTWriter writer, final GraphSnapshot graph) throws IOException {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		writer.write(graph, Channels.newChannel(output));
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @throws IOException Not expected.
+	 */
+	@Test
+	public void test_fragments() throws IOException {
+		final DOTWriter writer = new DOTWriter(32);
+		final GraphSnapshot.Builder builder = GraphSnapshot.builder(96);
+		final int a = builder.addVertex("A", 1, 0.5);
+		final int b = builder.addVertex("B", 0.75, 0.5);
+		builder.addEdge(a, b);
+		final String expected = write(writer, builder.build());
+
+		builder.setDOTFragment(a, writer.toFragment("A", 1, 0.5, ImmutableList.of("B")));
+		builder.setDOTFragment(b, writer.toFragment("B", 0.75, 0.5, ImmutableList.of()));
+		assertEquals(expected, write(writer, builder.build()));
+
+		// Fragments are copied, not rewritten.
+		builder.setDOTFragment(b, "B [width=9 height=9 shape=box]\n".getBytes(StandardCharsets.UTF_8));
+		assertEquals(expected.replace("B [width=0.75 height=0.5", "B [width=9 height=9"),
+				write(writer, builder.build()));
+	}
+
+	/**
+	 * @throws IOException Not expected.
+	 */
+	@Test
+	public void test_write() throws IOException {
+		final GraphSnapshot.Builder builder = GraphSnapshot.builder(96);
+		final int a = builder.addVertex("A", 1, 0.5);
+		final int b = builder.addVertex("B", 0.0001, 12.3456789);
+		final int c = builder.addVertex("Ç", 1234567.25, 0.0000001);
+		builder.addEdge(a, b);
+		builder.addEdge(a, c);
+		builder.addEdge(c, c);
+		final GraphSnapshot graph = builder.build();
+
+		final String expected = "digraph {\n" //
+				+ "A [width=1 height=0.5 shape=box]\n" //
+				+ "A -> {B, Ç} [arrowhead=none]\n" //
+				+ "B [width=0.0001 height=12.345679 shape=box]\n" //
+				+ "Ç [width=1234567.25 height=0 shape=box]\n" //
+				+ "Ç -> {Ç} [arrowhead=none]\n" //
+				+ "}\n";
+		assertEquals(expected, write(new DOTWriter(), graph));
+		// Flushing partway through must not change the output.
+		final DOTWriter small = new DOTWriter(20);
+		assertEquals(expected, write(small, graph));
+		assertEquals(expected, write(small, graph));
+		assertEquals(expected, graph.toDOT());
+	}
+
+}
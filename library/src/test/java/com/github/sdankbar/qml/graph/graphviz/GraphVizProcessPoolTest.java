@@ -0,0 +1,163 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.graphviz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.sdankbar.qml.graph.GraphSnapshot;
+import com.github.sdankbar.qml.graph.parsing.PlainFormatListener;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the GraphVizProcessPool class against a fake "dot" script that answers
+ * each graph with a "plain" layout numbering the graphs its process has seen.
+ */
+public class GraphVizProcessPoolTest {
+
+	private static final String FAKE_DOT = "#!/bin/sh\n" //
+			+ "if [ \"$1\" = \"-V\" ]; then echo \"dot - graphviz version fake\"; exit 0; fi\n" //
+			+ "n=0\n" //
+			+ "while IFS= read -r line; do\n" //
+			+ "  case \"$line\" in\n" //
+			+ "    *exit*) exit 3 ;;\n" //
+			+ "    *hang*) exec sleep 60 ;;\n" //
+			+ "    \"}\") n=$((n+1)); printf 'graph 1 %d 2\\nnode A 1 1 1 1\\nstop\\n' \"$n\" ;;\n" //
+			+ "  esac\n" //
+			+ "done\n";
+
+	private static String layout(final GraphVizProcessPool pool, final String vertex,
+			final long timeoutMilliseconds) throws IOException {
+		final GraphSnapshot.Builder builder = GraphSnapshot.builder(96);
+		builder.addVertex(vertex, 1, 1);
+		final StringBuilder records = new StringBuilder();
+		pool.layout(builder.build(), timeoutMilliseconds, new PlainFormatListener() {
+			@Override
+			public void edge(final String tailID, final String headID, final double[] points,
+					final int pointCount) {
+				records.append("edge ").append(tailID).append(' ').append(headID).append(';');
+			}
+
+			@Override
+			public void graph(final double widthInches, final double heightInches) {
+				records.append("graph ").append((long) widthInches).append(';');
+			}
+
+			@Override
+			public void node(final String nodeID, final double centerX, final double centerY,
+					final double widthInches, final double heightInches) {
+				records.append("node ").append(nodeID).append(';');
+			}
+		});
+		return records.toString();
+	}
+
+	/**
+	 * Holds the fake "dot" script.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ImmutableList<String> dotCommand;
+
+	/**
+	 * @throws IOException Not expected.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+		final File script = folder.newFile("dot");
+		Files.write(script.toPath(), FAKE_DOT.getBytes(StandardCharsets.UTF_8));
+		dotCommand = ImmutableList.of("/bin/sh", script.getAbsolutePath());
+	}
+
+	/**
+	 * @throws IOException Not expected.
+	 */
+	@Test
+	public void test_framing() throws IOException {
+		try (final GraphVizProcessPool pool = new GraphVizProcessPool(1, 10_000, dotCommand)) {
+			assertEquals("dot - graphviz version fake", pool.getVersion());
+			// The same worker answers both graphs, each up to its "stop" line.
+			assertEquals("graph 1;node A;", layout(pool, "A", 10_000));
+			assertEquals("graph 2;node A;", layout(pool, "B", 10_000));
+		}
+	}
+
+	/**
+	 * Checks that a missing "dot" is reported as an IllegalStateException.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void test_missing_dot() {
+		new GraphVizProcessPool(1, 10_000, ImmutableList.of(new File(folder.getRoot(), "missing").getAbsolutePath()))
+				.close();
+	}
+
+	/**
+	 * @throws IOException Not expected.
+	 */
+	@Test
+	public void test_restart() throws IOException {
+		try (final GraphVizProcessPool pool = new GraphVizProcessPool(1, 10_000, dotCommand)) {
+			assertEquals("graph 1;node A;", layout(pool, "A", 10_000));
+			try {
+				layout(pool, "exit", 10_000);
+				fail("Expected IOException");
+			} catch (final IOException e) {
+				// Expected
+			}
+			// A new worker replaces the one that exited.
+			assertEquals("graph 1;node A;", layout(pool, "A", 10_000));
+		}
+	}
+
+	/**
+	 * @throws IOException Not expected.
+	 */
+	@Test
+	public void test_timeout() throws IOException {
+		try (final GraphVizProcessPool pool = new GraphVizProcessPool(1, 10_000, dotCommand)) {
+			try {
+				layout(pool, "hang", 200);
+				fail("Expected GraphVizTimeoutException");
+			} catch (final GraphVizTimeoutException e) {
+				assertEquals(200, e.getTimeoutMilliseconds());
+			}
+			// The hung worker was destroyed and is replaced.
+			assertEquals("graph 1;node A;", layout(pool, "A", 10_000));
+		}
+	}
+
+}
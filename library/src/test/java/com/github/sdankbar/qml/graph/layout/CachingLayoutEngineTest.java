@@ -0,0 +1,113 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.layout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.sdankbar.qml.graph.GraphSnapshot;
+import com.github.sdankbar.qml.graph.LayoutEngine;
+import com.github.sdankbar.qml.graph.LayoutResult;
+
+/**
+ * Tests the CachingLayoutEngine class.
+ */
+public class CachingLayoutEngineTest {
+
+	private static class CountingEngine implements LayoutEngine {
+		private final AtomicInteger calls = new AtomicInteger();
+		private final LayoutEngine engine = new LayeredLayoutEngine();
+
+		@Override
+		public LayoutResult layout(final GraphSnapshot graph) {
+			calls.incrementAndGet();
+			return engine.layout(graph);
+		}
+	}
+
+	private static GraphSnapshot graph(final double dpi, final int children) {
+		final GraphSnapshot.Builder builder = GraphSnapshot.builder(dpi);
+		final int root = builder.addVertex("A", 1, 1);
+		for (int i = 0; i < children; ++i) {
+			builder.addEdge(root, builder.addVertex("C" + i, 1, 1));
+		}
+		return builder.build();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_eviction() {
+		final CountingEngine delegate = new CountingEngine();
+		final CachingLayoutEngine engine = new CachingLayoutEngine(delegate, 2000);
+
+		engine.layout(graph(96, 2));
+		engine.layout(graph(96, 3));
+		engine.layout(graph(96, 4));
+		assertEquals(3, delegate.calls.get());
+		assertEquals(true, engine.getStats().evictionCount() > 0);
+
+		// Least recently used was evicted first.
+		engine.layout(graph(96, 4));
+		assertEquals(3, delegate.calls.get());
+		engine.layout(graph(96, 2));
+		assertEquals(4, delegate.calls.get());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_hit() {
+		final CountingEngine delegate = new CountingEngine();
+		final CachingLayoutEngine engine = new CachingLayoutEngine(delegate);
+
+		final LayoutResult first = engine.layout(graph(96, 3));
+		final LayoutResult second = engine.layout(graph(96, 3));
+		assertSame(first, second);
+		assertEquals(1, delegate.calls.get());
+		assertEquals(1, engine.getStats().hitCount());
+		assertEquals(1, engine.getStats().missCount());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_miss_on_change() {
+		final CountingEngine delegate = new CountingEngine();
+		final CachingLayoutEngine engine = new CachingLayoutEngine(delegate);
+
+		engine.layout(graph(96, 3));
+		engine.layout(graph(72, 3));
+		engine.layout(graph(96, 4));
+		assertEquals(3, delegate.calls.get());
+		assertEquals(0, engine.getStats().hitCount());
+	}
+
+}
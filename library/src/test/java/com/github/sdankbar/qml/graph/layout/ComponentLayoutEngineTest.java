@@ -0,0 +1,171 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.layout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.sdankbar.qml.graph.GraphSnapshot;
+import com.github.sdankbar.qml.graph.LayoutEngine;
+import com.github.sdankbar.qml.graph.LayoutResult;
+import com.github.sdankbar.qml.graph.parsing.EdgeDefinition;
+import com.github.sdankbar.qml.graph.parsing.NodeDefinition;
+
+/**
+ * Tests the ComponentLayoutEngine class.
+ */
+public class ComponentLayoutEngineTest {
+
+	private static Rectangle2D box(final NodeDefinition def) {
+		return new Rectangle2D.Double(def.getX(), def.getY(), def.getWidth(), def.getHeight());
+	}
+
+	private static GraphSnapshot forest(final int trees) {
+		final GraphSnapshot.Builder builder = GraphSnapshot.builder(96);
+		final List<Integer> roots = new ArrayList<>();
+		for (int t = 0; t < trees; ++t) {
+			roots.add(Integer.valueOf(builder.addVertex("R" + t, 1, 0.5)));
+		}
+		// Children are added after all roots so components interleave in the
+		// snapshot.
+		for (int t = 0; t < trees; ++t) {
+			for (int c = 0; c <= t % 4; ++c) {
+				builder.addEdge(roots.get(t).intValue(), builder.addVertex("C" + t + "_" + c, 0.75, 0.5));
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_forest() {
+		final AtomicInteger calls = new AtomicInteger();
+		final LayoutEngine counting = g -> {
+			calls.incrementAndGet();
+			return new LayeredLayoutEngine().layout(g);
+		};
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final GraphSnapshot graph = forest(30);
+			final LayoutResult result = new ComponentLayoutEngine(counting, executor).layout(graph);
+			assertEquals(30, calls.get());
+			assertEquals(graph.getVertexCount(), result.getNodes().size());
+			assertEquals(graph.getVertexCount() - 30, result.getEdges().size());
+
+			final Rectangle2D bounds = new Rectangle2D.Double(0, 0, result.getGraphWidthInches(),
+					result.getGraphHeightInches());
+			final List<NodeDefinition> nodes = new ArrayList<>(result.getNodes());
+			for (int i = 0; i < nodes.size(); ++i) {
+				assertTrue(bounds.contains(box(nodes.get(i))));
+				for (int j = i + 1; j < nodes.size(); ++j) {
+					assertTrue(box(nodes.get(i)).createIntersection(box(nodes.get(j))).isEmpty());
+				}
+			}
+
+			// Edges moved with their vertices.
+			for (final EdgeDefinition e : result.getEdges()) {
+				final Point2D start = e.getControlPoints().get(0);
+				final Rectangle2D tail = box(result.getNode(e.getTailUUID()));
+				assertEquals(tail.getCenterX(), start.getX() / 96, 1e-9);
+				assertEquals(tail.getMaxY(), start.getY() / 96, 1e-9);
+			}
+
+			// Packed closer to square than a single row.
+			assertTrue(result.getGraphWidthInches() < 3 * result.getGraphHeightInches());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_reuse_unchanged_components() {
+		final AtomicInteger calls = new AtomicInteger();
+		final LayoutEngine counting = g -> {
+			calls.incrementAndGet();
+			return new LayeredLayoutEngine().layout(g);
+		};
+		final ComponentLayoutEngine engine = new ComponentLayoutEngine(counting, Runnable::run);
+
+		final GraphSnapshot.Builder first = GraphSnapshot.builder(96);
+		for (int t = 0; t < 3; ++t) {
+			final int root = first.addVertex("R" + t, 1, 0.5);
+			final int child = first.addVertex("C" + t, 1, 0.5);
+			first.addEdge(root, child);
+			first.setVersion(root, 10 + t);
+			first.setVersion(child, 20 + t);
+		}
+		engine.layout(first.build());
+		assertEquals(3, calls.get());
+
+		// Only the middle tree's child changed.
+		final GraphSnapshot.Builder second = GraphSnapshot.builder(96);
+		for (int t = 0; t < 3; ++t) {
+			final int root = second.addVertex("R" + t, 1, 0.5);
+			final int child = second.addVertex("C" + t, t == 1 ? 2 : 1, 0.5);
+			second.addEdge(root, child);
+			second.setVersion(root, 10 + t);
+			second.setVersion(child, t == 1 ? 99 : 20 + t);
+		}
+		final LayoutResult result = engine.layout(second.build());
+		assertEquals(4, calls.get());
+		assertEquals(2, result.getNode("C1").getWidth(), 0);
+		assertEquals(6, result.getNodes().size());
+
+		// Snapshots without versions are always laid out.
+		engine.layout(forest(2));
+		engine.layout(forest(2));
+		assertEquals(8, calls.get());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_single_component() {
+		final GraphSnapshot.Builder builder = GraphSnapshot.builder(96);
+		builder.addEdge(builder.addVertex("A", 1, 1), builder.addVertex("B", 1, 1));
+		final GraphSnapshot graph = builder.build();
+
+		final LayoutResult expected = new LayeredLayoutEngine().layout(graph);
+		final LayoutResult actual = new ComponentLayoutEngine(new LayeredLayoutEngine(), Runnable::run)
+				.layout(graph);
+		assertEquals(expected.getGraphWidthInches(), actual.getGraphWidthInches(), 0);
+		assertEquals(expected.getNode("B").getY(), actual.getNode("B").getY(), 0);
+	}
+
+}
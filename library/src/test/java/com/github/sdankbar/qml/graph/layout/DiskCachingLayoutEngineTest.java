@@ -0,0 +1,202 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.layout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.sdankbar.qml.graph.GraphSnapshot;
+import com.github.sdankbar.qml.graph.LayoutEngine;
+import com.github.sdankbar.qml.graph.LayoutResult;
+import com.github.sdankbar.qml.graph.parsing.NodeDefinition;
+
+/**
+ * Tests the DiskCachingLayoutEngine class.
+ */
+public class DiskCachingLayoutEngineTest {
+
+	private static class CountingEngine implements LayoutEngine {
+		private final AtomicInteger calls = new AtomicInteger();
+		private final LayoutEngine engine = new LayeredLayoutEngine();
+
+		@Override
+		public LayoutResult layout(final GraphSnapshot graph) {
+			calls.incrementAndGet();
+			return engine.layout(graph);
+		}
+	}
+
+	private static void assertSameLayout(final LayoutResult expected, final LayoutResult actual) {
+		assertEquals(expected.getGraphWidthInches(), actual.getGraphWidthInches(), 0);
+		assertEquals(expected.getGraphHeightInches(), actual.getGraphHeightInches(), 0);
+		assertEquals(expected.getNodes().size(), actual.getNodes().size());
+		for (final NodeDefinition def : expected.getNodes()) {
+			final NodeDefinition other = actual.getNode(def.getNodeID());
+			assertEquals(def.getX(), other.getX(), 1e-12);
+			assertEquals(def.getY(), other.getY(), 1e-12);
+			assertEquals(def.getWidth(), other.getWidth(), 0);
+			assertEquals(def.getHeight(), other.getHeight(), 0);
+		}
+		assertEquals(expected.getEdges().size(), actual.getEdges().size());
+		assertEquals(expected.getEdges("C1").get(0).getControlPoints().size(),
+				actual.getEdges("C1").get(0).getControlPoints().size());
+	}
+
+	private static GraphSnapshot graph(final int children) {
+		final GraphSnapshot.Builder builder = GraphSnapshot.builder(96);
+		final int root = builder.addVertex("A", 1, 1);
+		for (int i = 0; i < children; ++i) {
+			builder.addEdge(root, builder.addVertex("C" + i, 1, 0.5));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Holds the layout store.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void test_compaction() throws IOException {
+		final Path dir = folder.getRoot().toPath();
+		final CountingEngine delegate = new CountingEngine();
+		try (DiskCachingLayoutEngine engine = new DiskCachingLayoutEngine(delegate, dir, 8000)) {
+			for (int i = 2; i < 12; ++i) {
+				engine.layout(graph(i));
+			}
+			assertTrue(Files.size(dir.resolve("layouts.seg")) <= 8000);
+
+			// Most recent layout is kept.
+			engine.layout(graph(11));
+			assertEquals(10, delegate.calls.get());
+			// Oldest was dropped.
+			engine.layout(graph(2));
+			assertEquals(11, delegate.calls.get());
+		}
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void test_failed_compaction_backs_off() throws IOException {
+		final Path file = folder.getRoot().toPath().resolve("layouts.seg");
+		final AtomicInteger compactions = new AtomicInteger();
+		final LayoutSegmentFile store = new LayoutSegmentFile(file) {
+			@Override
+			void compact(final long maximumBytes) throws IOException {
+				compactions.incrementAndGet();
+				super.compact(maximumBytes);
+			}
+
+			@Override
+			void replaceFile(final Path temp) throws IOException {
+				throw new AtomicMoveNotSupportedException(temp.toString(), file.toString(), "test");
+			}
+		};
+		final CountingEngine delegate = new CountingEngine();
+		try (DiskCachingLayoutEngine engine = new DiskCachingLayoutEngine(delegate, store, 2000)) {
+			int children = 2;
+			while (store.size() <= 2000) {
+				engine.layout(graph(children++));
+			}
+			assertEquals(1, compactions.get());
+
+			// Not retried until the store has grown by another half of its maximum.
+			final long retrySize = store.size() + 1000;
+			while (store.size() <= retrySize) {
+				assertEquals(1, compactions.get());
+				engine.layout(graph(children++));
+			}
+			assertEquals(2, compactions.get());
+
+			// Layouts are still stored and read back.
+			engine.layout(graph(2));
+			assertEquals(children - 2, delegate.calls.get());
+		}
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void test_recovers_from_partial_write() throws IOException {
+		final Path dir = folder.getRoot().toPath();
+		final CountingEngine delegate = new CountingEngine();
+		try (DiskCachingLayoutEngine engine = new DiskCachingLayoutEngine(delegate, dir, 1 << 20)) {
+			engine.layout(graph(2));
+			engine.layout(graph(3));
+		}
+
+		// Simulate a crash part way through writing a third layout.
+		final Path file = dir.resolve("layouts.seg");
+		final long goodSize = Files.size(file);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 0x4C, 0x41, 0x59, 0x4F, 0, 0, 1, 0, 1, 2, 3 }));
+		}
+
+		try (DiskCachingLayoutEngine engine = new DiskCachingLayoutEngine(delegate, dir, 1 << 20)) {
+			assertEquals(goodSize, Files.size(file));
+			engine.layout(graph(2));
+			engine.layout(graph(3));
+			assertEquals(2, delegate.calls.get());
+		}
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void test_survives_restart() throws IOException {
+		final Path dir = folder.getRoot().toPath();
+		final LayoutResult original;
+		try (DiskCachingLayoutEngine engine = new DiskCachingLayoutEngine(new LayeredLayoutEngine(), dir, 1 << 20)) {
+			original = engine.layout(graph(3));
+		}
+
+		final LayoutEngine failing = g -> {
+			throw new IllegalStateException("Should not be called");
+		};
+		try (DiskCachingLayoutEngine engine = new DiskCachingLayoutEngine(failing, dir, 1 << 20)) {
+			assertSameLayout(original, engine.layout(graph(3)));
+		}
+	}
+
+}
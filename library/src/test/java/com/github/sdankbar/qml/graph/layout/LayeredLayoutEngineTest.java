@@ -0,0 +1,193 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.layout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.sdankbar.qml.graph.GraphSnapshot;
+import com.github.sdankbar.qml.graph.LayoutResult;
+import com.github.sdankbar.qml.graph.parsing.EdgeDefinition;
+import com.github.sdankbar.qml.graph.parsing.NodeDefinition;
+
+/**
+ * Tests the LayeredLayoutEngine class.
+ */
+public class LayeredLayoutEngineTest {
+
+	private static final double DPI = 96;
+
+	private static Rectangle2D box(final LayoutResult result, final String id) {
+		final NodeDefinition def = result.getNode(id);
+		return new Rectangle2D.Double(def.getX(), def.getY(), def.getWidth(), def.getHeight());
+	}
+
+	private static void assertTouches(final Rectangle2D boxInches, final Point2D pixel) {
+		final Rectangle2D grown = new Rectangle2D.Double(boxInches.getX() - 0.01, boxInches.getY() - 0.01,
+				boxInches.getWidth() + 0.02, boxInches.getHeight() + 0.02);
+		assertTrue(boxInches + " " + pixel, grown.contains(pixel.getX() / DPI, pixel.getY() / DPI));
+	}
+
+	private static void assertNoOverlaps(final LayoutResult result, final GraphSnapshot graph) {
+		for (int i = 0; i < graph.getVertexCount(); ++i) {
+			for (int j = i + 1; j < graph.getVertexCount(); ++j) {
+				final Rectangle2D a = box(result, graph.getID(i));
+				final Rectangle2D b = box(result, graph.getID(j));
+				assertTrue(a + " overlaps " + b, a.createIntersection(b).isEmpty());
+			}
+		}
+	}
+
+	private static void assertEdgesTouchVertices(final LayoutResult result) {
+		for (final EdgeDefinition e : result.getEdges()) {
+			final List<Point2D> polyline = e.getPolyLine();
+			assertTouches(box(result, e.getTailUUID()), polyline.get(0));
+			// Last 3 points are the arrow head, the middle one is the tip.
+			assertTouches(box(result, e.getHeadUUID()), polyline.get(polyline.size() - 2));
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_chain() {
+		final GraphSnapshot.Builder builder = GraphSnapshot.builder(DPI);
+		final int a = builder.addVertex("A", 1, 0.5);
+		final int b = builder.addVertex("B", 1, 0.5);
+		final int c = builder.addVertex("C", 1, 0.5);
+		builder.addEdge(a, b);
+		builder.addEdge(b, c);
+		final GraphSnapshot graph = builder.build();
+
+		final LayoutResult result = new LayeredLayoutEngine().layout(graph);
+		assertEquals(3, result.getNodes().size());
+		assertEquals(2, result.getEdges().size());
+		assertTrue(result.getNode("A").getY() < result.getNode("B").getY());
+		assertTrue(result.getNode("B").getY() < result.getNode("C").getY());
+		// Straight chain, vertically aligned.
+		assertEquals(result.getNode("A").getX(), result.getNode("C").getX(), 1e-9);
+		assertEdgesTouchVertices(result);
+		assertTrue(result.getGraphWidthInches() >= 1);
+		assertTrue(result.getGraphHeightInches() >= 2.5);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_cycles_and_self_loop() {
+		final GraphSnapshot.Builder builder = GraphSnapshot.builder(DPI);
+		final int v1 = builder.addVertex("B", 1, 1);
+		final int v2 = builder.addVertex("C", 1, 1);
+		final int v3 = builder.addVertex("D", 1, 1);
+		final int v4 = builder.addVertex("E", 1, 1);
+		final int v5 = builder.addVertex("F", 1, 1);
+		final int v6 = builder.addVertex("G", 1, 1);
+		builder.addEdge(v1, v2);
+		builder.addEdge(v2, v3);
+		builder.addEdge(v3, v2);
+		builder.addEdge(v3, v4);
+		builder.addEdge(v3, v5);
+		builder.addEdge(v3, v6);
+		builder.addEdge(v5, v6);
+		builder.addEdge(v6, v6);
+		final GraphSnapshot graph = builder.build();
+
+		final LayoutResult result = new LayeredLayoutEngine().layout(graph);
+		assertEquals(6, result.getNodes().size());
+		assertEquals(8, result.getEdges().size());
+		assertEquals(2, result.getEdges("C").size());
+		assertNoOverlaps(result, graph);
+		assertEdgesTouchVertices(result);
+		for (final NodeDefinition def : result.getNodes()) {
+			assertTrue(def.getX() + def.getWidth() <= result.getGraphWidthInches());
+			assertTrue(def.getY() + def.getHeight() <= result.getGraphHeightInches());
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_empty() {
+		final LayoutResult result = new LayeredLayoutEngine().layout(GraphSnapshot.builder(DPI).build());
+		assertTrue(result.getNodes().isEmpty());
+		assertTrue(result.getEdges().isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_fan_out() {
+		final GraphSnapshot.Builder builder = GraphSnapshot.builder(DPI);
+		final int root = builder.addVertex("R", 1, 1);
+		for (int i = 0; i < 20; ++i) {
+			final int child = builder.addVertex("C" + i, 0.5 + (i % 3) * 0.25, 0.5);
+			builder.addEdge(root, child);
+		}
+		final GraphSnapshot graph = builder.build();
+
+		final LayoutResult result = new LayeredLayoutEngine().layout(graph);
+		assertNoOverlaps(result, graph);
+		assertEdgesTouchVertices(result);
+		for (int i = 0; i < 20; ++i) {
+			assertTrue(result.getNode("C" + i).getY() > result.getNode("R").getY());
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_large_dag() {
+		final Random random = new Random(42);
+		final GraphSnapshot.Builder builder = GraphSnapshot.builder(DPI);
+		final int n = 10000;
+		for (int i = 0; i < n; ++i) {
+			builder.addVertex("N" + i, 1, 0.5);
+		}
+		for (int i = 1; i < n; ++i) {
+			builder.addEdge(random.nextInt(i), i);
+			if (i > 10 && random.nextInt(4) == 0) {
+				builder.addEdge(i - 1 - random.nextInt(10), i);
+			}
+		}
+		final GraphSnapshot graph = builder.build();
+
+		final LayoutResult result = new LayeredLayoutEngine().layout(graph);
+		assertEquals(n, result.getNodes().size());
+		for (final EdgeDefinition e : result.getEdges()) {
+			assertTrue(result.getNode(e.getTailUUID()).getY() < result.getNode(e.getHeadUUID()).getY());
+		}
+	}
+
+}
@@ -0,0 +1,97 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.layout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.HashCode;
+
+/**
+ * Tests the LayoutSegmentFile class.
+ */
+public class LayoutSegmentFileTest {
+
+	private static HashCode key(final int i) {
+		final byte[] bytes = new byte[32];
+		bytes[0] = (byte) i;
+		return HashCode.fromBytes(bytes);
+	}
+
+	private static ByteBuffer payload(final int i) {
+		return ByteBuffer.wrap(new byte[] { (byte) i, 1, 2, 3 });
+	}
+
+	/**
+	 * Holds the segment file.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * @throws IOException
+	 */
+	@Test
+	public void test_failed_compaction_keeps_file_open() throws IOException {
+		final Path file = folder.getRoot().toPath().resolve("layouts.seg");
+		try (LayoutSegmentFile segments = new LayoutSegmentFile(file) {
+			@Override
+			void replaceFile(final Path temp) throws IOException {
+				throw new AtomicMoveNotSupportedException(temp.toString(), file.toString(), "test");
+			}
+		}) {
+			for (int i = 0; i < 3; ++i) {
+				segments.append(key(i), payload(i));
+			}
+			final long size = segments.size();
+
+			try {
+				segments.compact(0);
+				fail("Expected compaction to fail");
+			} catch (final AtomicMoveNotSupportedException e) {
+				// Expected
+			}
+
+			assertFalse(Files.exists(file.resolveSibling("layouts.seg.tmp")));
+			assertEquals(size, segments.size());
+			for (int i = 0; i < 3; ++i) {
+				assertEquals(payload(i), segments.read(key(i)).get());
+			}
+			segments.append(key(3), payload(3));
+			assertTrue(segments.read(key(3)).isPresent());
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.parsing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the EdgeDefinition class.
+ */
+public class EdgeDefinitionTest {
+
+	// 96 dpi gives an arrow head 12 pixels long.
+	private static final double DPI = 96;
+	private static final double ARROW_LENGTH = 12;
+
+	private static void assertArrowHead(final List<Point2D> bezier, final Point2D from, final Point2D tip) {
+		final int size = bezier.size();
+		assertEquals(tip, bezier.get(size - 2));
+		final double length = from.distance(tip);
+		final double dx = (tip.getX() - from.getX()) / length;
+		final double dy = (tip.getY() - from.getY()) / length;
+		for (final Point2D arrow : ImmutableList.of(bezier.get(size - 3), bezier.get(size - 1))) {
+			assertEquals(ARROW_LENGTH, arrow.distance(tip), 1e-9);
+			// 30 degrees either side of the edge's direction, pointing back along it.
+			final double along = (tip.getX() - arrow.getX()) * dx + (tip.getY() - arrow.getY()) * dy;
+			assertEquals(ARROW_LENGTH * Math.cos(Math.toRadians(30)), along, 1e-9);
+		}
+	}
+
+	private static EdgeDefinition edge(final double... xy) {
+		final ImmutableList.Builder<Point2D> builder = ImmutableList.builder();
+		for (int i = 0; i < xy.length; i += 2) {
+			builder.add(new Point2D.Double(xy[i] / DPI, xy[i + 1] / DPI));
+		}
+		return new EdgeDefinition("A", "B", builder.build(), DPI);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_bezier_coincident_end() {
+		final EdgeDefinition e = edge(0, 0, 10, 0, 20, 0, 20, 0);
+		final ImmutableList<Point2D> bezier = e.getBezier();
+
+		assertEquals(7, bezier.size());
+		assertEquals(e.getControlPoints(), bezier.subList(0, 4));
+		// Direction comes from the last control point that differs from the end.
+		assertArrowHead(bezier, new Point2D.Double(10, 0), new Point2D.Double(20, 0));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_bezier_pass_through() {
+		final EdgeDefinition e = edge(0, 0, 0, 10, 10, 20, 10, 30, 10, 40, 20, 50, 20, 60);
+		final ImmutableList<Point2D> bezier = e.getBezier();
+
+		assertEquals(7 + 3, bezier.size());
+		assertEquals(e.getControlPoints(), bezier.subList(0, 7));
+		assertArrowHead(bezier, new Point2D.Double(20, 50), new Point2D.Double(20, 60));
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_bezier_straight_fallback() {
+		final EdgeDefinition e = edge(0, 0, 30, 0, 30, 40);
+		final ImmutableList<Point2D> bezier = e.getBezier();
+
+		// One straight cubic segment per pair of control points.
+		final Point2D a = new Point2D.Double(0, 0);
+		final Point2D b = new Point2D.Double(30, 0);
+		final Point2D c = new Point2D.Double(30, 40);
+		assertEquals(ImmutableList.of(a, a, b, b, b, c, c), bezier.subList(0, 7));
+		assertEquals(7 + 3, bezier.size());
+		assertArrowHead(bezier, b, c);
+	}
+
+}
@@ -0,0 +1,213 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the PlainFormatReader class.
+ */
+public class PlainFormatReaderTest {
+
+	/**
+	 * Records everything as text.
+	 */
+	private static class Recorder implements PlainFormatListener {
+		private final List<String> records = new ArrayList<>();
+
+		@Override
+		public void edge(final String tailID, final String headID, final double[] points, final int pointCount) {
+			final StringBuilder b = new StringBuilder("edge " + tailID + " " + headID + " " + pointCount);
+			for (int i = 0; i < 2 * pointCount; ++i) {
+				b.append(' ').append(points[i]);
+			}
+			records.add(b.toString());
+		}
+
+		@Override
+		public void graph(final double widthInches, final double heightInches) {
+			records.add("graph " + widthInches + " " + heightInches);
+		}
+
+		@Override
+		public void node(final String nodeID, final double centerX, final double centerY, final double widthInches,
+				final double heightInches) {
+			records.add("node " + nodeID + " " + centerX + " " + centerY + " " + widthInches + " " + heightInches);
+		}
+	}
+
+	private static InputStream oneByteAtATime(final String text) {
+		final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		return new InputStream() {
+			private int i = 0;
+
+			@Override
+			public int read() {
+				return i < bytes.length ? bytes[i++] & 0xFF : -1;
+			}
+
+			@Override
+			public int read(final byte[] b, final int off, final int len) {
+				if (i >= bytes.length) {
+					return -1;
+				}
+				b[off] = bytes[i++];
+				return 1;
+			}
+		};
+	}
+
+	private static InputStream stream(final String text) {
+		return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @throws IOException Not expected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void test_bad_number() throws IOException {
+		new PlainFormatReader(stream("graph 1 2x 3\n")).read(new Recorder());
+	}
+
+	/**
+	 * @throws IOException Not expected.
+	 */
+	@Test
+	public void test_graph() throws IOException {
+		final String plain = "graph 1 2.75 3.5\r\n" //
+				+ "node A 1.375 3 1 0.5 A solid box black lightgrey\n" //
+				+ "node \"B C\" 0.5 -1.25e1 1 0.5 \"B C\" solid box black lightgrey\n" //
+				+ "node \"say \\\"hi\\\"\" 0 0 0.75 0.5 x solid box black lightgrey\n" //
+				+ "edge A \"B C\" 4 1.375 2.75 1.375 2.5 0.5 1 0.5 0.75 solid black\n" //
+				+ "stop\n" //
+				+ "graph 1 1 1\n";
+		final List<String> expected = new ArrayList<>();
+		expected.add("graph 2.75 3.5");
+		expected.add("node A 1.375 3.0 1.0 0.5");
+		expected.add("node B C 0.5 -12.5 1.0 0.5");
+		expected.add("node say \"hi\" 0.0 0.0 0.75 0.5");
+		expected.add("edge A B C 4 1.375 2.75 1.375 2.5 0.5 1.0 0.5 0.75");
+
+		for (final InputStream input : new InputStream[] { stream(plain), oneByteAtATime(plain) }) {
+			final PlainFormatReader reader = new PlainFormatReader(input);
+			final Recorder recorder = new Recorder();
+			assertTrue(reader.read(recorder));
+			assertEquals(expected, recorder.records);
+
+			// The next graph has no "stop" line.
+			final Recorder next = new Recorder();
+			assertFalse(reader.read(next));
+			assertEquals(1, next.records.size());
+			assertFalse(reader.read(next));
+		}
+	}
+
+	/**
+	 * @throws IOException Not expected.
+	 */
+	@Test
+	public void test_long_line() throws IOException {
+		final int count = 20_000;
+		final StringBuilder plain = new StringBuilder("edge A B " + count);
+		for (int i = 0; i < count; ++i) {
+			plain.append(' ').append(i).append(".25 ").append(-i);
+		}
+		plain.append(" solid black\nstop\n");
+
+		final Recorder recorder = new Recorder();
+		final double[] last = new double[2];
+		assertTrue(new PlainFormatReader(stream(plain.toString())).read(new Recorder() {
+			@Override
+			public void edge(final String tailID, final String headID, final double[] points,
+					final int pointCount) {
+				recorder.records.add(tailID + headID + pointCount);
+				last[0] = points[2 * pointCount - 2];
+				last[1] = points[2 * pointCount - 1];
+			}
+		}));
+		assertEquals("AB" + count, recorder.records.get(0));
+		assertEquals(count - 1 + 0.25, last[0], 0);
+		assertEquals(-(count - 1), last[1], 0);
+	}
+
+	/**
+	 * @throws IOException Not expected.
+	 */
+	@Test
+	public void test_numbers_match_parseDouble() throws IOException {
+		final Random random = new Random(7);
+		final List<String> numbers = new ArrayList<>();
+		for (int i = 0; i < 20_000; ++i) {
+			final double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4);
+			switch (i % 4) {
+			case 0:
+				numbers.add(Double.toString(value));
+				break;
+			case 1:
+				numbers.add(String.format(Locale.ROOT, "%.4f", value));
+				break;
+			case 2:
+				numbers.add(String.format(Locale.ROOT, "%.3e", value));
+				break;
+			default:
+				numbers.add(Long.toString(random.nextLong() >> random.nextInt(64)));
+				break;
+			}
+		}
+		numbers.add("0.1234567890123456789");
+		numbers.add("1e300");
+		numbers.add("-0");
+
+		final StringBuilder plain = new StringBuilder();
+		for (final String n : numbers) {
+			plain.append("graph 1 ").append(n).append(" 1\n");
+		}
+		final List<Double> parsed = new ArrayList<>();
+		new PlainFormatReader(stream(plain.toString())).read(new Recorder() {
+			@Override
+			public void graph(final double widthInches, final double heightInches) {
+				parsed.add(Double.valueOf(widthInches));
+			}
+		});
+
+		assertEquals(numbers.size(), parsed.size());
+		for (int i = 0; i < numbers.size(); ++i) {
+			assertEquals(numbers.get(i), Double.doubleToLongBits(Double.parseDouble(numbers.get(i))),
+					Double.doubleToLongBits(parsed.get(i).doubleValue()));
+		}
+	}
+
+}
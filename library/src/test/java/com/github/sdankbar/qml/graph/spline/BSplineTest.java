@@ -23,9 +23,13 @@
 package com.github.sdankbar.qml.graph.spline;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.awt.geom.Point2D;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
 
+import org.junit.Assume;
 import org.junit.Test;
 
 import com.github.sdankbar.qml.graph.splines.BSpline;
@@ -36,6 +40,59 @@ import com.google.common.collect.ImmutableList;
  */
 public class BSplineTest {
 
+	private static final double EPSILON = 1e-12;
+
+	private static void assertPoint(final Point2D expected, final Point2D actual) {
+		assertEquals(expected.getX(), actual.getX(), EPSILON);
+		assertEquals(expected.getY(), actual.getY(), EPSILON);
+	}
+
+	/**
+	 * Reference Cox-de Boor basis function over the same knots BSpline builds.
+	 */
+	private static double basis(final double[] knots, final int i, final int j, final double t) {
+		if (j > 0) {
+			double v1 = (t - knots[i]) / (knots[i + j] - knots[i]);
+			if (!Double.isFinite(v1)) {
+				v1 = 0;
+			}
+			double v3 = (knots[i + j + 1] - t) / (knots[i + j + 1] - knots[i + 1]);
+			if (!Double.isFinite(v3)) {
+				v3 = 0;
+			}
+			return v1 * basis(knots, i, j - 1, t) + v3 * basis(knots, i + 1, j - 1, t);
+		} else {
+			return knots[i] <= t && t < knots[i + 1] ? 1 : 0;
+		}
+	}
+
+	private static Point2D reference(final ImmutableList<Point2D> points, final double t) {
+		final int p = 3;
+		final int n = points.size() - 1;
+		final int m = p + n + 1;
+		if (t == 1.0) {
+			return points.get(n);
+		}
+
+		final double[] knots = new double[m + 1];
+		final double internalKnots = m - 2 * p - 1;
+		for (int i = p + 1; i < (m - p); ++i) {
+			knots[i] = (i - p) / (internalKnots + 1);
+		}
+		for (int i = m - p; i < knots.length; ++i) {
+			knots[i] = 1;
+		}
+
+		double x = 0;
+		double y = 0;
+		for (int i = 0; i <= n; ++i) {
+			final double b = basis(knots, i, p, t);
+			x += points.get(i).getX() * b;
+			y += points.get(i).getY() * b;
+		}
+		return new Point2D.Double(x, y);
+	}
+
 	/**
 	 *
 	 */
@@ -43,9 +100,9 @@ public class BSplineTest {
 	public void test_BSpline_1() {
 		final BSpline b1 = new BSpline(ImmutableList.of(new Point2D.Double(0, 0), new Point2D.Double(1, 1),
 				new Point2D.Double(2, 2), new Point2D.Double(3, 3)));
-		assertEquals(new Point2D.Double(0, 0), b1.evaluate(0));
-		assertEquals(new Point2D.Double(1.5, 1.5), b1.evaluate(0.5));
-		assertEquals(new Point2D.Double(3, 3), b1.evaluate(1.0));
+		assertPoint(new Point2D.Double(0, 0), b1.evaluate(0));
+		assertPoint(new Point2D.Double(1.5, 1.5), b1.evaluate(0.5));
+		assertPoint(new Point2D.Double(3, 3), b1.evaluate(1.0));
 	}
 
 	/**
@@ -59,9 +116,9 @@ public class BSplineTest {
 				new Point2D.Double(0.31944, 4.5), new Point2D.Double(0.34971, 5.6653),
 				new Point2D.Double(0.38546, 5.8605)));
 
-		assertEquals(new Point2D.Double(0.63561, 4.0012), b1.evaluate(0));
-		assertEquals(new Point2D.Double(0.31944, 4.5), b1.evaluate(0.5));
-		assertEquals(new Point2D.Double(0.38546, 5.8605), b1.evaluate(1.0));
+		assertPoint(new Point2D.Double(0.63561, 4.0012), b1.evaluate(0));
+		assertPoint(new Point2D.Double(0.31944, 4.5), b1.evaluate(0.5));
+		assertPoint(new Point2D.Double(0.38546, 5.8605), b1.evaluate(1.0));
 	}
 
 	/**
@@ -74,17 +131,44 @@ public class BSplineTest {
 				new Point2D.Double(0.31944, 4.5), new Point2D.Double(0.17518, 4.9971),
 				new Point2D.Double(0.26099, 5.5909), new Point2D.Double(0.35735, 5.999)));
 
-		assertEquals(new Point2D.Double(0.55773, 4.0041), b1.evaluate(0));
-		assertEquals(new Point2D.Double(0.46358296000000004, 4.157120266666667), b1.evaluate(0.1));
-		assertEquals(new Point2D.Double(0.4047312799999999, 4.267446133333333), b1.evaluate(0.2));
-		assertEquals(new Point2D.Double(0.3668782133333333, 4.3546356), b1.evaluate(0.3));
-		assertEquals(new Point2D.Double(0.3370861599999999, 4.441475866666666), b1.evaluate(0.4));
-		assertEquals(new Point2D.Double(0.30377666666666664, 4.553983333333333), b1.evaluate(0.5));
-		assertEquals(new Point2D.Double(0.2612644533333333, 4.7146988), b1.evaluate(0.6));
-		assertEquals(new Point2D.Double(0.22720056000000002, 4.931699066666667), b1.evaluate(0.7));
-		assertEquals(new Point2D.Double(0.2246445066666667, 5.2097168), b1.evaluate(0.8));
-		assertEquals(new Point2D.Double(0.26686701333333335, 5.5597376), b1.evaluate(0.9));
-		assertEquals(new Point2D.Double(0.35735, 5.999), b1.evaluate(1.0));
+		assertPoint(new Point2D.Double(0.55773, 4.0041), b1.evaluate(0));
+		assertPoint(new Point2D.Double(0.46358296000000004, 4.157120266666667), b1.evaluate(0.1));
+		assertPoint(new Point2D.Double(0.4047312799999999, 4.267446133333333), b1.evaluate(0.2));
+		assertPoint(new Point2D.Double(0.3668782133333333, 4.3546356), b1.evaluate(0.3));
+		assertPoint(new Point2D.Double(0.3370861599999999, 4.441475866666666), b1.evaluate(0.4));
+		assertPoint(new Point2D.Double(0.30377666666666664, 4.553983333333333), b1.evaluate(0.5));
+		assertPoint(new Point2D.Double(0.2612644533333333, 4.7146988), b1.evaluate(0.6));
+		assertPoint(new Point2D.Double(0.22720056000000002, 4.931699066666667), b1.evaluate(0.7));
+		assertPoint(new Point2D.Double(0.2246445066666667, 5.2097168), b1.evaluate(0.8));
+		assertPoint(new Point2D.Double(0.26686701333333335, 5.5597376), b1.evaluate(0.9));
+		assertPoint(new Point2D.Double(0.35735, 5.999), b1.evaluate(1.0));
+	}
+
+	/**
+	 * Evaluating should allocate only the returned point.
+	 */
+	@Test
+	public void test_BSpline_allocation() {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		Assume.assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+
+		final BSpline b1 = new BSpline(ImmutableList.of(new Point2D.Double(0, 0), new Point2D.Double(1, 3),
+				new Point2D.Double(2, 1), new Point2D.Double(3, 4), new Point2D.Double(4, 0), new Point2D.Double(5, 2),
+				new Point2D.Double(6, 6)));
+		final int count = 100_000;
+		double sum = 0;
+		final long threadID = Thread.currentThread().getId();
+		final long before = bean.getThreadAllocatedBytes(threadID);
+		for (int i = 0; i < count; ++i) {
+			sum += b1.evaluate((i % 1000) / 1000.0).getX();
+		}
+		final long bytesPerCall = (bean.getThreadAllocatedBytes(threadID) - before) / count;
+
+		assertTrue(sum > 0);
+		// A Point2D.Double is 32 bytes.
+		assertTrue("Allocated " + bytesPerCall + " bytes per call", bytesPerCall <= 32);
 	}
 
 	/**
@@ -107,4 +191,69 @@ public class BSplineTest {
 		b1.evaluate(1.1);
 	}
 
+	/**
+	 *
+	 */
+	@Test
+	public void test_BSpline_batch() {
+		final Random random = new Random(4321);
+		for (int size = 1; size <= 12; ++size) {
+			final ImmutableList.Builder<Point2D> builder = ImmutableList.builder();
+			for (int i = 0; i < size; ++i) {
+				builder.add(new Point2D.Double(random.nextDouble() * 1000, random.nextDouble() * 1000));
+			}
+			final BSpline b1 = new BSpline(builder.build());
+
+			// Sorted run followed by unsorted values.
+			final double[] ts = new double[150];
+			for (int i = 0; i <= 100; ++i) {
+				ts[i] = i / 100.0;
+			}
+			for (int i = 101; i < ts.length; ++i) {
+				ts[i] = random.nextDouble();
+			}
+			final double[] x = new double[ts.length];
+			final double[] y = new double[ts.length];
+			b1.evaluate(ts, x, y);
+
+			for (int i = 0; i < ts.length; ++i) {
+				assertPoint(b1.evaluate(ts[i]), new Point2D.Double(x[i], y[i]));
+			}
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void test_BSpline_batch_bad_t() {
+		final BSpline b1 = new BSpline(ImmutableList.of(new Point2D.Double(0, 0), new Point2D.Double(1, 1),
+				new Point2D.Double(2, 2), new Point2D.Double(3, 3)));
+		b1.evaluate(new double[] { 0, 0.5, 1.5 }, new double[3], new double[3]);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_BSpline_matches_reference() {
+		final Random random = new Random(1234);
+		for (int size = 1; size <= 20; ++size) {
+			final ImmutableList.Builder<Point2D> builder = ImmutableList.builder();
+			for (int i = 0; i < size; ++i) {
+				builder.add(new Point2D.Double(random.nextDouble() * 1000, random.nextDouble() * 1000));
+			}
+			final ImmutableList<Point2D> points = builder.build();
+			final BSpline b1 = new BSpline(points);
+
+			for (int i = 0; i <= 1000; ++i) {
+				final double t = i / 1000.0;
+				final Point2D expected = reference(points, t);
+				final Point2D actual = b1.evaluate(t);
+				assertEquals(expected.getX(), actual.getX(), 1e-9);
+				assertEquals(expected.getY(), actual.getY(), 1e-9);
+			}
+		}
+	}
+
 }
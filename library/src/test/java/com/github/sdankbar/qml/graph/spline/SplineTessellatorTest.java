@@ -0,0 +1,107 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.qml.graph.spline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.sdankbar.qml.graph.splines.BSpline;
+import com.github.sdankbar.qml.graph.splines.SplineTessellator;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the SplineTessellator class.
+ */
+public class SplineTessellatorTest {
+
+	private static ImmutableList<Point2D> randomPoints(final Random random, final int size) {
+		final ImmutableList.Builder<Point2D> builder = ImmutableList.builder();
+		for (int i = 0; i < size; ++i) {
+			builder.add(new Point2D.Double(random.nextDouble() * 1000, random.nextDouble() * 1000));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Reference recursive subdivision that collects the parameters of the
+	 * points, to be sorted afterwards.
+	 */
+	private static void subdivide(final BSpline spline, final double s, final double e, final Point2D sPoint,
+			final Point2D ePoint, final List<Double> working) {
+		final double middle = (s + e) / 2;
+		final Point2D middlePoint = spline.evaluate(middle);
+		working.add(middle);
+		if (new Line2D.Double(sPoint, ePoint).ptLineDist(middlePoint) >= 0.5
+				&& (sPoint.distanceSq(middlePoint) > 100 || middlePoint.distanceSq(ePoint) > 100)) {
+			subdivide(spline, s, middle, sPoint, middlePoint, working);
+			subdivide(spline, middle, e, middlePoint, ePoint, working);
+		}
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_coarser_tolerances() {
+		final Random random = new Random(99);
+		final BSpline spline = new BSpline(randomPoints(random, 12));
+
+		final int fine = new SplineTessellator(0.5, 10).tessellate(spline).size();
+		final int coarse = new SplineTessellator(0.5 * 8, 10 * 8).tessellate(spline).size();
+		assertTrue(fine + " " + coarse, coarse < fine);
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_matches_recursive() {
+		final Random random = new Random(42);
+		final SplineTessellator tessellator = new SplineTessellator(SplineTessellator.DEFAULT_FLATNESS,
+				SplineTessellator.DEFAULT_MIN_SEGMENT_LENGTH);
+		for (int size = 2; size <= 20; ++size) {
+			final BSpline spline = new BSpline(randomPoints(random, size));
+
+			final List<Double> ts = new ArrayList<>();
+			ts.add(0.0);
+			ts.add(1.0);
+			subdivide(spline, 0, 1, spline.evaluate(0), spline.evaluate(1), ts);
+			ts.sort(Double::compare);
+
+			final ImmutableList<Point2D> points = tessellator.tessellate(spline);
+			assertEquals(ts.size(), points.size());
+			for (int i = 0; i < ts.size(); ++i) {
+				assertEquals(spline.evaluate(ts.get(i)), points.get(i));
+			}
+		}
+	}
+
+}